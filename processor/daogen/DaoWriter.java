@@ -0,0 +1,400 @@
+package daogen;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+import daogen.EntityDaoProcessor.Column;
+import daogen.EntityDaoProcessor.Entity;
+import daogen.EntityDaoProcessor.Finder;
+import daogen.EntityDaoProcessor.ValueType;
+
+/**
+ * Writes the source of the DAO of one entity class.
+ */
+final class DaoWriter {
+	private final Entity entity;
+	private final PrintWriter out;
+	private final String type;
+
+	DaoWriter(Entity entity, PrintWriter out) {
+		this.entity = entity;
+		this.out = out;
+		this.type = entity.simpleName;
+	}
+
+	void write() {
+		Column primaryKey = entity.primaryKey();
+
+		out.println("package " + entity.packageName + ";");
+		out.println();
+		out.println("import java.lang.invoke.MethodHandle;");
+		out.println("import java.lang.invoke.MethodHandles;");
+		out.println("import java.lang.invoke.MethodType;");
+		out.println("import java.lang.invoke.VarHandle;");
+		out.println("import java.sql.Connection;");
+		out.println("import java.sql.PreparedStatement;");
+		out.println("import java.sql.ResultSet;");
+		out.println("import java.sql.SQLException;");
+		out.println("import java.sql.Types;");
+		out.println("import java.util.ArrayList;");
+		out.println("import java.util.List;");
+		out.println();
+		out.println("import javax.annotation.processing.Generated;");
+		out.println();
+		out.println("import database.ColumnCodec;");
+		out.println("import database.ColumnCodecs;");
+		out.println("import database.DatabaseManager;");
+		out.println("import database.EntityDao;");
+		out.println();
+		out.println("/**");
+		out.println(" * Reads and writes the rows of the " + entity.tableName + " table as {@link " + type + "} objects.");
+		out.println(" * Generated from the annotations of the class: do not edit.");
+		out.println(" */");
+		out.println("@Generated(\"daogen.EntityDaoProcessor\")");
+		out.println("public final class " + entity.daoName + " implements EntityDao<" + type + "> {");
+
+		writeQueries(primaryKey);
+		writeHandles();
+
+		out.println();
+		out.println("\tpublic " + entity.daoName + "() {");
+		out.println("\t}");
+
+		writeFinders(primaryKey);
+		writeDaoMethods(primaryKey);
+		writeHelpers();
+
+		out.println("}");
+	}
+
+	private void writeQueries(Column primaryKey) {
+		StringBuilder columnList = new StringBuilder();
+		StringBuilder insertColumns = new StringBuilder();
+		StringBuilder insertValues = new StringBuilder();
+		StringBuilder updateSet = new StringBuilder();
+		StringBuilder columnNames = new StringBuilder();
+		for (Column column : entity.columns) {
+			append(columnList, ", ", column.columnName);
+			append(columnNames, ", ", "\"" + column.columnName + "\"");
+			if (!column.primaryKey) {
+				append(insertColumns, ", ", column.columnName);
+				append(insertValues, ", ", "?");
+				append(updateSet, ", ", column.columnName + " = ?");
+			}
+		}
+		String selectAll = "SELECT " + columnList + " FROM " + entity.tableName;
+
+		out.println("\tpublic static final String SELECT_ALL = \"" + selectAll + "\";");
+		out.println("\tpublic static final String INSERT = \"INSERT INTO " + entity.tableName
+				+ " (" + insertColumns + ") VALUES (" + insertValues + ")\";");
+		if (primaryKey != null) {
+			String byId = " WHERE " + primaryKey.columnName + " = ?";
+			out.println("\tpublic static final String SELECT_BY_ID = \"" + selectAll + byId + "\";");
+			out.println("\tpublic static final String UPDATE = \"UPDATE " + entity.tableName + " SET " + updateSet + byId + "\";");
+			out.println("\tpublic static final String DELETE = \"DELETE FROM " + entity.tableName + byId + "\";");
+		}
+		for (Finder finder : entity.finders) {
+			out.println("\tpublic static final String " + finderQuery(finder) + " = \""
+					+ selectAll + " WHERE " + finder.column.columnName + " = ?\";");
+		}
+		out.println();
+		out.println("\tprivate static final List<String> COLUMN_NAMES = List.of(" + columnNames + ");");
+	}
+
+	private void writeHandles() {
+		out.println();
+		out.println("\tprivate static final MethodHandle CONSTRUCTOR;");
+		for (Column column : entity.columns) {
+			out.println("\tprivate static final VarHandle " + handle(column) + ";");
+		}
+		out.println();
+		out.println("\tstatic {");
+		out.println("\t\ttry {");
+		out.println("\t\t\t// The fields and the default constructor are private to the entity class");
+		out.println("\t\t\tMethodHandles.Lookup lookup = MethodHandles.privateLookupIn(" + type + ".class, MethodHandles.lookup());");
+		out.println("\t\t\tCONSTRUCTOR = lookup.findConstructor(" + type + ".class, MethodType.methodType(void.class));");
+		for (Column column : entity.columns) {
+			out.println("\t\t\t" + handle(column) + " = lookup.findVarHandle(" + type + ".class, \""
+					+ column.fieldName + "\", " + declaredType(column) + ".class);");
+		}
+		out.println("\t\t} catch (ReflectiveOperationException e) {");
+		out.println("\t\t\tthrow new ExceptionInInitializerError(e);");
+		out.println("\t\t}");
+		out.println("\t}");
+		out.println();
+		out.println("\tprivate static final " + entity.daoName + " INSTANCE = new " + entity.daoName + "();");
+
+		boolean first = true;
+		for (Column column : entity.columns) {
+			if (column.type == ValueType.CODEC) {
+				if (first) {
+					out.println();
+					first = false;
+				}
+				out.println("\tprivate final ColumnCodec<" + column.typeName + "> " + codec(column)
+						+ " = codec(" + column.typeName + ".class);");
+			}
+		}
+	}
+
+	private void writeFinders(Column primaryKey) {
+		if (primaryKey != null) {
+			String parameter = primaryKey.fieldName;
+			writeFinder("findById", "Returns the row with the given ID.", type, primaryKey, parameter, "SELECT_BY_ID", true);
+		}
+
+		out.println();
+		out.println("\t/**");
+		out.println("\t * Returns all the rows of the table.");
+		out.println("\t */");
+		out.println("\tpublic static List<" + type + "> findAll() throws SQLException {");
+		out.println("\t\ttry (Connection connection = DatabaseManager.getReadConnection()) {");
+		out.println("\t\t\treturn findAll(connection);");
+		out.println("\t\t}");
+		out.println("\t}");
+		out.println();
+		out.println("\tpublic static List<" + type + "> findAll(Connection connection) throws SQLException {");
+		out.println("\t\ttry (PreparedStatement ps = prepare(connection, SELECT_ALL)) {");
+		out.println("\t\t\treturn readAll(ps);");
+		out.println("\t\t}");
+		out.println("\t}");
+
+		for (Finder finder : entity.finders) {
+			Column column = finder.column;
+			String name = "findBy" + Character.toUpperCase(column.fieldName.charAt(0)) + column.fieldName.substring(1);
+			if (finder.unique) {
+				writeFinder(name, "Returns the row whose " + column.columnName + " column equals the value.",
+						type, column, column.fieldName, finderQuery(finder), true);
+			} else {
+				writeFinder(name, "Returns the rows whose " + column.columnName + " column equals the value.",
+						"List<" + type + ">", column, column.fieldName, finderQuery(finder), false);
+			}
+		}
+	}
+
+	private void writeFinder(String name, String doc, String returnType, Column column, String parameter, String query, boolean single) {
+		String parameterType = column.type == ValueType.CODEC ? column.typeName : declaredType(column);
+		out.println();
+		out.println("\t/**");
+		out.println("\t * " + doc + (single ? " The entity cache is not used." : ""));
+		if (column.type.isNullable()) {
+			out.println("\t * A null value matches no rows.");
+		}
+		out.println("\t */");
+		out.println("\tpublic static " + returnType + " " + name + "(" + parameterType + " " + parameter + ") throws SQLException {");
+		out.println("\t\ttry (Connection connection = DatabaseManager.getReadConnection()) {");
+		out.println("\t\t\treturn " + name + "(" + parameter + ", connection);");
+		out.println("\t\t}");
+		out.println("\t}");
+		out.println();
+		out.println("\tpublic static " + returnType + " " + name + "(" + parameterType + " " + parameter
+				+ ", Connection connection) throws SQLException {");
+		out.println("\t\ttry (PreparedStatement ps = prepare(connection, " + query + ")) {");
+		writeValue(column, "\t\t\t", "1", parameter, "INSTANCE.");
+		if (single) {
+			out.println("\t\t\tList<" + type + "> rows = readAll(ps);");
+			out.println("\t\t\treturn rows.isEmpty() ? null : rows.get(0);");
+		} else {
+			out.println("\t\t\treturn readAll(ps);");
+		}
+		out.println("\t\t}");
+		out.println("\t}");
+	}
+
+	private void writeDaoMethods(Column primaryKey) {
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic Class<" + type + "> getEntityClass() {");
+		out.println("\t\treturn " + type + ".class;");
+		out.println("\t}");
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic List<String> getColumnNames() {");
+		out.println("\t\treturn COLUMN_NAMES;");
+		out.println("\t}");
+
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic " + type + " newInstance() {");
+		out.println("\t\ttry {");
+		out.println("\t\t\treturn (" + type + ") CONSTRUCTOR.invokeExact();");
+		out.println("\t\t} catch (Throwable e) {");
+		out.println("\t\t\tthrow new RuntimeException(\"Unable to create object: \" + e.getMessage(), e);");
+		out.println("\t\t}");
+		out.println("\t}");
+
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic " + type + " read(ResultSet rs, int firstColumn, " + type + " target) throws SQLException {");
+		List<Column> columns = entity.columns;
+		for (int i = 0; i < columns.size(); i++) {
+			Column column = columns.get(i);
+			String index = i == 0 ? "firstColumn" : "firstColumn + " + i;
+			String handle = handle(column);
+			switch (column.type) {
+			case CODEC:
+				out.println("\t\t" + handle + ".set(target, " + codec(column) + ".read(rs, " + index + "));");
+				break;
+			case STRING:
+			case INT:
+			case LONG:
+			case DOUBLE:
+			case FLOAT:
+			case BOOLEAN:
+				out.println("\t\t" + handle + ".set(target, rs.get" + column.type.jdbcSuffix + "(" + index + "));");
+				break;
+			default:
+				String local = column.fieldName + "Value";
+				out.println("\t\t" + column.type.unboxedName + " " + local + " = rs.get" + column.type.jdbcSuffix + "(" + index + ");");
+				out.println("\t\t" + handle + ".set(target, rs.wasNull() ? null : " + declaredType(column) + ".valueOf(" + local + "));");
+				break;
+			}
+		}
+		out.println("\t\treturn target;");
+		out.println("\t}");
+
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic " + type + " copy(" + type + " source) {");
+		out.println("\t\t" + type + " target = newInstance();");
+		for (Column column : columns) {
+			out.println("\t\t" + handle(column) + ".set(target, " + get(column, "source") + ");");
+		}
+		out.println("\t\treturn target;");
+		out.println("\t}");
+
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic int writeNonPrimaryKeyColumns(" + type + " source, PreparedStatement ps, int firstParameter) throws SQLException {");
+		int parameter = 0;
+		for (Column column : columns) {
+			if (column.primaryKey) {
+				continue;
+			}
+			String index = parameter == 0 ? "firstParameter" : "firstParameter + " + parameter;
+			writeValue(column, "\t\t", index, get(column, "source"), "");
+			parameter++;
+		}
+		out.println("\t\treturn firstParameter + " + parameter + ";");
+		out.println("\t}");
+
+		out.println();
+		out.println("\t@Override");
+		out.println("\tpublic void writePrimaryKey(" + type + " source, PreparedStatement ps, int parameterIndex) throws SQLException {");
+		if (primaryKey != null) {
+			writeValue(primaryKey, "\t\t", "parameterIndex", get(primaryKey, "source"), "");
+		} else {
+			out.println("\t\tthrow new IllegalArgumentException(\"Class " + entity.packageName + "." + type
+					+ " does not have a field with the PrimaryKey annotation\");");
+		}
+		out.println("\t}");
+	}
+
+	private void writeHelpers() {
+		out.println();
+		out.println("\tprivate static PreparedStatement prepare(Connection connection, String query) throws SQLException {");
+		out.println("\t\tPreparedStatement ps = connection.prepareStatement(query);");
+		out.println("\t\tps.setFetchSize(DatabaseManager.getFetchSize());");
+		out.println("\t\treturn ps;");
+		out.println("\t}");
+		out.println();
+		out.println("\tprivate static List<" + type + "> readAll(PreparedStatement ps) throws SQLException {");
+		out.println("\t\tList<" + type + "> rows = new ArrayList<>();");
+		out.println("\t\ttry (ResultSet rs = ps.executeQuery()) {");
+		out.println("\t\t\twhile (rs.next()) {");
+		out.println("\t\t\t\trows.add(INSTANCE.read(rs, 1, INSTANCE.newInstance()));");
+		out.println("\t\t\t}");
+		out.println("\t\t}");
+		out.println("\t\treturn rows;");
+		out.println("\t}");
+
+		for (Column column : entity.columns) {
+			if (column.type == ValueType.CODEC) {
+				out.println();
+				out.println("\tprivate static <T> ColumnCodec<T> codec(Class<T> type) {");
+				out.println("\t\tColumnCodec<T> codec = ColumnCodecs.forType(type);");
+				out.println("\t\tif (codec == null) {");
+				out.println("\t\t\tthrow new IllegalStateException(\"No column codec registered for \" + type.getName());");
+				out.println("\t\t}");
+				out.println("\t\treturn codec;");
+				out.println("\t}");
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Writes the statements binding a value, with NULL for a null value of a reference type.
+	 */
+	private void writeValue(Column column, String indent, String index, String value, String codecOwner) {
+		if (column.type.isPrimitive()) {
+			out.println(indent + "ps.set" + column.type.jdbcSuffix + "(" + index + ", " + value + ");");
+			return;
+		}
+		String local = value;
+		if (!isIdentifier(value)) {
+			local = column.fieldName + "Value";
+			String valueType = column.type == ValueType.CODEC ? column.typeName : declaredType(column);
+			out.println(indent + valueType + " " + local + " = " + value + ";");
+		}
+		String nullType = column.type == ValueType.CODEC ? codecOwner + codec(column) + ".getJdbcType()" : column.type.nullType;
+		out.println(indent + "if (" + local + " == null) {");
+		out.println(indent + "\tps.setNull(" + index + ", " + nullType + ");");
+		out.println(indent + "} else {");
+		if (column.type == ValueType.CODEC) {
+			out.println(indent + "\t" + codecOwner + codec(column) + ".write(ps, " + index + ", " + local + ");");
+		} else {
+			out.println(indent + "\tps.set" + column.type.jdbcSuffix + "(" + index + ", " + local + ");");
+		}
+		out.println(indent + "}");
+	}
+
+	private String get(Column column, String owner) {
+		return "(" + declaredType(column) + ") " + handle(column) + ".get(" + owner + ")";
+	}
+
+	private static String declaredType(Column column) {
+		String name = column.typeName;
+		return name.startsWith("java.lang.") ? name.substring("java.lang.".length()) : name;
+	}
+
+	private static String handle(Column column) {
+		return "FIELD_" + constantName(column.fieldName);
+	}
+
+	private static String codec(Column column) {
+		return column.fieldName + "Codec";
+	}
+
+	private static String finderQuery(Finder finder) {
+		return "SELECT_BY_" + constantName(finder.column.fieldName);
+	}
+
+	private static String constantName(String fieldName) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < fieldName.length(); i++) {
+			char c = fieldName.charAt(i);
+			if (Character.isUpperCase(c) && i > 0) {
+				sb.append('_');
+			}
+			sb.append(Character.toUpperCase(c));
+		}
+		return sb.toString();
+	}
+
+	private static boolean isIdentifier(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (!Character.isJavaIdentifierPart(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void append(StringBuilder sb, String separator, String value) {
+		if (sb.length() > 0) {
+			sb.append(separator);
+		}
+		sb.append(value);
+	}
+}
@@ -0,0 +1,332 @@
+package daogen;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a {@code database.EntityDao} for every class annotated with {@code database.TableName}.
+ *
+ * The DAO of a class {@code X} is the class {@code XDao} in the same package. It holds the SQL of the
+ * class as constants, reads and writes the fields through static VarHandles with the typed getters and
+ * setters of JDBC, and has typed finders by ID, by foreign key and by the first column of each index.
+ * The generated DAOs are listed in {@code META-INF/services/database.EntityDao} for {@code database.EntityDaos}.
+ *
+ * The annotations are referred to by name, so the processor is compiled without the sources it processes.
+ */
+@SupportedAnnotationTypes(EntityDaoProcessor.TABLE_NAME)
+public class EntityDaoProcessor extends AbstractProcessor {
+	static final String TABLE_NAME = "database.TableName";
+	private static final String COLUMN_NAME = "database.ColumnName";
+	private static final String PRIMARY_KEY = "database.PrimaryKey";
+	private static final String FOREIGN_KEY = "database.ForeignKey";
+	private static final String INDEX = "database.Index";
+	private static final String INDEXES = "database.Indexes";
+	private static final String SERVICE_FILE = "META-INF/services/database.EntityDao";
+
+	private final Set<String> generatedDaos = new TreeSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeServiceFile();
+			return false;
+		}
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() == ElementKind.CLASS) {
+					generate((TypeElement) element);
+				}
+			}
+		}
+		return false;
+	}
+
+	private void generate(TypeElement entity) {
+		Messager messager = processingEnv.getMessager();
+		if (entity.getNestingKind() != NestingKind.TOP_LEVEL || entity.getModifiers().contains(Modifier.ABSTRACT)) {
+			messager.printMessage(Diagnostic.Kind.NOTE, "No DAO generated for " + entity + ": not a top level concrete class", entity);
+			return;
+		}
+		if (!hasDefaultConstructor(entity)) {
+			messager.printMessage(Diagnostic.Kind.NOTE, "No DAO generated for " + entity + ": no default constructor", entity);
+			return;
+		}
+
+		List<Column> columns = new ArrayList<>();
+		for (VariableElement field : ElementFilter.fieldsIn(entity.getEnclosedElements())) {
+			String columnName = (String) annotationValue(field, COLUMN_NAME, "value");
+			if (columnName == null || field.getModifiers().contains(Modifier.STATIC)) {
+				continue;
+			}
+			ValueType type = ValueType.of(field.asType());
+			if (type == null) {
+				messager.printMessage(Diagnostic.Kind.ERROR, "Unsupported field type for a generated DAO: " + field.asType(), field);
+				return;
+			}
+			columns.add(new Column(field.getSimpleName().toString(), columnName, type,
+					field.asType().toString(), hasAnnotation(field, PRIMARY_KEY), hasAnnotation(field, FOREIGN_KEY)));
+		}
+		if (columns.isEmpty()) {
+			return;
+		}
+
+		String packageName = ((PackageElement) entity.getEnclosingElement()).getQualifiedName().toString();
+		String daoName = entity.getSimpleName() + "Dao";
+		String qualifiedDaoName = packageName.isEmpty() ? daoName : packageName + "." + daoName;
+		Entity model = new Entity(packageName, entity.getSimpleName().toString(), daoName,
+				(String) annotationValue(entity, TABLE_NAME, "value"), columns, finders(entity, columns));
+
+		try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedDaoName, entity).openWriter())) {
+			new DaoWriter(model, out).write();
+		} catch (IOException e) {
+			messager.printMessage(Diagnostic.Kind.ERROR, "Unable to write " + qualifiedDaoName + ": " + e.getMessage(), entity);
+			return;
+		}
+		generatedDaos.add(qualifiedDaoName);
+	}
+
+	private void writeServiceFile() {
+		if (generatedDaos.isEmpty()) {
+			return;
+		}
+		Filer filer = processingEnv.getFiler();
+		try (Writer writer = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE).openWriter()) {
+			for (String dao : generatedDaos) {
+				writer.write(dao + "\n");
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + SERVICE_FILE + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the columns with a finder: the foreign keys and the first column of each index, in
+	 * declaration order. A single column unique index gives a finder returning one row.
+	 */
+	private List<Finder> finders(TypeElement entity, List<Column> columns) {
+		Map<String, Boolean> uniqueByColumn = new LinkedHashMap<>();
+		for (AnnotationMirror index : indexes(entity)) {
+			@SuppressWarnings("unchecked")
+			List<? extends AnnotationValue> indexColumns = (List<? extends AnnotationValue>) value(index, "columns");
+			if (indexColumns == null || indexColumns.isEmpty()) {
+				continue;
+			}
+			String first = (String) indexColumns.get(0).getValue();
+			boolean unique = indexColumns.size() == 1 && Boolean.TRUE.equals(value(index, "unique"));
+			uniqueByColumn.merge(first, unique, Boolean::logicalOr);
+		}
+
+		List<Finder> finders = new ArrayList<>();
+		for (Column column : columns) {
+			if (column.primaryKey) {
+				continue;
+			}
+			Boolean unique = uniqueByColumn.get(column.columnName);
+			if (unique != null || column.foreignKey) {
+				finders.add(new Finder(column, unique != null && unique));
+			}
+		}
+		return finders;
+	}
+
+	private List<AnnotationMirror> indexes(TypeElement entity) {
+		List<AnnotationMirror> indexes = new ArrayList<>();
+		for (AnnotationMirror mirror : entity.getAnnotationMirrors()) {
+			String name = annotationName(mirror);
+			if (name.equals(INDEX)) {
+				indexes.add(mirror);
+			} else if (name.equals(INDEXES)) {
+				@SuppressWarnings("unchecked")
+				List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) value(mirror, "value");
+				for (AnnotationValue value : values) {
+					indexes.add((AnnotationMirror) value.getValue());
+				}
+			}
+		}
+		return indexes;
+	}
+
+	private static boolean hasDefaultConstructor(TypeElement entity) {
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(entity.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasAnnotation(Element element, String annotation) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (annotationName(mirror).equals(annotation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Object annotationValue(Element element, String annotation, String member) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			if (annotationName(mirror).equals(annotation)) {
+				return value(mirror, member);
+			}
+		}
+		return null;
+	}
+
+	private static Object value(AnnotationMirror mirror, String member) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(member)) {
+				return entry.getValue().getValue();
+			}
+		}
+		return null;
+	}
+
+	private static String annotationName(AnnotationMirror mirror) {
+		return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+	}
+
+	/**
+	 * How the values of a field type are read and written, matching the accessors of {@code database.RowMapper}.
+	 */
+	enum ValueType {
+		INT("int", "Int", null, null),
+		LONG("long", "Long", null, null),
+		DOUBLE("double", "Double", null, null),
+		FLOAT("float", "Float", null, null),
+		BOOLEAN("boolean", "Boolean", null, null),
+		BOXED_INT("java.lang.Integer", "Int", "int", "Types.INTEGER"),
+		BOXED_LONG("java.lang.Long", "Long", "long", "Types.BIGINT"),
+		BOXED_DOUBLE("java.lang.Double", "Double", "double", "Types.DOUBLE"),
+		BOXED_FLOAT("java.lang.Float", "Float", "float", "Types.FLOAT"),
+		BOXED_BOOLEAN("java.lang.Boolean", "Boolean", "boolean", "Types.BOOLEAN"),
+		STRING("java.lang.String", "String", null, "Types.VARCHAR"),
+		CODEC(null, null, null, null);
+
+		final String typeName;
+		final String jdbcSuffix;
+		final String unboxedName;
+		final String nullType;
+
+		ValueType(String typeName, String jdbcSuffix, String unboxedName, String nullType) {
+			this.typeName = typeName;
+			this.jdbcSuffix = jdbcSuffix;
+			this.unboxedName = unboxedName;
+			this.nullType = nullType;
+		}
+
+		boolean isPrimitive() {
+			return ordinal() <= BOOLEAN.ordinal();
+		}
+
+		boolean isNullable() {
+			return !isPrimitive();
+		}
+
+		/**
+		 * Returns the value type of a field type, or null if it cannot be mapped. Declared types other
+		 * than the boxed primitives and String are read and written with the codec registered for them.
+		 */
+		static ValueType of(TypeMirror type) {
+			String name = type.toString();
+			for (ValueType valueType : values()) {
+				if (name.equals(valueType.typeName)) {
+					return valueType;
+				}
+			}
+			if (type instanceof DeclaredType && ((DeclaredType) type).getTypeArguments().isEmpty()) {
+				return CODEC;
+			}
+			return null;
+		}
+	}
+
+	static final class Column {
+		final String fieldName;
+		final String columnName;
+		final ValueType type;
+		final String typeName;
+		final boolean primaryKey;
+		final boolean foreignKey;
+
+		Column(String fieldName, String columnName, ValueType type, String typeName, boolean primaryKey, boolean foreignKey) {
+			this.fieldName = fieldName;
+			this.columnName = columnName;
+			this.type = type;
+			this.typeName = typeName;
+			this.primaryKey = primaryKey;
+			this.foreignKey = foreignKey;
+		}
+	}
+
+	static final class Finder {
+		final Column column;
+		final boolean unique;
+
+		Finder(Column column, boolean unique) {
+			this.column = column;
+			this.unique = unique;
+		}
+	}
+
+	static final class Entity {
+		final String packageName;
+		final String simpleName;
+		final String daoName;
+		final String tableName;
+		final List<Column> columns;
+		final List<Finder> finders;
+
+		Entity(String packageName, String simpleName, String daoName, String tableName, List<Column> columns, List<Finder> finders) {
+			this.packageName = packageName;
+			this.simpleName = simpleName;
+			this.daoName = daoName;
+			this.tableName = tableName;
+			this.columns = columns;
+			this.finders = finders;
+		}
+
+		Column primaryKey() {
+			for (Column column : columns) {
+				if (column.primaryKey) {
+					return column;
+				}
+			}
+			return null;
+		}
+	}
+}
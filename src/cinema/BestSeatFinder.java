@@ -0,0 +1,134 @@
+package cinema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the best block of adjacent available seats of a session for a group.
+ *
+ * The blocks are searched on the available seats of each row as a bitmask: the starting columns of
+ * the blocks of N free seats are the bits left set after and-ing the mask with itself shifted by 1,
+ * 2, 4... columns, so a row is searched with a few word operations whatever its width. A block never
+ * spans a column without a seat, such as an aisle.
+ *
+ * A block scores lower the closer its center is to the center column and its row to the preferred
+ * row, two thirds of the way back from the screen, and the lowest score is the best.
+ */
+public final class BestSeatFinder {
+	/** The weight of the distance to the preferred row against the distance to the center column. */
+	public static final double ROW_WEIGHT = 1.0;
+	/** The preferred row, as a fraction of the rows from the screen. */
+	public static final double PREFERRED_ROW_RATIO = 2.0 / 3.0;
+
+	private BestSeatFinder() {
+		throw new AssertionError("Cannot instantiate BestSeatFinder");
+	}
+
+	/**
+	 * Finds the best block of adjacent available seats of a session.
+	 *
+	 * @param sessionId the ID of the session
+	 * @param count the number of seats
+	 * @return the seat availabilities of the block in column order, an empty list if no row has
+	 *         enough adjacent available seats, or null if the seat map of the session is not available
+	 */
+	public static List<SeatAvailability> findBest(int sessionId, int count) {
+		SessionSeatMap seatMap = SeatMapEngine.getSeatMap(sessionId);
+		if (seatMap == null) {
+			System.err.println("Unable to find seats: seat map of session " + sessionId + " is not available");
+			return null;
+		}
+		return findBest(seatMap, count);
+	}
+
+	/**
+	 * Finds the best block of adjacent available seats on a seat map. The seats are not claimed, so
+	 * they may be taken by another terminal before they are held or booked.
+	 *
+	 * @param seatMap the seat map of the session
+	 * @param count the number of seats
+	 * @return the seat availabilities of the block in column order, or an empty list if no row has
+	 *         enough adjacent available seats
+	 * @throws IllegalArgumentException if the number of seats is not positive
+	 */
+	public static List<SeatAvailability> findBest(SessionSeatMap seatMap, int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Number of seats must be positive: " + count);
+		}
+		int rowCount = seatMap.getRowCount();
+		int colCount = seatMap.getColCount();
+		if (count > colCount) {
+			return List.of();
+		}
+
+		double centerCol = (colCount - 1) / 2.0;
+		double preferredRow = (rowCount - 1) * PREFERRED_ROW_RATIO;
+		int bestRow = -1;
+		int bestCol = -1;
+		double bestScore = Double.MAX_VALUE;
+
+		for (int row = 0; row < rowCount; row++) {
+			double rowScore = ROW_WEIGHT * Math.abs(row - preferredRow) / rowCount;
+			if (rowScore >= bestScore) {
+				continue;
+			}
+			long[] starts = blockStarts(seatMap.availableMask(row), count);
+			for (int word = 0; word < starts.length; word++) {
+				for (long bits = starts[word]; bits != 0; bits &= bits - 1) {
+					int col = (word << 6) + Long.numberOfTrailingZeros(bits);
+					double score = rowScore + Math.abs(col + (count - 1) / 2.0 - centerCol) / colCount;
+					if (score < bestScore) {
+						bestScore = score;
+						bestRow = row;
+						bestCol = col;
+					}
+				}
+			}
+		}
+
+		if (bestRow < 0) {
+			return List.of();
+		}
+		List<SeatAvailability> block = new ArrayList<>(count);
+		for (int col = bestCol; col < bestCol + count; col++) {
+			block.add(seatMap.getSeatAvailability(bestRow, col));
+		}
+		return block;
+	}
+
+	/**
+	 * Returns the columns starting a run of at least {@code count} set bits of the mask.
+	 */
+	private static long[] blockStarts(long[] mask, int count) {
+		long[] starts = mask;
+		int length = 1;
+		while (length < count) {
+			// A start of a run of length followed by one shifted by step gives a run of length + step
+			int step = Math.min(length, count - length);
+			long[] shifted = shiftDown(starts, step);
+			for (int i = 0; i < starts.length; i++) {
+				shifted[i] &= starts[i];
+			}
+			starts = shifted;
+			length += step;
+		}
+		return starts;
+	}
+
+	/**
+	 * Moves the bits of a multi-word mask down by the given number of columns.
+	 */
+	private static long[] shiftDown(long[] mask, int shift) {
+		int wordShift = shift >>> 6;
+		int bitShift = shift & 63;
+		long[] shifted = new long[mask.length];
+		for (int i = 0; i + wordShift < mask.length; i++) {
+			long value = mask[i + wordShift] >>> bitShift;
+			if (bitShift != 0 && i + wordShift + 1 < mask.length) {
+				value |= mask[i + wordShift + 1] << (64 - bitShift);
+			}
+			shifted[i] = value;
+		}
+		return shifted;
+	}
+}
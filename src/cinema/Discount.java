@@ -7,6 +7,7 @@ import java.util.List;
 import database.*;
 
 @TableName("discount")
+@Index(name = "idx_discount_date", columns = {"date"}, unique = true)
 public class Discount {
 	
 	@PrimaryKey
@@ -5,6 +5,7 @@ import java.util.List;
 import database.*;
 
 @TableName("genre")
+@Cached(ttlSeconds = 3600)
 public class Genre {
 	
 	@PrimaryKey
@@ -5,14 +5,18 @@ import database.*;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.Statement;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @TableName ("movie")
+@Cached(ttlSeconds = 300)
+@Index(name = "idx_movie_name", columns = {"name"}, unique = true)
 public class Movie {
 	public static final int RATING_UPPER_LIMIT = 5; //inclusive
 	public static final int RATING_LOWER_LIMIT = 1; //inclusive
@@ -123,6 +127,22 @@ public class Movie {
 			return new ArrayList<>();
 		}
 	}
+
+	/**
+	 * Retrieves the movies with only the fields shown in movie lists set:
+	 * ID, name, duration and rating.
+	 * 
+	 * @return a list of partially populated movies, ordered by ID
+	 */
+	public static List<Movie> getMovieSummaries() {
+		try {
+			return DatabaseManager.getProjectedRows(Projection.of(Movie.class, "id", "name", "duration", "rating"),
+				List.of(), "id", true);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return new ArrayList<>();
+		}
+	}
 		
 	/**
 	 * Adds a rating for a movie based on the provided ticket code and new rating value.
@@ -132,6 +152,34 @@ public class Movie {
 	 * @return true if the rating was successfully added, false otherwise.
 	 */
     public static boolean addRating(int ticketCode, float newRate) {
+		// take difference
+		if (newRate > RATING_UPPER_LIMIT || newRate < RATING_LOWER_LIMIT) {
+			// Invalid rating value, must be between 1 and 5 (inclusive)
+			System.err.println("Invalid rating value, must be between 1 and 5 (inclusive)");
+            return false;
+        }
+
+		try {
+			DatabaseManager.inTransaction(conn -> addRating(ticketCode, newRate, conn));
+			return true;
+		} catch (SQLException e) {
+			System.err.println("Error adding rating: " + e.getMessage());
+			return false;
+		}
+    }
+
+	/**
+	 * Adds a rating for the movie of a paid, unrated ticket using the given connection, weighted
+	 * by the number of seats of the ticket, and marks the ticket as rated.
+	 * The transaction is left to the caller.
+	 *
+	 * @param ticketCode The code of the ticket for which the rating is being added.
+	 * @param newRate The new rating value to be added.
+	 * @param conn the database connection
+	 * @return the ID of the rated movie
+	 * @throws SQLException if the ticket cannot be rated or a database access error occurs
+	 */
+	public static int addRating(int ticketCode, float newRate, Connection conn) throws SQLException {
 		String sqlGetMovie = "SELECT movie.id, movie.rating, movie.rating_count"
 			+ " FROM movie"
 			+ " JOIN session ON movie.id = session.movie_id"
@@ -150,132 +198,52 @@ public class Movie {
 		String sqlUpdateMovie = "UPDATE movie SET rating = ?, rating_count = ? WHERE id = ?";
 		String sqlUpdateTicket = "UPDATE ticket SET is_rated = 1 WHERE code = ?";
 
-		int seatCount = 0;
-		
-		// take difference
-		if (newRate > RATING_UPPER_LIMIT || newRate < RATING_LOWER_LIMIT) {
-			// Invalid rating value, must be between 1 and 5 (inclusive)
-			System.err.println("Invalid rating value, must be between 1 and 5 (inclusive)");
-            return false;
-        }
-
-		Connection conn = null;
-		PreparedStatement psGetMovie = null;
-		PreparedStatement psGetSeatCount = null;
-		PreparedStatement psUpdateMovie = null;
-		PreparedStatement psUpdateTicket = null;
-		ResultSet rs = null;
-		try {
-			conn = DatabaseManager.getConnection();
-			psGetMovie = conn.prepareStatement(sqlGetMovie);
-			psGetSeatCount = conn.prepareStatement(sqlGetSeatCount);
-			psUpdateMovie = conn.prepareStatement(sqlUpdateMovie);
-			psUpdateTicket = conn.prepareStatement(sqlUpdateTicket);
-
-			// Start the transaction
-			conn.setAutoCommit(false);
+		try (PreparedStatement psGetMovie = conn.prepareStatement(sqlGetMovie);
+			 PreparedStatement psGetSeatCount = conn.prepareStatement(sqlGetSeatCount);
+			 PreparedStatement psUpdateMovie = conn.prepareStatement(sqlUpdateMovie);
+			 PreparedStatement psUpdateTicket = conn.prepareStatement(sqlUpdateTicket)) {
 
 			// Get seat count
+			int seatCount;
 			psGetSeatCount.setInt(1, ticketCode);
-			rs = psGetSeatCount.executeQuery();
-			
-			if (rs.next()) {
-				seatCount = rs.getInt(1);
-				if (seatCount == 0) {
-					throw new SQLException("No seats found for ticket code " + ticketCode);
-				}
-			} else {
-				throw new SQLException("Movie not found");
+			try (ResultSet rs = psGetSeatCount.executeQuery()) {
+				seatCount = rs.next() ? rs.getInt(1) : 0;
+			}
+			if (seatCount == 0) {
+				throw new SQLException("No seats found for ticket code " + ticketCode);
 			}
 
 			// Get the current rating and rating count
+			int movieId;
+			float currentRating;
+			int currentRatingCount;
 			psGetMovie.setInt(1, ticketCode);
-			rs = psGetMovie.executeQuery();
+			try (ResultSet rs = psGetMovie.executeQuery()) {
+				if (!rs.next()) {
+					throw new SQLException("Movie not found");
+				}
+				movieId = rs.getInt("id");
+				currentRating = rs.getFloat("rating");
+				currentRatingCount = rs.getInt("rating_count");
+			}
 
 			// Update the rating and rating count
-			if (rs.next()) {
-				int movieId = rs.getInt("id");
-				float currentRating = rs.getFloat("rating");
-				int currentRatingCount = rs.getInt("rating_count");
-
-				int newRatingCount = currentRatingCount + seatCount;
-				float newRating = currentRating + (newRate - currentRating) / ((float) newRatingCount / seatCount);
-
-				psUpdateMovie.setFloat(1, newRating);
-				psUpdateMovie.setInt(2, newRatingCount);
-				psUpdateMovie.setInt(3, movieId);
-				psUpdateMovie.executeUpdate();
-			} else {
-				throw new SQLException("Movie not found");
-			}
+			int newRatingCount = currentRatingCount + seatCount;
+			float newRating = currentRating + (newRate - currentRating) / ((float) newRatingCount / seatCount);
+
+			psUpdateMovie.setFloat(1, newRating);
+			psUpdateMovie.setInt(2, newRatingCount);
+			psUpdateMovie.setInt(3, movieId);
+			psUpdateMovie.executeUpdate();
+			DatabaseManager.afterCommit(conn, () -> DatabaseManager.getEntityCache().invalidate(Movie.class, movieId));
 
 			// Update the ticket to show that it has been rated
 			psUpdateTicket.setInt(1, ticketCode);
 			psUpdateTicket.executeUpdate();
 
-			// Commit the transaction
-			conn.commit();
-			return true;
-		} catch (Exception e) {
-			if (conn != null) {
-				try {
-					conn.rollback();
-				} catch (SQLException ex) {
-					System.err.println("Error rolling back transaction");
-					ex.printStackTrace();
-				}
-			}
-			System.err.println("Error adding rating: " + e.getMessage());
-			return false;
-		} finally {
-			if (psGetMovie != null) {
-				try {
-					psGetMovie.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing prepared statement");
-					e.printStackTrace();
-				}
-			}
-			if (psGetSeatCount != null) {
-				try {
-					psGetSeatCount.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing prepared statement");
-					e.printStackTrace();
-				}
-			}
-			if (psUpdateTicket != null) {
-				try {
-					psUpdateTicket.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing prepared statement");
-					e.printStackTrace();
-				}
-			}
-			if (psUpdateMovie != null) {
-				try {
-					psUpdateMovie.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing prepared statement");
-					e.printStackTrace();
-				}
-			}
-			if (conn != null) {
-				try {
-					conn.setAutoCommit(true);
-				} catch (SQLException e) {
-					System.err.println("Error setting auto commit to true");
-					e.printStackTrace();
-				}
-				try {
-					conn.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing connection");
-					e.printStackTrace();
-				}
-			}
+			return movieId;
 		}
-    }
+	}
 
 	/**
 	 * Retrieves the number of ticket sales for a specific movie on a given date.
@@ -285,52 +253,17 @@ public class Movie {
 	 * @return the number of ticket sales for the movie on the given date
 	 */
 	public static int getSales(int movieId, LocalDate date) {
-		String sql = "SELECT COUNT(*)"
-			+ " FROM seat_availability"
-			+ " JOIN ticket ON seat_availability.ticket_id = ticket.id"
-			+ " JOIN session ON seat_availability.session_id = session.id"
-			+ " JOIN movie ON session.movie_id = movie.id"
-			+ " WHERE movie.id = ? AND session.date = ? AND ticket.is_paid = 1";
-
-		Connection conn = null;
-		PreparedStatement ps = null;
 		try {
-			conn = DatabaseManager.getConnection();
-			ps = conn.prepareStatement(sql);
-
-			// Set the parameters
-			ps.setInt(1, movieId);
-			ps.setString(2, date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
-			ps.execute();
-
-			ResultSet rs = ps.executeQuery();
-
-			if (rs.next()) {
-				return rs.getInt(1);
-			} else {
-				return 0;
-			}
-			
+			return (int) salesQuery()
+				.where(Session.class,
+					new FilterCondition("movieId", movieId, FilterCondition.Relation.EQUALS),
+					new FilterCondition("date", date, FilterCondition.Relation.EQUALS))
+				.count()
+				.execute()
+				.getLong(0);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return 0;
-		} finally {
-			if (ps != null) {
-				try {
-					ps.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing prepared statement");
-					e.printStackTrace();
-				}
-			}
-			if (conn != null) {
-				try {
-					conn.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing connection");
-					e.printStackTrace();
-				}
-			}
 		}
 	}
 
@@ -341,53 +274,16 @@ public class Movie {
 	 * @return the number of ticket sales for the movie
 	 */
 	public static int getSales(int movieId) {
-		String sql = "SELECT COUNT(*)"
-			+ " FROM seat_availability"
-			+ " JOIN ticket ON seat_availability.ticket_id = ticket.id"
-			+ " JOIN session ON seat_availability.session_id = session.id"
-			+ " JOIN movie ON session.movie_id = movie.id"
-			+ " WHERE movie.id = ? AND ticket.is_paid = 1";
-
-		Connection conn = null;
-		PreparedStatement ps = null;
 		try {
-			conn = DatabaseManager.getConnection();
-			ps = conn.prepareStatement(sql);
-
-			// Set the parameters
-			ps.setInt(1, movieId);
-			ps.execute();
-
-			ResultSet rs = ps.executeQuery();
-
-			if (rs.next()) {
-				return rs.getInt(1);
-			} else {
-				return 0;
-			}
-			
+			return (int) salesQuery()
+				.where(Session.class, new FilterCondition("movieId", movieId, FilterCondition.Relation.EQUALS))
+				.count()
+				.execute()
+				.getLong(0);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return 0;
-		} finally {
-			if (ps != null) {
-				try {
-					ps.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing prepared statement");
-					e.printStackTrace();
-				}
-			}
-			if (conn != null) {
-				try {
-					conn.close();
-				} catch (SQLException e) {
-					System.err.println("Error closing connection");
-					e.printStackTrace();
-				}
-			}
 		}
-	
 	}
 
 	/**
@@ -400,43 +296,22 @@ public class Movie {
 	 * @throws IllegalArgumentException if the movie ID is invalid, the date is null, or the connection is null
 	 */
 	public static int getAssignedSeatCount(int movieId, LocalDate date, Connection conn){
-		String sql = "SELECT COUNT(*)"
-		+ " FROM seat_availability"
-		+ " JOIN session ON seat_availability.session_id = session.id"
-		+ " JOIN movie ON session.movie_id = movie.id"
-		+ " WHERE movie.id = ? AND session.date = ?";
-
-		PreparedStatement ps = null;
-
 		if (conn == null || date == null || movieId <= 0) {
 			throw new IllegalArgumentException("Invalid arguments");
 		}
 
 		try {
-			ps = conn.prepareStatement(sql);
-
-			// Set the parameters
-			ps.setInt(1, movieId);
-			ps.setString(2, date.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
-			ps.execute();
-
-			ResultSet rs = ps.executeQuery();
-
-			if (rs.next()) {
-				return rs.getInt(1);
-			} else {
-				return 0;
-			}
-			
+			return (int) assignedSeatQuery()
+				.where(Session.class,
+					new FilterCondition("movieId", movieId, FilterCondition.Relation.EQUALS),
+					new FilterCondition("date", date, FilterCondition.Relation.EQUALS))
+				.count()
+				.execute(conn)
+				.getLong(0);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return 0;
-		} finally {
-			List<Statement> sList = new ArrayList<>();
-			sList.add(ps);
-			DatabaseManager.closeStatements(sList);
 		}
-
 	}
 
 	/**
@@ -450,7 +325,7 @@ public class Movie {
 
 		Connection conn = null;
 		try {
-			conn = DatabaseManager.getConnection();
+			conn = DatabaseManager.getReadConnection();
 			return getAssignedSeatCount(movieId, date, conn);
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -470,6 +345,52 @@ public class Movie {
 		return getAssignedSeatCount(this.id, date);
 	}
 
+	/**
+	 * Retrieves the number of ticket sales of each movie for each day in a date range, with a single query.
+	 *
+	 * @param movieIds the IDs of the movies
+	 * @param from the first day, inclusive
+	 * @param to the last day, inclusive
+	 * @return the number of sales by movie ID and day, without the days with no sales,
+	 *         or an empty map if unable to read them
+	 */
+	public static Map<Integer, Map<LocalDate, Long>> getDailySales(Collection<Integer> movieIds, LocalDate from, LocalDate to) {
+		return getDailyCounts(salesQuery(), movieIds, from, to);
+	}
+
+	/**
+	 * Retrieves the number of assigned seats of each movie for each day in a date range, with a single query.
+	 *
+	 * @param movieIds the IDs of the movies
+	 * @param from the first day, inclusive
+	 * @param to the last day, inclusive
+	 * @return the number of assigned seats by movie ID and day, without the days with no sessions,
+	 *         or an empty map if unable to read them
+	 */
+	public static Map<Integer, Map<LocalDate, Long>> getDailyAssignedSeatCounts(Collection<Integer> movieIds, LocalDate from, LocalDate to) {
+		return getDailyCounts(assignedSeatQuery(), movieIds, from, to);
+	}
+
+	/**
+	 * Returns a list of ticket sales for the last 30 days for a given movie.
+	 *
+	 * @param movieId the ID of the movie
+	 * @return a list of ticket sales, from 29 days ago to today
+	 */
+	public static List<Integer> getSalesListForLast30Days(int movieId) {
+		LocalDate from = LocalDate.now().minusDays(29);
+		return toDailyList(getDailySales(List.of(movieId), from, LocalDate.now()).get(movieId), from, 30);
+	}
+
+	/**
+	 * Returns a list of ticket sales for the last 30 days.
+	 *
+	 * @return a list of ticket sales for the last 30 days
+	 */
+	public List<Integer> getSalesListForLast30Days() {
+		return getSalesListForLast30Days(this.id);
+	}
+
 	/**
 	 * Returns a list of assigned seat counts for the last 30 days for a given movie.
 	 *
@@ -477,14 +398,8 @@ public class Movie {
 	 * @return a list of assigned seat counts for the last 30 days
 	 */
 	public static List<Integer> getAssignedSeatCountListForLast30Days (int movieId) {
-		List<Integer> assignedSeatCountList = new ArrayList<>();
-
-		LocalDate currentDate = LocalDate.now();
-		for (int i = 29; i >= 0; i--) {
-			assignedSeatCountList.add(getAssignedSeatCount(movieId, currentDate.minusDays(i)));
-		}
-
-		return assignedSeatCountList;
+		LocalDate from = LocalDate.now().minusDays(29);
+		return toDailyList(getDailyAssignedSeatCounts(List.of(movieId), from, LocalDate.now()).get(movieId), from, 30);
 	}
 
 	/**
@@ -496,6 +411,87 @@ public class Movie {
 		return getAssignedSeatCountListForLast30Days(this.id);
 	}
 
+	/**
+	 * Reads the number of ticket sales of a movie on a date on a virtual thread.
+	 *
+	 * @param movieId the ID of the movie
+	 * @param date the date of the sessions
+	 * @return the future number of sales, 0 if unable to read it
+	 */
+	public static CompletableFuture<Integer> getSalesAsync(int movieId, LocalDate date) {
+		return AsyncDatabaseManager.supply(() -> getSales(movieId, date));
+	}
+
+	/**
+	 * Reads the number of ticket sales of a movie for each of the last 30 days on a virtual thread.
+	 *
+	 * @param movieId the ID of the movie
+	 * @return the future list of sales, from 29 days ago to today
+	 */
+	public static CompletableFuture<List<Integer>> getSalesListForLast30DaysAsync(int movieId) {
+		return AsyncDatabaseManager.supply(() -> getSalesListForLast30Days(movieId));
+	}
+
+	/**
+	 * Reads the number of assigned seats of a movie for each of the last 30 days on a virtual thread.
+	 *
+	 * @param movieId the ID of the movie
+	 * @return the future list of assigned seat counts, from 29 days ago to today
+	 */
+	public static CompletableFuture<List<Integer>> getAssignedSeatCountListForLast30DaysAsync(int movieId) {
+		return AsyncDatabaseManager.supply(() -> getAssignedSeatCountListForLast30Days(movieId));
+	}
+
+	// The seats of paid tickets, with their sessions
+	private static AggregateQuery salesQuery() {
+		try {
+			return AggregateQuery.from(SeatAvailability.class)
+				.join(SeatAvailability.class, "ticketId")
+				.join(SeatAvailability.class, "sessionId")
+				.where(Ticket.class, new FilterCondition("isPaid", true, FilterCondition.Relation.EQUALS));
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// All the seats, with their sessions
+	private static AggregateQuery assignedSeatQuery() {
+		try {
+			return AggregateQuery.from(SeatAvailability.class)
+				.join(SeatAvailability.class, "sessionId");
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Map<Integer, Map<LocalDate, Long>> getDailyCounts(AggregateQuery query, Collection<Integer> movieIds,
+			LocalDate from, LocalDate to) {
+		try {
+			return query
+				.where(Session.class,
+					FilterCondition.in("movieId", movieIds),
+					FilterCondition.between("date", from, to))
+				.groupBy(Session.class, "movieId")
+				.groupBy(Session.class, "date")
+				.count()
+				.execute()
+				.toNestedLongMap(Integer.class, LocalDate.class, 0);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return new HashMap<>();
+		}
+	}
+
+	// One count for each day from the first one, 0 for the days without a count
+	private static List<Integer> toDailyList(Map<LocalDate, Long> counts, LocalDate from, int days) {
+		List<Integer> list = new ArrayList<>(days);
+		for (int i = 0; i < days; i++) {
+			Long count = counts == null ? null : counts.get(from.plusDays(i));
+			list.add(count == null ? 0 : count.intValue());
+		}
+		return list;
+	}
+
 	/**
 	 * Deletes a movie from the database with the specified ID.
 	 * 
@@ -515,6 +511,10 @@ public class Movie {
 			// Set the parameters
 			pstmt.setInt(1, id);
 			pstmt.executeUpdate();
+			DatabaseManager.afterCommit(conn, () -> {
+				DatabaseManager.getEntityCache().invalidate(Movie.class, id);
+				SeatMapEngine.invalidateMovie(id);
+			});
 
 			return true;
 		} catch (SQLException e) {
@@ -7,6 +7,8 @@ import database.*;
 import java.sql.PreparedStatement;
 
 @TableName("movie_genre")
+@Index(name = "idx_movie_genre_movie_genre", columns = {"movie_id", "genre_id"}, unique = true)
+@Index(name = "idx_movie_genre_genre", columns = {"genre_id"})
 public class MovieGenre {
 	
 	@PrimaryKey
@@ -13,6 +13,7 @@ import database.*;
 import java.sql.Statement;
 
 @TableName("screening_room")
+@Cached(ttlSeconds = 3600)
 public class ScreeningRoom {
 	private static LocalTime openingTime = LocalTime.of(9, 0);
 	private static LocalTime closingTime = LocalTime.of(23, 59);
@@ -101,6 +102,27 @@ public class ScreeningRoom {
 	 * @return true if the movie was successfully added, false otherwise.
 	 */
 	public boolean addMovieToDate(LocalDate date, int movieId) {
+		try {
+			return DatabaseManager.inTransaction(conn -> addMovieToDate(date, movieId, conn));
+		} catch (SQLException e) {
+			System.err.println("Unable to add movie to date: " + e.getMessage());
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Fills the given date with sessions of the movie using the given connection, unless the
+	 * screening room already has sessions on that date. The transaction is left to the caller.
+	 *
+	 * @param date The date to add the movie to.
+	 * @param movieId The ID of the movie to add.
+	 * @param conn the database connection
+	 * @return true if the movie was added, false if the date already has sessions
+	 * @throws SQLException if the movie does not exist or a database access error occurs
+	 * @throws NoSuchFieldException if a filter refers to a field that does not exist
+	 */
+	public boolean addMovieToDate(LocalDate date, int movieId, Connection conn) throws SQLException, NoSuchFieldException {
 		List<Session> sessionList = new ArrayList<>();
 
 		// Check if the movie is already added to the date
@@ -109,30 +131,30 @@ public class ScreeningRoom {
 				FilterCondition.Relation.EQUALS));
 		filters.add(new FilterCondition("screeningRoomId", this.id, 
 				FilterCondition.Relation.EQUALS));
-		try {
-			// If the movie is not already added to the date, add it
-			if (!DatabaseManager.exists(Session.class, filters)) {
-				LocalDateTime closingDateTime = LocalDateTime.of(date, 
-						ScreeningRoom.closingTime);
-				LocalDateTime time = LocalDateTime.of(date, 
-						ScreeningRoom.openingTime);
-				int extendedDuration = Session.calculateExtendedDuration(DatabaseManager.getRowById(Movie.class, movieId).getDuration());
-				while (time.plusMinutes(extendedDuration).isBefore(closingDateTime)) {
-					sessionList.add(new Session(movieId, this.id, date, 
-							LocalTime.from(time.toLocalTime()), extendedDuration));
-
-					time = time.plusMinutes(extendedDuration);
-				}
+		if (DatabaseManager.exists(Session.class, filters, conn)) {
+			return false;
+		}
 
-				Session.insertList(sessionList);
-				return true;
-			}
-		} catch (Exception e) {
-			System.err.println("Unable to add movie to date: " + e.getMessage());
-			e.printStackTrace();
+		Movie movie = DatabaseManager.getRowById(Movie.class, movieId, conn);
+		if (movie == null) {
+			throw new SQLException("Movie not found: " + movieId);
 		}
 
-		return false;
+		// If the movie is not already added to the date, add it
+		LocalDateTime closingDateTime = LocalDateTime.of(date, 
+				ScreeningRoom.closingTime);
+		LocalDateTime time = LocalDateTime.of(date, 
+				ScreeningRoom.openingTime);
+		int extendedDuration = Session.calculateExtendedDuration(movie.getDuration());
+		while (time.plusMinutes(extendedDuration).isBefore(closingDateTime)) {
+			sessionList.add(new Session(movieId, this.id, date, 
+					LocalTime.from(time.toLocalTime()), extendedDuration));
+
+			time = time.plusMinutes(extendedDuration);
+		}
+
+		Session.insertList(sessionList, conn);
+		return true;
 	}
 
 	/**
@@ -141,116 +163,45 @@ public class ScreeningRoom {
 	 * @return true if the insertion is successful, false otherwise.
 	 */
 	public boolean insertToDatabase() {
-
-		List<Seat> seatList = new ArrayList<>();
-
-		// Create the query
-		String queryScreeningRoom = DatabaseAnnotationUtils.getInsertQuery(ScreeningRoom.class);
-		String querySeat = DatabaseAnnotationUtils.getInsertQuery(Seat.class);
-
-		// Execute the query
-
-		Connection connection = null;
-		PreparedStatement stmtScreeningRoom = null;
-		PreparedStatement stmtSeat = null;
-
-		try{
-			connection = DatabaseManager.getConnection();
-			stmtScreeningRoom = connection.prepareStatement(queryScreeningRoom, PreparedStatement.RETURN_GENERATED_KEYS);
-			stmtSeat = connection.prepareStatement(querySeat);
-		
-			// Add a check for seat_col_count
-			if (this.getSeatRowCount() == 0 || this.getSeatColCount() == 0) {
-				throw new IllegalArgumentException("seat_col_count cannot be null");
-			}
-
-			DatabaseAnnotationUtils.setPreparedStatementValueSet(
-				DatabaseAnnotationUtils.getColumnNamesAndFields(ScreeningRoom.class),
-				this, stmtScreeningRoom);
-
-
-			// Start a transaction
-			connection.setAutoCommit(false);
-			
-			stmtScreeningRoom.executeUpdate();
-			ResultSet rsId = stmtScreeningRoom.getGeneratedKeys();
-
-			// Get the generated id of the screening room
-			if (rsId.next()) {
-				this.setID(rsId.getInt(1));
-			} else {
-				throw new SQLException("Unable to get the generated id");
-			}
-
-			// Create the seats
-			for (int i = 0; i < this.getSeatRowCount(); i++) {
-				for (int j = 0; j < this.getSeatColCount(); j++) {
-					seatList.add(new Seat(this.id, i, j));
-				}
-			}
-			
-			// Add seats to the batch
-			for (Seat seat : seatList) {
-				DatabaseAnnotationUtils.setPreparedStatementValueSet(
-					DatabaseAnnotationUtils.getColumnNamesAndFields(Seat.class), 
-					seat, stmtSeat);
-				stmtSeat.addBatch();
-			}
-
-			// Execute the batch
-			stmtSeat.executeBatch();
-			
-			// Commit the transaction
-			connection.commit();
+		try {
+			DatabaseManager.inTransaction(this::insertToDatabase);
 			return true;
-		} catch (Exception e) {
-			
-			if (connection != null) {
-				try {
-					// Roll back the transaction if something went wrong
-					connection.rollback();
-				} catch (SQLException ex) {
-					ex.printStackTrace();
-				}
-			}
-			
+		} catch (SQLException | IllegalArgumentException e) {
 			System.err.println("Unable to insert screening room: " + e.getMessage());
 			e.printStackTrace();
 			return false;
 		}
-		finally {
-			// Close the connection
-			if (stmtScreeningRoom != null) {
-				try {
-					stmtScreeningRoom.close();
-				} catch (SQLException e) {
-					System.err.println("Unable to close the statement: " + e.getMessage());
-					e.printStackTrace();
-				}
-			}
-			if (stmtSeat != null) {
-				try {
-					stmtSeat.close();
-				} catch (SQLException e) {
-					System.err.println("Unable to close the statement: " + e.getMessage());
-					e.printStackTrace();
-				}
-			}
-			if (connection != null) {
-				try {
-					connection.setAutoCommit(true);
-				} catch (SQLException e) {
-					System.err.println("Unable to set auto commit to true: " + e.getMessage());
-					e.printStackTrace();
-				}
-				try {
-					connection.close();
-				} catch (SQLException e) {
-					System.err.println("Unable to close the connection: " + e.getMessage());
-					e.printStackTrace();
-				}
+	}
+
+	/**
+	 * Inserts the screening room and its seats using the given connection, setting the ID of the
+	 * screening room. The transaction is left to the caller.
+	 *
+	 * @param connection the database connection
+	 * @return the generated ID of the screening room
+	 * @throws SQLException if a database access error occurs
+	 * @throws IllegalArgumentException if the screening room has no seats
+	 */
+	public int insertToDatabase(Connection connection) throws SQLException {
+		// Add a check for seat_col_count
+		if (this.getSeatRowCount() == 0 || this.getSeatColCount() == 0) {
+			throw new IllegalArgumentException("seat_col_count cannot be null");
+		}
+
+		// Get the generated id of the screening room
+		this.setID(DatabaseManager.insertRow(this, connection));
+
+		// Create the seats
+		List<Seat> seatList = new ArrayList<>();
+		for (int i = 0; i < this.getSeatRowCount(); i++) {
+			for (int j = 0; j < this.getSeatColCount(); j++) {
+				seatList.add(new Seat(this.id, i, j));
 			}
 		}
+		
+		// Insert the seats in batches
+		DatabaseManager.insertAll(seatList, connection);
+		return this.id;
 	}
 
 	/**
@@ -297,6 +248,11 @@ public class ScreeningRoom {
 			ps.setInt(1, id);
 			ps.executeUpdate();
 
+			DatabaseManager.afterCommit(conn, () -> {
+				DatabaseManager.getEntityCache().invalidate(ScreeningRoom.class, id);
+				DatabaseManager.getEntityCache().invalidateAll(Seat.class);
+				SeatMapEngine.invalidateScreeningRoom(id);
+			});
 
 			return true;
 		} catch (SQLException e) {
@@ -363,7 +319,8 @@ public class ScreeningRoom {
 						date,
 						FilterCondition.Relation.EQUALS)),
 				null,
-				false);
+				false,
+				conn);
 
 			for (Session session : sessionList) {
 				if (!Session.deleteFromDatabase(session.getId(), conn)) {
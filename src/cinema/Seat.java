@@ -5,6 +5,8 @@ import java.util.List;
 import database.*;
 
 @TableName("seat")
+@Cached(ttlSeconds = 3600)
+@Index(name = "idx_seat_room_position", columns = {"screening_room_id", "row", "col"}, unique = true)
 public class Seat {
 	@PrimaryKey
 	@ColumnName("id")
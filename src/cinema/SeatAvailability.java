@@ -1,16 +1,22 @@
 package cinema;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import database.*;
 
 @TableName("seat_availability")
+@Index(name = "idx_seat_availability_session_seat", columns = {"session_id", "seat_id"}, unique = true)
+@Index(name = "idx_seat_availability_ticket_session", columns = {"ticket_id", "session_id"})
 public class SeatAvailability {
 	
 	@PrimaryKey
@@ -67,7 +73,12 @@ public class SeatAvailability {
 
 	// Setters
 
-
+	/**
+	 * Retrieves all seat availabilities from the database. The whole table is loaded into memory,
+	 * scans of the seat availabilities should use {@link DatabaseManager#forEachRow} instead.
+	 *
+	 * @return the seat availabilities, empty if unable to read them
+	 */
 	public static List<SeatAvailability> getAllSeatAvailabilities() {
 		try {
 			return DatabaseManager.getAllRows(SeatAvailability.class);
@@ -77,121 +88,144 @@ public class SeatAvailability {
 		}
 	}
 
-	public static Ticket bookSeatList (List<SeatAvailability> seatAvList, double price) {
-		String sql = "UPDATE seat_availability SET is_available = 0, ticket_id = ? WHERE id = ?";
-		String sqlTicket = DatabaseAnnotationUtils.getInsertQuery(Ticket.class);
-		String sqlTicketCode = "UPDATE ticket SET code = ? WHERE id = ?";
-		Integer ticketId = null;
-		int code = 0;
-		int rand = new Random().nextInt(10000);
+	/**
+	 * Retrieves the seat availabilities of a session, ordered by ID, with their seats, in a single query.
+	 *
+	 * @param sessionId the ID of the session
+	 * @return the seat availabilities and their seats, or null if unable to read them
+	 */
+	public static FetchResult<SeatAvailability> getSeatMapWithSeats(int sessionId) {
+		try {
+			return DatabaseManager.getRowsWithRelations(FetchPlan.of(SeatAvailability.class).with("seatId"),
+				List.of(new FilterCondition("sessionId", sessionId, FilterCondition.Relation.EQUALS)),
+				"id", true);
+		} catch (Exception e) {
+			System.err.println("Unable to get seat availabilities: " + e.getMessage());
+			return null;
+		}
+	}
 
+	/**
+	 * Books the given seats in one transaction, holding the {@link SessionLocks} of their sessions.
+	 *
+	 * @param seatAvList the seat availabilities to book
+	 * @param price the price of the ticket
+	 * @return the created ticket, or null if a seat is not available or the booking cannot be written
+	 */
+	@SuppressWarnings("try")
+	public static Ticket bookSeatList (List<SeatAvailability> seatAvList, double price) {
 		// Check if the list is empty
 		if (seatAvList.isEmpty()) {
 			return (Ticket)null;
 		}
 
-		Connection conn = null;
-		PreparedStatement stmt = null;
-		PreparedStatement stmtTicket = null;
-		PreparedStatement stmtTicketCode = null;
-		try {
-			conn = DatabaseManager.getConnection();
-			stmt = conn.prepareStatement(sql);
-			stmtTicket = conn.prepareStatement(sqlTicket);
-			stmtTicketCode = conn.prepareStatement(sqlTicketCode);
-
-			// Start the transaction
-			conn.setAutoCommit(false);
-
-			// Create a ticket
-			Ticket ticket = new Ticket(false, false, LocalDate.now(), price);
-
-			// Set the values of the ticket
-			DatabaseAnnotationUtils.setPreparedStatementValueSet(
-				DatabaseAnnotationUtils.getColumnNamesAndFields(
-					Ticket.class), 
-				ticket, stmtTicket);
-			
-			// Insert the ticket and get the id
-			stmtTicket.executeUpdate();
-			ResultSet ticketResult = stmtTicket.getGeneratedKeys();
-			if (ticketResult.next()) {
-				ticketId = ticketResult.getInt(1);
-			} else {
-				throw new SQLException("Unable to get the ticket id");
+		try (SessionLocks.Held locks = SessionLocks.lockAll(sessionIdsOf(seatAvList))) {
+			// Take the seats in the seat maps too, so the holds are respected and the terminals see the booking
+			Object reservation = SeatMapEngine.reserveAll(seatAvList);
+			if (reservation == null) {
+				System.err.println("Unable to book seat list: Seat is not available");
+				return (Ticket)null;
 			}
-
-			ticket.setId(ticketId);
-
-			// Generate code
-			code = (ticketId%10) + ((ticketId/10)%10)*100 + ((ticketId/100)%10)*10000 + ((ticketId/1000)%10)*1000000;
-			code += (rand%10)*10 + ((rand/10)%10)*1000 + ((rand/100)%10)*100000 + ((rand/1000)%10)*10000000;
-			ticket.setCode(code);
-
-			// Update the ticket code
-			stmtTicketCode.setInt(1, code);
-			stmtTicketCode.setInt(2, ticketId);
-			stmtTicketCode.executeUpdate();
-
-			// Update the seat availabilities
-			for (SeatAvailability seatAv : seatAvList) {
-				SeatAvailability seatAvDB = DatabaseManager.getRowById(SeatAvailability.class, seatAv.getId());
-				if (seatAvDB == null || !seatAvDB.isAvailable()) {
-					throw new SQLException("Seat is not available");
-				}
-				stmt.setInt(1, ticket.getId());
-				stmt.setInt(2, seatAv.getId());
-				stmt.addBatch();
+			boolean written = false;
+			try {
+				Ticket ticket = DatabaseManager.inTransaction(conn -> bookSeatList(seatAvList, price, conn));
+				written = true;
+				return ticket;
+			} finally {
+				SeatMapEngine.settle(reservation, seatAvList, written);
 			}
-
-			stmt.executeBatch();
-			conn.commit();
-			return ticket;
-		} catch (Exception e) {
+		} catch (SQLException e) {
 			System.err.println("Unable to book seat list: " + e.getMessage());
-			if (conn != null) {
-				try {
-					conn.rollback();
-				} catch (Exception e2) {
-					System.err.println("Unable to rollback transaction: " + e2.getMessage());
-				}
-			}
 			return (Ticket)null;
-		} finally {
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (Exception e) {
-					System.err.println("Unable to close statement: " + e.getMessage());
-				}
-			}
-			if (stmtTicket != null) {
-				try {
-					stmtTicket.close();
-				} catch (Exception e) {
-					System.err.println("Unable to close statement: " + e.getMessage());
-				}
-			}
-			if (stmtTicketCode != null) {
-				try {
-					stmtTicketCode.close();
-				} catch (Exception e) {
-					System.err.println("Unable to close statement: " + e.getMessage());
-				}
-			}
-			if (conn != null) {
-				try {
-					conn.setAutoCommit(true);
-				} catch (Exception e) {
-					System.err.println("Unable to set auto commit to true: " + e.getMessage());
-				}
-
-				try {
-					conn.close();
-				} catch (Exception e) {
-					System.err.println("Unable to close connection: " + e.getMessage());
-				}
-			}
 		}
 	}
+
+	/**
+	 * Books the given seats on a virtual thread. If the deadline is reached before the booking
+	 * is committed, it is rolled back and the future fails with a TimeoutException, so a failed
+	 * future never leaves a ticket behind.
+	 * The {@link SessionLocks} are not held while waiting, the seats are taken in the seat maps of
+	 * {@link SeatMapEngine} before the booking is submitted and given back if it fails.
+	 *
+	 * @param seatAvList the seat availabilities to book
+	 * @param price the price of the ticket
+	 * @param deadline the maximum time from now until the booking is done, or null for no deadline
+	 * @return the future ticket, failing if a seat is not available or the booking is not done in time
+	 */
+	public static CompletableFuture<Ticket> bookSeatListAsync (List<SeatAvailability> seatAvList, double price, Duration deadline) {
+		if (seatAvList.isEmpty()) {
+			return CompletableFuture.failedFuture(new IllegalArgumentException("No seats to book"));
+		}
+		Object reservation = SeatMapEngine.reserveAll(seatAvList);
+		if (reservation == null) {
+			return CompletableFuture.failedFuture(new SQLException("Seat is not available"));
+		}
+		CompletableFuture<Ticket> booking = AsyncDatabaseManager.inTransaction(conn -> bookSeatList(seatAvList, price, conn), deadline);
+		booking.whenComplete((ticket, e) -> SeatMapEngine.settle(reservation, seatAvList, e == null));
+		return booking;
+	}
+
+	/**
+	 * Creates a ticket for the given seats and marks them as taken, using the given connection.
+	 * The transaction is left to the caller, who takes the {@link SessionLocks} of the sessions
+	 * before borrowing the connection.
+	 *
+	 * @param seatAvList the seat availabilities to book
+	 * @param price the price of the ticket
+	 * @param conn the database connection
+	 * @return the created ticket
+	 * @throws SQLException if a seat is not available or a database access error occurs
+	 */
+	public static Ticket bookSeatList (List<SeatAvailability> seatAvList, double price, Connection conn) throws SQLException {
+		int rand = new Random().nextInt(10000);
+
+		// Create a ticket and get its id
+		Ticket ticket = new Ticket(false, false, LocalDate.now(), price);
+		int ticketId = DatabaseManager.insertRow(ticket, conn);
+		ticket.setId(ticketId);
+
+		// Generate code
+		int code = (ticketId%10) + ((ticketId/10)%10)*100 + ((ticketId/100)%10)*10000 + ((ticketId/1000)%10)*1000000;
+		code += (rand%10)*10 + ((rand/10)%10)*1000 + ((rand/100)%10)*100000 + ((rand/1000)%10)*10000000;
+		ticket.setCode(code);
+
+		// Update the ticket code
+		DatabaseManager.updateRow(ticket, conn);
+
+		// Claim all the seats with one statement, which only takes the seats that are still available
+		Set<Integer> seatAvIds = new LinkedHashSet<>();
+		for (SeatAvailability seatAv : seatAvList) {
+			seatAvIds.add(seatAv.getId());
+		}
+		Map<String, Object> values = new LinkedHashMap<>();
+		values.put("isAvailable", false);
+		values.put("ticketId", ticketId);
+		int claimed;
+		try {
+			claimed = DatabaseManager.updateWhere(SeatAvailability.class, values,
+					List.of(FilterCondition.in("id", seatAvIds),
+							new FilterCondition("isAvailable", true, FilterCondition.Relation.EQUALS)),
+					conn);
+		} catch (NoSuchFieldException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+		if (claimed != seatAvIds.size()) {
+			throw new SQLException("Seat is not available");
+		}
+		return ticket;
+	}
+
+	/**
+	 * Returns the distinct session IDs of the given seat availabilities.
+	 *
+	 * @param seatAvList the seat availabilities
+	 * @return the session IDs
+	 */
+	static Set<Integer> sessionIdsOf(List<SeatAvailability> seatAvList) {
+		Set<Integer> sessionIds = new LinkedHashSet<>();
+		for (SeatAvailability seatAv : seatAvList) {
+			sessionIds.add(seatAv.getSessionId());
+		}
+		return sessionIds;
+	}
 }
@@ -0,0 +1,64 @@
+package cinema;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Seats of a session kept for a customer for a limited time by {@link SeatHoldManager}.
+ *
+ * The seats are reserved in the session by {@link SeatMapEngine}, which keeps them taken on its seat
+ * map even when the map is reloaded, but nothing is written to the database until the hold is purchased. A hold that is not purchased or released before it expires gives its seats back.
+ */
+public final class SeatHold {
+	private final long id;
+	private final int sessionId;
+	private final List<SeatAvailability> seatAvailabilities;
+	private final long expiresAtNanos;
+
+	volatile TimingWheel.Timeout timeout;
+
+	SeatHold(long id, int sessionId, List<SeatAvailability> seatAvailabilities, Duration holdTime) {
+		this.id = id;
+		this.sessionId = sessionId;
+		this.seatAvailabilities = seatAvailabilities;
+		this.expiresAtNanos = System.nanoTime() + holdTime.toNanos();
+	}
+
+	// Getters
+
+	public long getId() {
+		return id;
+	}
+
+	public int getSessionId() {
+		return sessionId;
+	}
+
+	public List<SeatAvailability> getSeatAvailabilities() {
+		return seatAvailabilities;
+	}
+
+	/**
+	 * Returns the time left before the hold expires.
+	 *
+	 * @return the remaining time, zero if the hold has expired
+	 */
+	public Duration getRemainingTime() {
+		return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+	}
+
+	/**
+	 * Returns whether the hold still keeps its seats: it has not expired, been released or been purchased.
+	 *
+	 * @return true if the hold is active
+	 */
+	public boolean isActive() {
+		return SeatHoldManager.isActive(this);
+	}
+
+	@Override
+	public String toString() {
+		return "SeatHold[" + id + ", session " + sessionId + ", " + seatAvailabilities.size() + " seats, "
+				+ getRemainingTime().toSeconds() + "s left]";
+	}
+}
@@ -0,0 +1,265 @@
+package cinema;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps seats for customers while they pay, without writing to the database.
+ *
+ * A hold reserves its seats in {@link SeatMapEngine}, so other terminals see them as unavailable even
+ * after the seat map of the session is reloaded, and gives them back when it expires, is released or
+ * when the purchase fails. Only a
+ * purchased hold is written, as a paid ticket, in one transaction. An abandoned terminal therefore
+ * keeps its seats for the hold time at most, and browsing seats writes nothing.
+ *
+ * The holds expire on a timing wheel with a tick of {@link #EXPIRY_TICK}. Holding, releasing, purchasing
+ * and expiring take the {@link SessionLocks} of the session.
+ */
+public final class SeatHoldManager {
+	public static final Duration DEFAULT_HOLD_TIME = Duration.ofMinutes(5);
+	public static final Duration EXPIRY_TICK = Duration.ofMillis(100);
+
+	private static final Map<Long, SeatHold> ACTIVE_HOLDS = new ConcurrentHashMap<>();
+	private static final AtomicLong NEXT_ID = new AtomicLong(1);
+	private static final long STARTED_AT = System.nanoTime();
+
+	private static final AtomicLong createdCount = new AtomicLong();
+	private static final AtomicLong rejectedCount = new AtomicLong();
+	private static final AtomicLong expiredCount = new AtomicLong();
+	private static final AtomicLong releasedCount = new AtomicLong();
+	private static final AtomicLong purchasedCount = new AtomicLong();
+	private static final AtomicLong failedPurchaseCount = new AtomicLong();
+
+	private static TimingWheel timingWheel;
+
+	private SeatHoldManager() {
+		throw new AssertionError("Cannot instantiate SeatHoldManager");
+	}
+
+	/**
+	 * Holds the given seats of a session for {@link #DEFAULT_HOLD_TIME}.
+	 *
+	 * @param sessionId the ID of the session of the seats
+	 * @param seatAvList the seat availabilities to hold
+	 * @return the hold, or null if a seat is not available
+	 */
+	public static SeatHold hold(int sessionId, List<SeatAvailability> seatAvList) {
+		return hold(sessionId, seatAvList, DEFAULT_HOLD_TIME);
+	}
+
+	/**
+	 * Holds the given seats of a session for the given time.
+	 *
+	 * @param sessionId the ID of the session of the seats
+	 * @param seatAvList the seat availabilities to hold
+	 * @param holdTime the time after which the seats are given back if the hold is not purchased
+	 * @return the hold, or null if a seat is not available
+	 * @throws IllegalArgumentException if the list is empty or a seat is not one of the session
+	 */
+	@SuppressWarnings("try")
+	public static SeatHold hold(int sessionId, List<SeatAvailability> seatAvList, Duration holdTime) {
+		if (seatAvList.isEmpty()) {
+			throw new IllegalArgumentException("No seats to hold");
+		}
+		SeatHold hold = new SeatHold(NEXT_ID.getAndIncrement(), sessionId, List.copyOf(seatAvList), holdTime);
+		try (SessionLocks.Held lock = SessionLocks.lock(sessionId)) {
+			try {
+				if (SeatMapEngine.reserve(sessionId, hold, hold.getSeatAvailabilities()) == null) {
+					rejectedCount.incrementAndGet();
+					return null;
+				}
+			} catch (IllegalStateException e) {
+				System.err.println("Unable to hold seats: " + e.getMessage());
+				return null;
+			}
+
+			ACTIVE_HOLDS.put(hold.getId(), hold);
+			createdCount.incrementAndGet();
+			// The wheel thread only starts the expiry, which waits for the session lock on its own thread
+			hold.timeout = getTimingWheel().schedule(() -> Thread.ofVirtual().start(() -> expire(hold)), holdTime);
+			return hold;
+		}
+	}
+
+	/**
+	 * Gives back the seats of a hold.
+	 *
+	 * @param hold the hold
+	 * @return true if the hold was active
+	 */
+	@SuppressWarnings("try")
+	public static boolean release(SeatHold hold) {
+		try (SessionLocks.Held lock = SessionLocks.lock(hold.getSessionId())) {
+			if (!end(hold)) {
+				return false;
+			}
+			SeatMapEngine.unreserve(hold.getSessionId(), hold, true);
+			releasedCount.incrementAndGet();
+			return true;
+		}
+	}
+
+	/**
+	 * Books the seats of an active hold as a paid ticket, waiting until it is written.
+	 *
+	 * @param hold the hold
+	 * @param price the price of the ticket
+	 * @return the paid ticket, or null if the hold is no longer active or the ticket cannot be written
+	 */
+	@SuppressWarnings("try")
+	public static Ticket purchase(SeatHold hold, double price) {
+		// The persister takes the session lock to write the ticket, wait for it without holding the lock
+		CompletableFuture<Ticket> written;
+		try (SessionLocks.Held lock = SessionLocks.lock(hold.getSessionId())) {
+			if (!end(hold)) {
+				System.err.println("Unable to purchase seat hold: the hold is no longer active");
+				failedPurchaseCount.incrementAndGet();
+				return null;
+			}
+			written = SeatMapEngine.write(hold.getSessionId(), hold, hold.getSeatAvailabilities(), price, true);
+		}
+		try {
+			Ticket ticket = written.get();
+			purchasedCount.incrementAndGet();
+			return ticket;
+		} catch (ExecutionException e) {
+			System.err.println("Unable to purchase seat hold: " + e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println("Unable to purchase seat hold: interrupted");
+		}
+		failedPurchaseCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Returns the current holds and the counters of the hold events since the application started.
+	 *
+	 * @return the statistics
+	 */
+	public static HoldStatistics getStatistics() {
+		return new HoldStatistics(ACTIVE_HOLDS.size(), createdCount.get(), rejectedCount.get(), expiredCount.get(),
+				releasedCount.get(), purchasedCount.get(), failedPurchaseCount.get(), System.nanoTime() - STARTED_AT);
+	}
+
+	static boolean isActive(SeatHold hold) {
+		return ACTIVE_HOLDS.get(hold.getId()) == hold;
+	}
+
+	/**
+	 * Runs on its own thread, the timing wheel thread must not wait for the session lock held by a writing persister.
+	 */
+	@SuppressWarnings("try")
+	private static void expire(SeatHold hold) {
+		try (SessionLocks.Held lock = SessionLocks.lock(hold.getSessionId())) {
+			if (ACTIVE_HOLDS.remove(hold.getId(), hold)) {
+				SeatMapEngine.unreserve(hold.getSessionId(), hold, true);
+				expiredCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Makes the hold inactive. Only the first of expiry, release and purchase succeeds.
+	 */
+	private static boolean end(SeatHold hold) {
+		if (!ACTIVE_HOLDS.remove(hold.getId(), hold)) {
+			return false;
+		}
+		// The timeout is set after the hold is published, an expiry without it finds the hold gone
+		TimingWheel.Timeout timeout = hold.timeout;
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		return true;
+	}
+
+	private static synchronized TimingWheel getTimingWheel() {
+		if (timingWheel == null) {
+			timingWheel = new TimingWheel("seat-hold-expiry", EXPIRY_TICK);
+		}
+		return timingWheel;
+	}
+
+	/**
+	 * The number of active holds and the counters of the hold events.
+	 */
+	public static class HoldStatistics {
+		private final int activeCount;
+		private final long createdCount;
+		private final long rejectedCount;
+		private final long expiredCount;
+		private final long releasedCount;
+		private final long purchasedCount;
+		private final long failedPurchaseCount;
+		private final long elapsedNanos;
+
+		HoldStatistics(int activeCount, long createdCount, long rejectedCount, long expiredCount,
+				long releasedCount, long purchasedCount, long failedPurchaseCount, long elapsedNanos) {
+			this.activeCount = activeCount;
+			this.createdCount = createdCount;
+			this.rejectedCount = rejectedCount;
+			this.expiredCount = expiredCount;
+			this.releasedCount = releasedCount;
+			this.purchasedCount = purchasedCount;
+			this.failedPurchaseCount = failedPurchaseCount;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		// Getters
+
+		public int getActiveCount() {
+			return activeCount;
+		}
+
+		public long getCreatedCount() {
+			return createdCount;
+		}
+
+		/**
+		 * Returns the number of holds refused because a seat was not available.
+		 *
+		 * @return the number of refused holds
+		 */
+		public long getRejectedCount() {
+			return rejectedCount;
+		}
+
+		public long getExpiredCount() {
+			return expiredCount;
+		}
+
+		public long getReleasedCount() {
+			return releasedCount;
+		}
+
+		public long getPurchasedCount() {
+			return purchasedCount;
+		}
+
+		public long getFailedPurchaseCount() {
+			return failedPurchaseCount;
+		}
+
+		/**
+		 * Returns the number of expired holds per second since the application started.
+		 *
+		 * @return the expiry rate
+		 */
+		public double getExpiriesPerSecond() {
+			return elapsedNanos <= 0 ? 0.0 : expiredCount / (elapsedNanos / 1_000_000_000.0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("active=%d created=%d rejected=%d expired=%d (%.2f/s) released=%d purchased=%d failedPurchases=%d",
+					activeCount, createdCount, rejectedCount, expiredCount, getExpiriesPerSecond(),
+					releasedCount, purchasedCount, failedPurchaseCount);
+		}
+	}
+}
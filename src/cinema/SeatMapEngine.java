@@ -0,0 +1,523 @@
+package cinema;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
+
+import database.*;
+
+/**
+ * Holds the seat maps of the sessions in memory and books seats on them before writing to the database.
+ *
+ * A booking first claims its seats on the {@link SessionSeatMap} of the session, which fails at once
+ * if a seat was taken by another terminal of this application, without touching the database. The
+ * claimed seats are then written behind by a single persister thread, which books the claims waiting
+ * in the queue in one transaction, each claim under its own savepoint, holding the {@link SessionLocks}
+ * of their sessions. The database stays the reference: a claim whose seats were taken by another
+ * application fails when it is written, and only its seats are read again.
+ *
+ * The seats taken in memory and not written yet are kept as reservations of their session, and taken
+ * again on the new seat map whenever the seat map of the session is reloaded, so dropping a seat map
+ * never frees them. The reservations and the seat maps change under the {@link SessionLocks} of the
+ * session.
+ *
+ * The seat maps are loaded on first use, or all at once by {@link #rebuild(LocalDate)} when the
+ * application starts. They are dropped after the sessions they show are deleted.
+ */
+public final class SeatMapEngine {
+	public static final int FLUSH_BATCH_SIZE = 64;
+
+	private static final Map<Integer, SessionSeatMap> SEAT_MAPS = new ConcurrentHashMap<>();
+	private static final Map<Integer, Map<Object, int[]>> RESERVATIONS = new ConcurrentHashMap<>();
+	private static final BlockingQueue<Claim> PENDING = new LinkedBlockingQueue<>();
+	private static Thread persister;
+
+	private SeatMapEngine() {
+		throw new AssertionError("Cannot instantiate SeatMapEngine");
+	}
+
+	/**
+	 * Returns the seat map of a session, loading it on the first call. Loading takes the lock of the
+	 * session, so it must not be called while holding a connection of the write lane.
+	 *
+	 * @param sessionId the ID of the session
+	 * @return the seat map, or null if the session does not exist or its seats cannot be read
+	 */
+	@SuppressWarnings("try")
+	public static SessionSeatMap getSeatMap(int sessionId) {
+		SessionSeatMap seatMap = SEAT_MAPS.get(sessionId);
+		if (seatMap != null) {
+			return seatMap;
+		}
+		// Loaded under the lock so no reservation is written and dropped between the read and the put
+		try (SessionLocks.Held lock = SessionLocks.lock(sessionId)) {
+			seatMap = SEAT_MAPS.get(sessionId);
+			if (seatMap == null) {
+				seatMap = load(sessionId);
+				if (seatMap != null) {
+					SEAT_MAPS.put(sessionId, seatMap);
+				}
+			}
+			return seatMap;
+		}
+	}
+
+	/**
+	 * Replaces the seat maps with the ones of the sessions from the given date, read with four queries.
+	 *
+	 * @param from the date of the first session to load
+	 * @return the number of loaded seat maps, or -1 if they cannot be read
+	 */
+	@SuppressWarnings("try")
+	public static int rebuild(LocalDate from) {
+		try (SessionLocks.Held locks = SessionLocks.lockAllSessions()) {
+			List<Session> sessions = DatabaseManager.getRowsFilteredAndSortedBy(Session.class,
+					List.of(new FilterCondition("date", from, FilterCondition.Relation.GREATER_THAN_OR_EQUALS)), "id", true);
+			SEAT_MAPS.clear();
+			if (sessions.isEmpty()) {
+				return 0;
+			}
+
+			Map<Integer, ScreeningRoom> rooms = new HashMap<>();
+			for (ScreeningRoom room : DatabaseManager.getAllRows(ScreeningRoom.class)) {
+				rooms.put(room.getId(), room);
+			}
+			// The seats and seat availabilities go straight into the maps, without a list of all the rows
+			Map<Integer, Seat> seats = new HashMap<>();
+			DatabaseManager.forEachRow(Seat.class, List.of(), null, false, false, seat -> seats.put(seat.getId(), seat));
+
+			List<Integer> sessionIds = new ArrayList<>(sessions.size());
+			Map<Integer, List<SeatAvailability>> seatAvailabilities = new HashMap<>();
+			for (Session session : sessions) {
+				sessionIds.add(session.getId());
+				seatAvailabilities.put(session.getId(), new ArrayList<>());
+			}
+			DatabaseManager.forEachRow(SeatAvailability.class, List.of(FilterCondition.in("sessionId", sessionIds)), "id", true,
+					false, seatAv -> seatAvailabilities.get(seatAv.getSessionId()).add(seatAv));
+
+			for (Session session : sessions) {
+				ScreeningRoom room = rooms.get(session.getScreeningRoomId());
+				if (room != null) {
+					SessionSeatMap seatMap = new SessionSeatMap(session, room, seatAvailabilities.get(session.getId()), seats);
+					takeReserved(seatMap);
+					SEAT_MAPS.put(session.getId(), seatMap);
+				}
+			}
+			return SEAT_MAPS.size();
+		} catch (Exception e) {
+			System.err.println("Unable to load seat maps: " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * Drops the seat map of a session, which is read again from the database on next use. The seats
+	 * reserved in the session stay taken on the new seat map.
+	 *
+	 * The lock of the session is not taken, so the seat map can be dropped after a commit by a thread
+	 * still holding its connection.
+	 *
+	 * @param sessionId the ID of the session
+	 */
+	public static void invalidate(int sessionId) {
+		SEAT_MAPS.remove(sessionId);
+	}
+
+	/**
+	 * Drops the seat maps of the sessions of a movie.
+	 *
+	 * @param movieId the ID of the movie
+	 */
+	public static void invalidateMovie(int movieId) {
+		invalidateIf(seatMap -> seatMap.getMovieId() == movieId);
+	}
+
+	/**
+	 * Drops the seat maps of the sessions in a screening room.
+	 *
+	 * @param screeningRoomId the ID of the screening room
+	 */
+	public static void invalidateScreeningRoom(int screeningRoomId) {
+		invalidateIf(seatMap -> seatMap.getScreeningRoomId() == screeningRoomId);
+	}
+
+	/**
+	 * Claims the given seats of a session and books them in the background.
+	 *
+	 * @param sessionId the ID of the session of the seats
+	 * @param seatAvList the seat availabilities to book
+	 * @param price the price of the ticket
+	 * @return the future ticket, failing at once with an IllegalStateException if a seat is already taken,
+	 *         or with an SQLException if the booking cannot be written
+	 */
+	public static CompletableFuture<Ticket> claim(int sessionId, List<SeatAvailability> seatAvList, double price) {
+		if (seatAvList.isEmpty()) {
+			return CompletableFuture.failedFuture(new IllegalArgumentException("No seats to book"));
+		}
+		Object reservation = new Object();
+		try {
+			if (reserve(sessionId, reservation, seatAvList) == null) {
+				return CompletableFuture.failedFuture(new IllegalStateException("Seat is not available"));
+			}
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return write(sessionId, reservation, List.copyOf(seatAvList), price, false);
+	}
+
+	/**
+	 * Takes the given seats of a session on its seat map and reserves them for the owner, so they stay
+	 * taken when the seat map is reloaded, until the reservation is written or given back.
+	 *
+	 * @param owner the owner of the reservation, one reservation per owner and session
+	 * @return the positions of the seats, or null if a seat is already taken
+	 * @throws IllegalStateException if the seat map of the session is not available
+	 * @throws IllegalArgumentException if a seat is not one of the session
+	 */
+	@SuppressWarnings("try")
+	static int[] reserve(int sessionId, Object owner, List<SeatAvailability> seatAvList) {
+		try (SessionLocks.Held lock = SessionLocks.lock(sessionId)) {
+			SessionSeatMap seatMap = getSeatMap(sessionId);
+			if (seatMap == null) {
+				throw new IllegalStateException("Seat map of session " + sessionId + " is not available");
+			}
+			int[] positions = seatMap.positionsOf(seatAvList);
+			if (!seatMap.tryClaim(positions)) {
+				return null;
+			}
+			reservationsOf(sessionId).put(owner, positions);
+			return positions;
+		}
+	}
+
+	/**
+	 * Ends a reservation of a session, giving back its seats on the current seat map if asked.
+	 *
+	 * @param owner the owner of the reservation
+	 * @param release whether the seats are made available again
+	 */
+	@SuppressWarnings("try")
+	static void unreserve(int sessionId, Object owner, boolean release) {
+		try (SessionLocks.Held lock = SessionLocks.lock(sessionId)) {
+			Map<Object, int[]> reservations = RESERVATIONS.get(sessionId);
+			int[] positions = reservations == null ? null : reservations.remove(owner);
+			if (positions == null) {
+				return;
+			}
+			if (reservations.isEmpty()) {
+				RESERVATIONS.remove(sessionId);
+			}
+			SessionSeatMap seatMap = SEAT_MAPS.get(sessionId);
+			if (release && seatMap != null) {
+				seatMap.release(positions);
+			}
+		}
+	}
+
+	/**
+	 * Queues seats reserved by the owner to be booked by the persister. The reservation passes to the
+	 * booking until it is written, and the seats are given back if it fails.
+	 *
+	 * @param owner the owner of the reservation
+	 * @param paid whether the ticket is marked as paid in the same transaction
+	 * @return the future ticket, failing at once with an IllegalStateException if the owner has no reservation
+	 */
+	@SuppressWarnings("try")
+	static CompletableFuture<Ticket> write(int sessionId, Object owner, List<SeatAvailability> seatAvList, double price, boolean paid) {
+		Claim claim = new Claim(sessionId, seatAvList, price, paid);
+		try (SessionLocks.Held lock = SessionLocks.lock(sessionId)) {
+			Map<Object, int[]> reservations = RESERVATIONS.get(sessionId);
+			int[] positions = reservations == null ? null : reservations.remove(owner);
+			if (positions == null) {
+				return CompletableFuture.failedFuture(new IllegalStateException("Seats are no longer reserved"));
+			}
+			reservations.put(claim, positions);
+		}
+		startPersister();
+		PENDING.add(claim);
+		return claim.result;
+	}
+
+	/**
+	 * Books the given seats of a session, waiting until the booking is written.
+	 *
+	 * @param sessionId the ID of the session of the seats
+	 * @param seatAvList the seat availabilities to book
+	 * @param price the price of the ticket
+	 * @return the ticket, or null if a seat is not available or the booking cannot be written
+	 */
+	public static Ticket book(int sessionId, List<SeatAvailability> seatAvList, double price) {
+		try {
+			return claim(sessionId, seatAvList, price).get();
+		} catch (ExecutionException e) {
+			System.err.println("Unable to book seat list: " + e.getCause().getMessage());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println("Unable to book seat list: interrupted");
+			return null;
+		}
+	}
+
+	/**
+	 * Makes the given seats available in the loaded seat maps, after their ticket was canceled.
+	 *
+	 * @param seatAvList the released seat availabilities, with their session IDs
+	 */
+	@SuppressWarnings("try")
+	public static void release(List<SeatAvailability> seatAvList) {
+		for (Map.Entry<Integer, List<SeatAvailability>> entry : bySession(seatAvList).entrySet()) {
+			try (SessionLocks.Held lock = SessionLocks.lock(entry.getKey())) {
+				SessionSeatMap seatMap = SEAT_MAPS.get(entry.getKey());
+				if (seatMap == null) {
+					continue;
+				}
+				try {
+					seatMap.release(seatMap.positionsOf(entry.getValue()));
+				} catch (IllegalArgumentException e) {
+					invalidate(entry.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes the given seats in the seat maps of their sessions for a booking written outside of the
+	 * persister, so the other terminals see them taken until it is settled. A session without a seat
+	 * map is left to the database.
+	 *
+	 * @param seatAvList the seat availabilities to book, with their session IDs
+	 * @return the reservation, to settle once the booking is written or has failed, or null if a seat
+	 *         is already taken
+	 */
+	static Object reserveAll(List<SeatAvailability> seatAvList) {
+		Object reservation = new Object();
+		List<Integer> reserved = new ArrayList<>();
+		for (Map.Entry<Integer, List<SeatAvailability>> entry : bySession(seatAvList).entrySet()) {
+			int[] positions;
+			try {
+				positions = reserve(entry.getKey(), reservation, entry.getValue());
+			} catch (IllegalArgumentException | IllegalStateException e) {
+				continue;
+			}
+			if (positions == null) {
+				for (int sessionId : reserved) {
+					unreserve(sessionId, reservation, true);
+				}
+				return null;
+			}
+			reserved.add(entry.getKey());
+		}
+		return reservation;
+	}
+
+	/**
+	 * Ends a reservation of {@link #reserveAll(List)}. The seats of a booking that was not written
+	 * are given back and read again from the database.
+	 *
+	 * @param reservation the reservation
+	 * @param seatAvList the seat availabilities it was made for
+	 * @param written whether the booking was written
+	 */
+	@SuppressWarnings("try")
+	static void settle(Object reservation, List<SeatAvailability> seatAvList, boolean written) {
+		for (Map.Entry<Integer, List<SeatAvailability>> entry : bySession(seatAvList).entrySet()) {
+			try (SessionLocks.Held lock = SessionLocks.lock(entry.getKey())) {
+				unreserve(entry.getKey(), reservation, !written);
+				if (!written) {
+					resync(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of claims waiting to be written.
+	 *
+	 * @return the number of claims
+	 */
+	public static int getPendingCount() {
+		return PENDING.size();
+	}
+
+	private static SessionSeatMap load(int sessionId) {
+		try {
+			Session session = DatabaseManager.getRowById(Session.class, sessionId);
+			if (session == null) {
+				return null;
+			}
+			ScreeningRoom room = DatabaseManager.getRowById(ScreeningRoom.class, session.getScreeningRoomId());
+			FetchResult<SeatAvailability> rows = SeatAvailability.getSeatMapWithSeats(sessionId);
+			if (room == null || rows == null) {
+				return null;
+			}
+			SessionSeatMap seatMap = new SessionSeatMap(session, room, rows.getRows(), rows.getRelatedMap("seatId", Seat.class));
+			takeReserved(seatMap);
+			return seatMap;
+		} catch (SQLException e) {
+			System.err.println("Unable to load seat map: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Takes the seats reserved in the session on a new seat map, which may have been read before they
+	 * were written. Called holding the lock of the session.
+	 */
+	private static void takeReserved(SessionSeatMap seatMap) {
+		Map<Object, int[]> reservations = RESERVATIONS.get(seatMap.getSessionId());
+		if (reservations != null) {
+			for (int[] positions : reservations.values()) {
+				seatMap.take(positions);
+			}
+		}
+	}
+
+	private static Map<Object, int[]> reservationsOf(int sessionId) {
+		return RESERVATIONS.computeIfAbsent(sessionId, id -> new HashMap<>());
+	}
+
+	/**
+	 * Takes again the given seats that the database shows as booked, after a booking of them failed.
+	 * Called holding the lock of the session.
+	 */
+	private static void resync(int sessionId, List<SeatAvailability> seatAvList) {
+		SessionSeatMap seatMap = SEAT_MAPS.get(sessionId);
+		if (seatMap == null) {
+			return;
+		}
+		try {
+			List<Integer> ids = seatAvList.stream().map(SeatAvailability::getId).toList();
+			List<SeatAvailability> booked = DatabaseManager.getRowsFilteredAndSortedBy(SeatAvailability.class,
+					List.of(FilterCondition.in("id", ids)), "id", true)
+					.stream().filter(seatAv -> !seatAv.isAvailable()).toList();
+			seatMap.take(seatMap.positionsOf(booked));
+		} catch (Exception e) {
+			System.err.println("Unable to read seats of session " + sessionId + ": " + e.getMessage());
+			invalidate(sessionId);
+		}
+	}
+
+	private static void invalidateIf(Predicate<SessionSeatMap> predicate) {
+		SEAT_MAPS.values().removeIf(predicate);
+	}
+
+	private static Map<Integer, List<SeatAvailability>> bySession(List<SeatAvailability> seatAvList) {
+		Map<Integer, List<SeatAvailability>> bySession = new HashMap<>();
+		for (SeatAvailability seatAv : seatAvList) {
+			bySession.computeIfAbsent(seatAv.getSessionId(), id -> new ArrayList<>()).add(seatAv);
+		}
+		return bySession;
+	}
+
+	private static synchronized void startPersister() {
+		if (persister == null) {
+			persister = Thread.ofVirtual().name("seat-map-persister").start(SeatMapEngine::persist);
+		}
+	}
+
+	private static void persist() {
+		List<Claim> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+		while (true) {
+			try {
+				batch.add(PENDING.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			PENDING.drainTo(batch, FLUSH_BATCH_SIZE - 1);
+			flush(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Writes the claims in one transaction. A claim that cannot be booked is rolled back to its
+	 * savepoint without undoing the others.
+	 */
+	@SuppressWarnings("try")
+	private static void flush(List<Claim> batch) {
+		Ticket[] tickets = new Ticket[batch.size()];
+		SQLException[] failures = new SQLException[batch.size()];
+		Set<Integer> sessionIds = new HashSet<>();
+		for (Claim claim : batch) {
+			sessionIds.add(claim.sessionId);
+		}
+		try (SessionLocks.Held locks = SessionLocks.lockAll(sessionIds)) {
+			try {
+				DatabaseManager.inTransaction(conn -> {
+					for (int i = 0; i < batch.size(); i++) {
+						Claim claim = batch.get(i);
+						Savepoint savepoint = conn.setSavepoint();
+						try {
+							Ticket ticket = SeatAvailability.bookSeatList(claim.seatAvList, claim.price, conn);
+							if (claim.paid) {
+								Ticket.verifyPurchase(ticket.getId(), conn);
+								ticket = DatabaseManager.getRowById(Ticket.class, ticket.getId(), conn);
+							}
+							tickets[i] = ticket;
+							conn.releaseSavepoint(savepoint);
+						} catch (SQLException e) {
+							conn.rollback(savepoint);
+							failures[i] = e;
+						}
+					}
+					return null;
+				});
+			} catch (SQLException | RuntimeException e) {
+				SQLException failure = e instanceof SQLException ? (SQLException) e : new SQLException(e.getMessage(), e);
+				for (int i = 0; i < batch.size(); i++) {
+					tickets[i] = null;
+					failures[i] = failure;
+				}
+			}
+
+			// Still holding the locks, so no seat map is loaded between the commit and the end of the reservations
+			for (int i = 0; i < batch.size(); i++) {
+				Claim claim = batch.get(i);
+				if (failures[i] == null) {
+					unreserve(claim.sessionId, claim, false);
+				} else {
+					// The seats were taken outside of this application, or nothing was written
+					unreserve(claim.sessionId, claim, true);
+					resync(claim.sessionId, claim.seatAvList);
+				}
+			}
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			Claim claim = batch.get(i);
+			if (failures[i] == null) {
+				claim.result.complete(tickets[i]);
+			} else {
+				claim.result.completeExceptionally(failures[i]);
+			}
+		}
+	}
+
+	private static final class Claim {
+		final int sessionId;
+		final List<SeatAvailability> seatAvList;
+		final double price;
+		final boolean paid;
+		final CompletableFuture<Ticket> result = new CompletableFuture<>();
+
+		Claim(int sessionId, List<SeatAvailability> seatAvList, double price, boolean paid) {
+			this.sessionId = sessionId;
+			this.seatAvList = seatAvList;
+			this.price = price;
+			this.paid = paid;
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package cinema;
 import database.*;
 
-import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -12,9 +11,11 @@ import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @TableName("session")
+@Index(name = "idx_session_date_movie", columns = {"date", "movie_id"})
+@Index(name = "idx_session_room_date", columns = {"screening_room_id", "date"})
 public class Session {
 
 	@PrimaryKey
@@ -98,6 +99,29 @@ public class Session {
 		}
 	}
 
+	/**
+	 * Retrieves all sessions with their movies, in a single query.
+	 *
+	 * @return the sessions and their movies, or null if unable to read them
+	 */
+	public static FetchResult<Session> getAllSessionsWithMovies() {
+		try {
+			return DatabaseManager.getRowsWithRelations(FetchPlan.of(Session.class).with("movieId"), List.of(), null, true);
+		} catch (Exception e) {
+			System.err.println("Unable to get sessions: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Reads all sessions on a virtual thread.
+	 *
+	 * @return the future list of sessions, empty if unable to read them
+	 */
+	public static CompletableFuture<List<Session>> getAllSessionsAsync() {
+		return AsyncDatabaseManager.supply(Session::getAllSessions);
+	}
+
 	/**
 	 * Inserts a list of sessions into the database.
 	 * 
@@ -110,96 +134,60 @@ public class Session {
 			return false;
 		}
 
-		int screeningRoomId = sessionList.getFirst().getScreeningRoomId();
-
-		Map<String, Field> columnFieldMapSession = DatabaseAnnotationUtils.getColumnNamesAndFields(Session.class);
-		Map<String, Field> columnFieldMapSeatAvailability = DatabaseAnnotationUtils.getColumnNamesAndFields(SeatAvailability.class);
-
-		
-		List<Seat> seatList;
 		try {
-			seatList = DatabaseManager.getRowsFilteredAndSortedBy(
-				Seat.class, Arrays.asList(
-					new FilterCondition(
-						"screeningRoomId", 
-						screeningRoomId, 
-						FilterCondition.Relation.EQUALS
-						)
-					), 
-				"id", 
-				true
-			);
-		} catch (IllegalAccessException | InstantiationException | NoSuchFieldException | SQLException e) {
-			e.printStackTrace();
+			DatabaseManager.inTransaction(conn -> insertList(sessionList, conn));
+			return true;
+		} catch (SQLException e) {
+			System.err.println("Unable to insert sessions: " + e.getMessage());
 			return false;
 		}
+	}
 
-		// Create the query
-		String query = DatabaseAnnotationUtils.getInsertQuery(Session.class);
-		String querySeatAvailability = DatabaseAnnotationUtils.getInsertQuery(SeatAvailability.class);
-
-		// Execute the query
-		Connection conn = null;
-		PreparedStatement ps = null;
-		PreparedStatement psSeatAvailability = null;
-		try {
-
-			conn = DatabaseManager.getConnection();
-			ps = conn.prepareStatement(query, PreparedStatement.RETURN_GENERATED_KEYS);
-			psSeatAvailability = conn.prepareStatement(querySeatAvailability);
-			conn.setAutoCommit(false);
-			
-			for (Session session : sessionList) {
-				DatabaseAnnotationUtils.setPreparedStatementValueSet(columnFieldMapSession, session, ps);
-				ps.executeUpdate();
-
-				ResultSet rsId = ps.getGeneratedKeys();
-				if (rsId.next()) {
-					session.id = rsId.getInt(1);
-				} else {
-					throw new SQLException("Unable to get the generated id");
-				}
-
-				for (Seat seat : seatList) {
-					SeatAvailability seatAvailability = new SeatAvailability(true, (Integer)null, session.getId(), seat.getId());
-					DatabaseAnnotationUtils.setPreparedStatementValueSet(columnFieldMapSeatAvailability, seatAvailability, psSeatAvailability);
-					psSeatAvailability.addBatch();
-				}
-
-			}
-
-			psSeatAvailability.executeBatch();
-			conn.commit();
-			return true;
-		} catch (SQLException e) {
+	/**
+	 * Inserts a list of sessions of the same screening room, with a seat availability for each
+	 * of its seats, using the given connection. The transaction is left to the caller.
+	 * 
+	 * @param sessionList the list of sessions to be inserted, whose IDs are set
+	 * @param conn the database connection
+	 * @return the IDs of the inserted sessions
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if the seat filter refers to a field that does not exist
+	 */
+	protected static int[] insertList(List<Session> sessionList, Connection conn) throws SQLException, NoSuchFieldException {
+		if (sessionList.isEmpty()) {
+			return new int[0];
+		}
 
-			if (conn != null) {
-				try {
-					conn.rollback();
-				} catch (SQLException e1) {
-					System.err.println("Unable to rollback transaction: " + e1.getMessage());
-				}
-			}
+		int screeningRoomId = sessionList.getFirst().getScreeningRoomId();
 
-			System.err.println("Unable to insert sessions: " + e.getMessage());
-			return false;
-		} finally {
-			// Close the connection
-			try {
-				if (ps != null) {
-					ps.close();
-				}
-				if (psSeatAvailability != null) {
-					psSeatAvailability.close();
-				}
-				if (conn != null) {
-					conn.setAutoCommit(true);
-					conn.close();
-				}
-			} catch (SQLException e) {
-				System.err.println("Unable to close connection: " + e.getMessage());
+		List<Seat> seatList = DatabaseManager.getRowsFilteredAndSortedBy(
+			Seat.class, Arrays.asList(
+				new FilterCondition(
+					"screeningRoomId", 
+					screeningRoomId, 
+					FilterCondition.Relation.EQUALS
+					)
+				), 
+			"id", 
+			true,
+			conn
+		);
+
+		// Insert the sessions in batches and get their ids
+		int[] sessionIds = DatabaseManager.insertAll(sessionList, conn);
+
+		List<SeatAvailability> seatAvailabilityList = new ArrayList<>(sessionList.size() * seatList.size());
+		for (int i = 0; i < sessionList.size(); i++) {
+			Session session = sessionList.get(i);
+			session.id = sessionIds[i];
+
+			for (Seat seat : seatList) {
+				seatAvailabilityList.add(new SeatAvailability(true, (Integer)null, session.getId(), seat.getId()));
 			}
 		}
+
+		DatabaseManager.insertAll(seatAvailabilityList, conn);
+		return sessionIds;
 	}
 
 	/**
@@ -243,6 +231,7 @@ public class Session {
 			ps = conn.prepareStatement(query);
 			ps.setInt(1, sessionId);
 			ps.executeUpdate();
+			DatabaseManager.afterCommit(conn, () -> SeatMapEngine.invalidate(sessionId));
 
 			return true;
 		} catch (SQLException e) {
@@ -310,6 +299,7 @@ public class Session {
 			PreparedStatement ps = conn.prepareStatement(query);
 			ps.setInt(1, screeningRoomId);
 			ps.executeUpdate();
+			DatabaseManager.afterCommit(conn, () -> SeatMapEngine.invalidateScreeningRoom(screeningRoomId));
 			
 			return true;
 		} catch (SQLException e) {
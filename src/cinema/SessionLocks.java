@@ -0,0 +1,260 @@
+package cinema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks serializing the bookings, holds and seat map changes of a session, striped by session.
+ *
+ * A session is locked by the stripe its ID hashes to, and sessions sharing a stripe wait for each other.
+ * The stripes only let the in-memory work of different sessions, such as holds and seat map loads, go
+ * on independently: their writes still run one at a time, as the write lane has a single connection.
+ * The locks must be taken before a connection is borrowed from the write lane and kept until its
+ * transaction ends, never the other way round: a thread holding a connection and waiting for a lock
+ * would block the threads holding the lock and waiting for the connection. The locks of several
+ * sessions are taken in stripe order with {@link #lockAll(Collection)} for the same reason.
+ *
+ * The locks are reentrant. Each stripe counts its acquisitions, the ones that had to wait and the
+ * time they waited, see {@link #getStatistics()}.
+ */
+public final class SessionLocks {
+	public static final int STRIPE_COUNT = 64;
+
+	private static final Stripe[] STRIPES = new Stripe[STRIPE_COUNT];
+	private static final long STARTED_AT = System.nanoTime();
+
+	static {
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			STRIPES[i] = new Stripe();
+		}
+	}
+
+	private SessionLocks() {
+		throw new AssertionError("Cannot instantiate SessionLocks");
+	}
+
+	/**
+	 * Locks a session until the returned lock is closed, waiting while another thread holds its stripe.
+	 *
+	 * @param sessionId the ID of the session
+	 * @return the held lock, to close in a try-with-resources statement
+	 */
+	public static Held lock(int sessionId) {
+		return lockStripes(new int[] { stripeOf(sessionId) });
+	}
+
+	/**
+	 * Locks several sessions until the returned lock is closed. The stripes are taken in ascending order.
+	 *
+	 * @param sessionIds the IDs of the sessions, duplicates are ignored
+	 * @return the held locks, to close in a try-with-resources statement
+	 */
+	public static Held lockAll(Collection<Integer> sessionIds) {
+		return lockStripes(sessionIds.stream().mapToInt(SessionLocks::stripeOf).distinct().sorted().toArray());
+	}
+
+	/**
+	 * Locks every session until the returned lock is closed, taking all the stripes in ascending order.
+	 *
+	 * @return the held locks, to close in a try-with-resources statement
+	 */
+	public static Held lockAllSessions() {
+		int[] stripes = new int[STRIPE_COUNT];
+		Arrays.setAll(stripes, i -> i);
+		return lockStripes(stripes);
+	}
+
+	/**
+	 * Returns the stripe a session is locked by.
+	 *
+	 * @param sessionId the ID of the session
+	 * @return the index of the stripe
+	 */
+	public static int stripeOf(int sessionId) {
+		// Spread the consecutive IDs of the sessions of a day over the stripes
+		int hash = sessionId * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1);
+	}
+
+	/**
+	 * Returns the statistics of each stripe, in stripe order.
+	 *
+	 * @return the statistics
+	 */
+	public static List<StripeStatistics> getStatistics() {
+		long elapsedNanos = System.nanoTime() - STARTED_AT;
+		List<StripeStatistics> statistics = new ArrayList<>(STRIPE_COUNT);
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			statistics.add(STRIPES[i].statistics(i, elapsedNanos));
+		}
+		return statistics;
+	}
+
+	private static Held lockStripes(int[] stripes) {
+		int locked = 0;
+		try {
+			for (int stripe : stripes) {
+				STRIPES[stripe].lock();
+				locked++;
+			}
+		} catch (RuntimeException | Error e) {
+			for (int i = locked - 1; i >= 0; i--) {
+				STRIPES[stripes[i]].lock.unlock();
+			}
+			throw e;
+		}
+		return new Held(stripes);
+	}
+
+	/**
+	 * Locks held by a thread, released by {@link #close()} in the reverse order.
+	 */
+	public static final class Held implements AutoCloseable {
+		private final int[] stripes;
+		private boolean closed;
+
+		private Held(int[] stripes) {
+			this.stripes = stripes;
+		}
+
+		/**
+		 * Returns the stripes held, in the order they were locked.
+		 *
+		 * @return the indexes of the stripes
+		 */
+		public int[] getStripes() {
+			return Arrays.copyOf(stripes, stripes.length);
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			for (int i = stripes.length - 1; i >= 0; i--) {
+				STRIPES[stripes[i]].lock.unlock();
+			}
+		}
+	}
+
+	private static final class Stripe {
+		final ReentrantLock lock = new ReentrantLock();
+		final AtomicLong acquisitionCount = new AtomicLong();
+		final AtomicLong contendedCount = new AtomicLong();
+		final AtomicLong totalWaitNanos = new AtomicLong();
+		final AtomicLong maxWaitNanos = new AtomicLong();
+
+		void lock() {
+			if (!lock.tryLock()) {
+				long start = System.nanoTime();
+				lock.lock();
+				long waitNanos = System.nanoTime() - start;
+				contendedCount.incrementAndGet();
+				totalWaitNanos.addAndGet(waitNanos);
+				maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+			}
+			acquisitionCount.incrementAndGet();
+		}
+
+		StripeStatistics statistics(int index, long elapsedNanos) {
+			return new StripeStatistics(index, lock.isLocked(), lock.getQueueLength(), acquisitionCount.get(),
+					contendedCount.get(), totalWaitNanos.get(), maxWaitNanos.get(), elapsedNanos);
+		}
+	}
+
+	/**
+	 * The acquisitions of a stripe and the time spent waiting for it.
+	 */
+	public static class StripeStatistics {
+		private final int stripe;
+		private final boolean locked;
+		private final int waitingCount;
+		private final long acquisitionCount;
+		private final long contendedCount;
+		private final long totalWaitNanos;
+		private final long maxWaitNanos;
+		private final long elapsedNanos;
+
+		StripeStatistics(int stripe, boolean locked, int waitingCount, long acquisitionCount,
+				long contendedCount, long totalWaitNanos, long maxWaitNanos, long elapsedNanos) {
+			this.stripe = stripe;
+			this.locked = locked;
+			this.waitingCount = waitingCount;
+			this.acquisitionCount = acquisitionCount;
+			this.contendedCount = contendedCount;
+			this.totalWaitNanos = totalWaitNanos;
+			this.maxWaitNanos = maxWaitNanos;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		// Getters
+
+		public int getStripe() {
+			return stripe;
+		}
+
+		public boolean isLocked() {
+			return locked;
+		}
+
+		/**
+		 * Returns an estimate of the number of threads waiting for the stripe.
+		 *
+		 * @return the number of waiting threads
+		 */
+		public int getWaitingCount() {
+			return waitingCount;
+		}
+
+		public long getAcquisitionCount() {
+			return acquisitionCount;
+		}
+
+		/**
+		 * Returns the number of acquisitions that found the stripe held by another thread.
+		 *
+		 * @return the number of contended acquisitions
+		 */
+		public long getContendedCount() {
+			return contendedCount;
+		}
+
+		public double getContentionRatio() {
+			return acquisitionCount == 0 ? 0.0 : contendedCount / (double) acquisitionCount;
+		}
+
+		/**
+		 * Returns the average wait of the contended acquisitions.
+		 *
+		 * @return the average wait in milliseconds
+		 */
+		public double getAverageWaitMillis() {
+			return contendedCount == 0 ? 0.0 : totalWaitNanos / (double) contendedCount / 1_000_000.0;
+		}
+
+		public double getMaxWaitMillis() {
+			return maxWaitNanos / 1_000_000.0;
+		}
+
+		/**
+		 * Returns the number of acquisitions per second since the application started.
+		 *
+		 * @return the acquisition rate
+		 */
+		public double getAcquisitionsPerSecond() {
+			return elapsedNanos <= 0 ? 0.0 : acquisitionCount / (elapsedNanos / 1_000_000_000.0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("stripe=%d locked=%b waiting=%d acquisitions=%d (%.2f/s) contended=%d (%.1f%%) avgWait=%.3fms maxWait=%.3fms",
+					stripe, locked, waitingCount, acquisitionCount, getAcquisitionsPerSecond(), contendedCount,
+					getContentionRatio() * 100, getAverageWaitMillis(), getMaxWaitMillis());
+		}
+	}
+}
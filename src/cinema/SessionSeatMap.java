@@ -0,0 +1,285 @@
+package cinema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The seats of a session held in memory, with their availability as a bitset of the room grid.
+ *
+ * The seat at a row and column is the bit {@code row * colCount + col}, set when the seat is taken
+ * or when the room has no seat there. Seats are claimed by setting their bits with compare-and-set on
+ * the words holding them, so concurrent claims never take the same seat twice, and reading the bits
+ * never waits for a lock.
+ * The seat and seat availability objects are read once, only the bits change afterwards.
+ */
+public final class SessionSeatMap {
+	private final int sessionId;
+	private final int movieId;
+	private final int screeningRoomId;
+	private final int rowCount;
+	private final int colCount;
+	private final AtomicLongArray taken;
+	private final Seat[] seats;
+	private final SeatAvailability[] seatAvailabilities;
+	private final Map<Integer, Integer> positionsBySeatAvailabilityId = new HashMap<>();
+
+	SessionSeatMap(Session session, ScreeningRoom room, List<SeatAvailability> seatAvailabilityList, Map<Integer, Seat> seatsById) {
+		this.sessionId = session.getId();
+		this.movieId = session.getMovieId();
+		this.screeningRoomId = room.getId();
+		this.rowCount = room.getSeatRowCount();
+		this.colCount = room.getSeatColCount();
+
+		int size = rowCount * colCount;
+		this.seats = new Seat[size];
+		this.seatAvailabilities = new SeatAvailability[size];
+
+		long[] words = new long[(size + 63) >>> 6];
+		Arrays.fill(words, -1L);
+		for (SeatAvailability seatAv : seatAvailabilityList) {
+			Seat seat = seatsById.get(seatAv.getSeatId());
+			if (seat == null || seat.getRow() < 0 || seat.getRow() >= rowCount || seat.getCol() < 0 || seat.getCol() >= colCount) {
+				System.err.println("Seat " + seatAv.getSeatId() + " is not in the room of session " + sessionId);
+				continue;
+			}
+			int position = seat.getRow() * colCount + seat.getCol();
+			seats[position] = seat;
+			seatAvailabilities[position] = seatAv;
+			positionsBySeatAvailabilityId.put(seatAv.getId(), position);
+			if (seatAv.isAvailable()) {
+				words[position >>> 6] &= ~(1L << position);
+			}
+		}
+		this.taken = new AtomicLongArray(words);
+	}
+
+	// Getters
+
+	public int getSessionId() {
+		return sessionId;
+	}
+
+	public int getMovieId() {
+		return movieId;
+	}
+
+	public int getScreeningRoomId() {
+		return screeningRoomId;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColCount() {
+		return colCount;
+	}
+
+	/**
+	 * Returns the seat at the given row and column.
+	 *
+	 * @param row the row of the seat
+	 * @param col the column of the seat
+	 * @return the seat, or null if the room has no seat there
+	 */
+	public Seat getSeat(int row, int col) {
+		return seats[position(row, col)];
+	}
+
+	/**
+	 * Returns the seat availability of the seat at the given row and column. Its availability is the
+	 * one read when the map was loaded, use {@link #isAvailable(int, int)} for the current one.
+	 *
+	 * @param row the row of the seat
+	 * @param col the column of the seat
+	 * @return the seat availability, or null if the room has no seat there
+	 */
+	public SeatAvailability getSeatAvailability(int row, int col) {
+		return seatAvailabilities[position(row, col)];
+	}
+
+	/**
+	 * Returns whether the seat at the given row and column exists and is not taken.
+	 *
+	 * @param row the row of the seat
+	 * @param col the column of the seat
+	 * @return true if the seat can be claimed
+	 */
+	public boolean isAvailable(int row, int col) {
+		int position = position(row, col);
+		return (taken.get(position >>> 6) & (1L << position)) == 0;
+	}
+
+	public int getAvailableCount() {
+		// The bits past the last seat are set, like the positions without a seat
+		int takenCount = 0;
+		for (int i = 0; i < taken.length(); i++) {
+			takenCount += Long.bitCount(taken.get(i));
+		}
+		return taken.length() * 64 - takenCount;
+	}
+
+	/**
+	 * Returns the seats of the session by seat ID, in row and column order.
+	 *
+	 * @return the seats by ID
+	 */
+	public Map<Integer, Seat> getSeats() {
+		Map<Integer, Seat> map = new LinkedHashMap<>();
+		for (Seat seat : seats) {
+			if (seat != null) {
+				map.put(seat.getId(), seat);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the seat availabilities of the session in row and column order.
+	 *
+	 * @return the seat availabilities
+	 */
+	public List<SeatAvailability> getSeatAvailabilities() {
+		List<SeatAvailability> list = new ArrayList<>(positionsBySeatAvailabilityId.size());
+		for (SeatAvailability seatAv : seatAvailabilities) {
+			if (seatAv != null) {
+				list.add(seatAv);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the available seats of a row as a bitmask of words of 64 columns, the bit {@code col}
+	 * set when the seat at the column exists and is not taken. The words are read one at a time.
+	 *
+	 * @param row the row of the seats
+	 * @return the bitmask
+	 */
+	long[] availableMask(int row) {
+		int start = position(row, 0);
+		long[] mask = new long[(colCount + 63) >>> 6];
+		for (int i = 0; i < mask.length; i++) {
+			int count = Math.min(64, colCount - (i << 6));
+			long takenBits = bits(start + (i << 6), count);
+			mask[i] = count == 64 ? ~takenBits : ~takenBits & ((1L << count) - 1);
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the distinct positions of the given seat availabilities.
+	 *
+	 * @throws IllegalArgumentException if a seat availability is not one of this session
+	 */
+	int[] positionsOf(List<SeatAvailability> seatAvList) {
+		return seatAvList.stream().mapToInt(seatAv -> {
+			Integer position = positionsBySeatAvailabilityId.get(seatAv.getId());
+			if (position == null) {
+				throw new IllegalArgumentException("Seat availability " + seatAv.getId() + " is not in session " + sessionId);
+			}
+			return position;
+		}).distinct().toArray();
+	}
+
+	/**
+	 * Takes all the seats at the given positions, or none of them if one is already taken.
+	 * The bits of each word are set with one compare-and-set.
+	 *
+	 * @param positions the distinct positions of the seats
+	 * @return true if the seats were taken
+	 */
+	boolean tryClaim(int[] positions) {
+		long[] masks = masksOf(positions);
+		for (int word = 0; word < masks.length; word++) {
+			long mask = masks[word];
+			if (mask == 0) {
+				continue;
+			}
+			while (true) {
+				long current = taken.get(word);
+				if ((current & mask) != 0) {
+					// Give back the words already claimed
+					for (int claimed = 0; claimed < word; claimed++) {
+						clear(claimed, masks[claimed]);
+					}
+					return false;
+				}
+				if (taken.compareAndSet(word, current, current | mask)) {
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Takes the seats at the given positions, whether or not they are already taken.
+	 *
+	 * @param positions the positions of the seats
+	 */
+	void take(int[] positions) {
+		long[] masks = masksOf(positions);
+		for (int word = 0; word < masks.length; word++) {
+			if (masks[word] != 0) {
+				taken.getAndAccumulate(word, masks[word], (current, mask) -> current | mask);
+			}
+		}
+	}
+
+	/**
+	 * Makes the seats at the given positions available again.
+	 *
+	 * @param positions the positions of the seats
+	 */
+	void release(int[] positions) {
+		long[] masks = masksOf(positions);
+		for (int word = 0; word < masks.length; word++) {
+			if (masks[word] != 0) {
+				clear(word, masks[word]);
+			}
+		}
+	}
+
+	private void clear(int word, long mask) {
+		while (true) {
+			long current = taken.get(word);
+			if (taken.compareAndSet(word, current, current & ~mask)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns up to 64 bits of the bitset from the given position, which may span two words.
+	 */
+	private long bits(int from, int count) {
+		int word = from >>> 6;
+		int offset = from & 63;
+		long value = taken.get(word) >>> offset;
+		if (offset != 0 && offset + count > 64) {
+			value |= taken.get(word + 1) << (64 - offset);
+		}
+		return value;
+	}
+
+	private long[] masksOf(int[] positions) {
+		long[] masks = new long[taken.length()];
+		for (int position : positions) {
+			masks[position >>> 6] |= 1L << position;
+		}
+		return masks;
+	}
+
+	private int position(int row, int col) {
+		if (row < 0 || row >= rowCount || col < 0 || col >= colCount) {
+			throw new IndexOutOfBoundsException("Seat " + row + "x" + col + " is not in a " + rowCount + "x" + colCount + " room");
+		}
+		return row * colCount + col;
+	}
+}
@@ -1,7 +1,6 @@
 package cinema;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -10,6 +9,7 @@ import java.util.List;
 import database.*;
 
 @TableName("ticket")
+@Index(name = "idx_ticket_code", columns = {"code"})
 public class Ticket {
 	
 	@PrimaryKey
@@ -79,7 +79,8 @@ public class Ticket {
 
 
 	/**
-	 * Retrieves all tickets from the database.
+	 * Retrieves all tickets from the database. The whole table is loaded into memory,
+	 * scans of the tickets should use {@link DatabaseManager#forEachRow} instead.
 	 * 
 	 * @return a list of Ticket objects representing all the tickets in the database
 	 */
@@ -92,100 +93,73 @@ public class Ticket {
 		}
 	}
 
-	
 	/**
 	 * Cancels a ticket by updating the seat availability and deleting the ticket from the database.
+	 * The seats become available in the seat maps of {@link SeatMapEngine} as well.
+	 * The {@link SessionLocks} of the sessions of the seats are held during the cancellation.
 	 * 
 	 * @param ticketId the ID of the ticket to be canceled
 	 * @return true if the ticket was successfully canceled, false otherwise
 	 */
+	@SuppressWarnings("try")
 	public static boolean cancelTicket(int ticketId) {
-		String sql = "UPDATE seat_availability SET is_available = 1, ticket_id = NULL WHERE ticket_id = ?";
-		String sqlGetTicket = "SELECT is_paid FROM ticket WHERE id = ?";
-		String sqlDelete = "DELETE FROM ticket WHERE id = ?";
-
-		Connection conn = null;
-		PreparedStatement ps = null;
-		PreparedStatement psGetTicket = null;
-		PreparedStatement psDelete = null;
+		// The seats of a ticket stay in their sessions, find them before borrowing a connection
+		List<SeatAvailability> ticketSeats;
 		try {
-			conn = DatabaseManager.getConnection();
-			ps = conn.prepareStatement(sql);
-			psGetTicket = conn.prepareStatement(sqlGetTicket);
-			psDelete = conn.prepareStatement(sqlDelete);
+			ticketSeats = DatabaseManager.getRowsFilteredAndSortedBy(SeatAvailability.class,
+					List.of(new FilterCondition("ticketId", ticketId, FilterCondition.Relation.EQUALS)), null, true);
+		} catch (Exception e) {
+			System.err.println("Unable to cancel ticket: " + e.getMessage());
+			return false;
+		}
 
-			conn.setAutoCommit(false);
-			
-			// Get Ticket
-			psGetTicket.setInt(1, ticketId);
-			ResultSet rs = psGetTicket.executeQuery();
+		try (SessionLocks.Held locks = SessionLocks.lockAll(SeatAvailability.sessionIdsOf(ticketSeats))) {
+			List<SeatAvailability> releasedSeats = DatabaseManager.inTransaction(conn -> {
+				List<SeatAvailability> seats = DatabaseManager.getRowsFilteredAndSortedBy(SeatAvailability.class,
+						List.of(new FilterCondition("ticketId", ticketId, FilterCondition.Relation.EQUALS)), null, true, conn);
+				cancelTicket(ticketId, conn);
+				return seats;
+			});
+			SeatMapEngine.release(releasedSeats);
+			return true;
+		} catch (SQLException e) {
+			System.err.println("Unable to cancel ticket: " + e.getMessage());
+			return false;
+		}
+	}
 
-			if (!rs.next()) {
-				throw new SQLException("Ticket not found");
-			}
+	/**
+	 * Cancels an unpaid ticket using the given connection: its seats become available
+	 * and the ticket is deleted. The transaction is left to the caller.
+	 *
+	 * @param ticketId the ID of the ticket to be canceled
+	 * @param conn the database connection
+	 * @return the number of released seats
+	 * @throws SQLException if the ticket does not exist, is already paid or a database access error occurs
+	 */
+	public static int cancelTicket(int ticketId, Connection conn) throws SQLException {
+		String sql = "UPDATE seat_availability SET is_available = 1, ticket_id = NULL WHERE ticket_id = ?";
 
-			if (rs.getBoolean("is_paid")) {
-				throw new SQLException("Ticket is already paid");
-			}
+		// Get Ticket
+		Ticket ticket = DatabaseManager.getRowById(Ticket.class, ticketId, conn);
+		if (ticket == null) {
+			throw new SQLException("Ticket not found");
+		}
 
+		if (ticket.isPaid()) {
+			throw new SQLException("Ticket is already paid");
+		}
 
-			// Update seat availabilities
+		// Update seat availabilities
+		int releasedSeats;
+		try (PreparedStatement ps = conn.prepareStatement(sql)) {
 			ps.setInt(1, ticketId);
-			ps.executeUpdate();
-
-			// Delete ticket
-			psDelete.setInt(1, ticketId);
-			psDelete.executeUpdate();
-
-			conn.commit();
-			return true;
-
-		} catch (Exception e) {
-			if (conn != null) {
-				try {
-					conn.rollback();
-				} catch (SQLException excep) {
-					System.err.println("Unable to rollback the transaction: " + excep.getMessage());
-				}
-			}
-			System.err.println("Unable to cancel ticket: " + e.getMessage());
-			return false;
-		} finally {
-			if (ps != null) {
-				try {
-					ps.close();
-				} catch (SQLException e) {
-					System.err.println("Unable to close the statement: " + e.getMessage());
-				}
-			}
-			if (psGetTicket != null) {
-				try {
-					psGetTicket.close();
-				} catch (SQLException e) {
-					System.err.println("Unable to close the statement: " + e.getMessage());
-				}
-			}
-			if (psDelete != null) {
-				try {
-					psDelete.close();
-				} catch (SQLException e) {
-					System.err.println("Unable to close the statement: " + e.getMessage());
-				}
-			}
-			if (conn != null) {
-				try {
-					conn.setAutoCommit(true);
-				} catch (SQLException e) {
-					System.err.println("Unable to set the autoCommit to true: " + e.getMessage());
-				}
-				try {
-					conn.close();
-				} catch (SQLException e) {
-					System.err.println("Unable to close the connection: " + e.getMessage());
-					e.printStackTrace();
-				}
-			}
+			releasedSeats = ps.executeUpdate();
 		}
+
+		// Delete ticket
+		DatabaseManager.deleteRow(Ticket.class, ticketId, conn);
+		return releasedSeats;
 	}
 
 	/**
@@ -229,4 +203,19 @@ public class Ticket {
 			}
 		}
 	}
+
+	/**
+	 * Marks a ticket as paid using the given connection. The transaction is left to the caller.
+	 *
+	 * @param ticketId the ID of the ticket to be verified
+	 * @param conn the database connection
+	 * @return true if the ticket exists
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static boolean verifyPurchase(int ticketId, Connection conn) throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement("UPDATE ticket SET is_paid = 1 WHERE id = ?")) {
+			ps.setInt(1, ticketId);
+			return ps.executeUpdate() > 0;
+		}
+	}
 }
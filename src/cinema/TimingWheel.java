@@ -0,0 +1,158 @@
+package cinema;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks after a delay, with a hierarchical timing wheel driven by one virtual thread.
+ *
+ * Time is cut into ticks. The first wheel has a slot for each of the next 64 ticks, and each
+ * following wheel has slots 64 times as long as the previous one. A task is put in the slot of the
+ * first wheel reaching its deadline, and moved down to a finer wheel when the time reaches its slot,
+ * so scheduling and cancelling take constant time whatever the number of waiting tasks. Tasks run on
+ * the wheel thread, at most one tick late, and must be short.
+ */
+final class TimingWheel {
+	private static final int WHEEL_BITS = 6;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final int LEVELS = 4;
+
+	private final long tickNanos;
+	private final long startNanos;
+	private final List<List<Timeout>> slots = new ArrayList<>(LEVELS * WHEEL_SIZE);
+	private long currentTick;
+
+	/**
+	 * Creates a wheel and starts its thread.
+	 *
+	 * @param name the name of the wheel thread
+	 * @param tick the duration of a tick, the precision of the deadlines
+	 */
+	TimingWheel(String name, Duration tick) {
+		this.tickNanos = tick.toNanos();
+		this.startNanos = System.nanoTime();
+		for (int i = 0; i < LEVELS * WHEEL_SIZE; i++) {
+			slots.add(new ArrayList<>());
+		}
+		Thread.ofVirtual().name(name).start(this::run);
+	}
+
+	/**
+	 * Returns the longest delay a task can be scheduled with.
+	 *
+	 * @return the longest delay
+	 */
+	Duration getMaxDelay() {
+		return Duration.ofNanos(tickNanos * ((1L << (WHEEL_BITS * LEVELS)) - 1));
+	}
+
+	/**
+	 * Runs the task after the delay.
+	 *
+	 * @param task the task
+	 * @param delay the delay, rounded up to a whole number of ticks
+	 * @return the handle cancelling the task
+	 * @throws IllegalArgumentException if the delay is longer than {@link #getMaxDelay()}
+	 */
+	synchronized Timeout schedule(Runnable task, Duration delay) {
+		long ticks = Math.max(1, (delay.toNanos() + tickNanos - 1) / tickNanos);
+		if (ticks >= 1L << (WHEEL_BITS * LEVELS)) {
+			throw new IllegalArgumentException("Delay is longer than " + getMaxDelay() + ": " + delay);
+		}
+		Timeout timeout = new Timeout(task, currentTick + ticks);
+		place(timeout);
+		return timeout;
+	}
+
+	private void place(Timeout timeout) {
+		long remaining = timeout.deadlineTick - currentTick;
+		int level = 0;
+		while (level < LEVELS - 1 && remaining >= 1L << (WHEEL_BITS * (level + 1))) {
+			level++;
+		}
+		int slot = (int) ((timeout.deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+		slots.get(level * WHEEL_SIZE + slot).add(timeout);
+	}
+
+	/**
+	 * Moves the wheels to the next tick and returns the tasks due on it.
+	 */
+	private synchronized List<Timeout> advance() {
+		currentTick++;
+
+		// Move the tasks of the coarser slots reached by this tick down to the finer wheels
+		for (int level = 1; level < LEVELS; level++) {
+			if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+				break;
+			}
+			int slot = (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+			List<Timeout> cascaded = slots.get(level * WHEEL_SIZE + slot);
+			slots.set(level * WHEEL_SIZE + slot, new ArrayList<>());
+			for (Timeout timeout : cascaded) {
+				if (!timeout.cancelled) {
+					place(timeout);
+				}
+			}
+		}
+
+		int slot = (int) (currentTick & WHEEL_MASK);
+		List<Timeout> due = slots.get(slot);
+		if (due.isEmpty()) {
+			return due;
+		}
+		slots.set(slot, new ArrayList<>());
+		return due;
+	}
+
+	private void run() {
+		while (true) {
+			long nextTickNanos = startNanos + (currentTickSnapshot() + 1) * tickNanos;
+			long sleepNanos = nextTickNanos - System.nanoTime();
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			for (Timeout timeout : advance()) {
+				if (timeout.cancelled) {
+					continue;
+				}
+				try {
+					timeout.task.run();
+				} catch (RuntimeException e) {
+					System.err.println("Timed task failed: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private synchronized long currentTickSnapshot() {
+		return currentTick;
+	}
+
+	/**
+	 * A scheduled task.
+	 */
+	static final class Timeout {
+		private final Runnable task;
+		private final long deadlineTick;
+		private volatile boolean cancelled;
+
+		private Timeout(Runnable task, long deadlineTick) {
+			this.task = task;
+			this.deadlineTick = deadlineTick;
+		}
+
+		/**
+		 * Keeps the task from running. A cancelled task stays in its slot until its deadline.
+		 */
+		void cancel() {
+			cancelled = true;
+		}
+	}
+}
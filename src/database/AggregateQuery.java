@@ -0,0 +1,364 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds and runs a query computing aggregates (COUNT, SUM, AVG, MIN, MAX) over the rows of an
+ * entity class and the classes joined to it through their foreign keys, optionally grouped by
+ * one or more columns.
+ *
+ * Columns are given by entity class and field name, like in {@link FilterCondition}, and each class
+ * can be joined once. For example, the paid seats of some movies per movie and day:
+ * <pre>
+ * AggregateResult result = AggregateQuery.from(SeatAvailability.class)
+ *     .join(SeatAvailability.class, "ticketId")
+ *     .join(SeatAvailability.class, "sessionId")
+ *     .where(Ticket.class, new FilterCondition("isPaid", true, FilterCondition.Relation.EQUALS))
+ *     .where(Session.class, FilterCondition.in("movieId", movieIds))
+ *     .groupBy(Session.class, "movieId")
+ *     .groupBy(Session.class, "date")
+ *     .count()
+ *     .execute();
+ * </pre>
+ */
+public final class AggregateQuery {
+	private final EntityMetadata root;
+	private final List<EntityMetadata> tables = new ArrayList<>();
+	private final StringBuilder joins = new StringBuilder();
+	private final List<Filter> filters = new ArrayList<>();
+	private final List<ColumnRef> groupColumns = new ArrayList<>();
+	private final List<Aggregate> aggregates = new ArrayList<>();
+
+	private AggregateQuery(Class<?> rootClass) {
+		this.root = EntityMetadata.forClass(rootClass);
+		tables.add(root);
+	}
+
+	/**
+	 * Starts a query over the rows of the given entity class.
+	 *
+	 * @param rootClass the entity class
+	 * @return the query
+	 */
+	public static AggregateQuery from(Class<?> rootClass) {
+		return new AggregateQuery(rootClass);
+	}
+
+	// Joins
+
+	/**
+	 * Joins the class referenced by a foreign key field, keeping only the rows with a referenced row.
+	 *
+	 * @param fromClass the class declaring the foreign key, already in the query
+	 * @param foreignKeyField the name of the field annotated with {@link ForeignKey}
+	 * @return this query
+	 * @throws NoSuchFieldException if the field is not mapped to a column
+	 * @throws IllegalArgumentException if the field is not a foreign key or a class is joined twice
+	 */
+	public AggregateQuery join(Class<?> fromClass, String foreignKeyField) throws NoSuchFieldException {
+		return join("JOIN", fromClass, foreignKeyField);
+	}
+
+	/**
+	 * Joins the class referenced by a foreign key field, keeping the rows without a referenced row,
+	 * for which the columns of the joined class are NULL.
+	 *
+	 * @param fromClass the class declaring the foreign key, already in the query
+	 * @param foreignKeyField the name of the field annotated with {@link ForeignKey}
+	 * @return this query
+	 * @throws NoSuchFieldException if the field is not mapped to a column
+	 * @throws IllegalArgumentException if the field is not a foreign key or a class is joined twice
+	 */
+	public AggregateQuery leftJoin(Class<?> fromClass, String foreignKeyField) throws NoSuchFieldException {
+		return join("LEFT JOIN", fromClass, foreignKeyField);
+	}
+
+	private AggregateQuery join(String joinType, Class<?> fromClass, String foreignKeyField) throws NoSuchFieldException {
+		EntityMetadata from = getTable(fromClass);
+		EntityMetadata.Column foreignKey = from.getColumnByFieldName(foreignKeyField);
+		if (!foreignKey.isForeignKey()) {
+			throw new IllegalArgumentException("Field " + foreignKeyField + " of " + fromClass.getName() + " is not a foreign key");
+		}
+
+		EntityMetadata target = EntityMetadata.forClass(foreignKey.getReferencedClass());
+		if (tables.contains(target)) {
+			throw new IllegalArgumentException(target.getEntityClass().getName() + " is already in the query");
+		}
+		tables.add(target);
+
+		joins.append(' ').append(joinType).append(' ').append(target.getTableName())
+			.append(" ON ").append(from.getTableName()).append('.').append(foreignKey.getName())
+			.append(" = ").append(target.getTableName()).append('.').append(target.getPrimaryKey().getName());
+		return this;
+	}
+
+	// Conditions
+
+	/**
+	 * Keeps only the rows matching all of the given conditions on the fields of a class in the query.
+	 *
+	 * @param clazz the class whose fields the conditions refer to
+	 * @param conditions the conditions
+	 * @return this query
+	 * @throws IllegalArgumentException if the class is not in the query
+	 */
+	public AggregateQuery where(Class<?> clazz, FilterCondition... conditions) {
+		EntityMetadata table = getTable(clazz);
+		for (FilterCondition condition : conditions) {
+			filters.add(new Filter(table, condition));
+		}
+		return this;
+	}
+
+	// Groups
+
+	/**
+	 * Groups the rows by the value of a field. The groups are returned in ascending order
+	 * of the grouped fields.
+	 *
+	 * @param clazz the class of the field, in the query
+	 * @param fieldName the name of the field
+	 * @return this query
+	 * @throws NoSuchFieldException if the field is not mapped to a column
+	 * @throws IllegalArgumentException if the class is not in the query
+	 */
+	public AggregateQuery groupBy(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+		groupColumns.add(columnRef(clazz, fieldName));
+		return this;
+	}
+
+	// Aggregates
+
+	/**
+	 * Adds the number of rows as the next aggregate.
+	 *
+	 * @return this query
+	 */
+	public AggregateQuery count() {
+		aggregates.add(new Aggregate("COUNT(*)", null));
+		return this;
+	}
+
+	/**
+	 * Adds the number of non NULL values of a field as the next aggregate.
+	 *
+	 * @param clazz the class of the field, in the query
+	 * @param fieldName the name of the field
+	 * @return this query
+	 * @throws NoSuchFieldException if the field is not mapped to a column
+	 */
+	public AggregateQuery count(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+		return aggregate("COUNT", clazz, fieldName, false);
+	}
+
+	/**
+	 * Adds the number of distinct non NULL values of a field as the next aggregate.
+	 *
+	 * @param clazz the class of the field, in the query
+	 * @param fieldName the name of the field
+	 * @return this query
+	 * @throws NoSuchFieldException if the field is not mapped to a column
+	 */
+	public AggregateQuery countDistinct(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+		ColumnRef column = columnRef(clazz, fieldName);
+		aggregates.add(new Aggregate("COUNT(DISTINCT " + column.getQualifiedName() + ")", null));
+		return this;
+	}
+
+	public AggregateQuery sum(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+		return aggregate("SUM", clazz, fieldName, false);
+	}
+
+	public AggregateQuery avg(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+		return aggregate("AVG", clazz, fieldName, false);
+	}
+
+	/**
+	 * Adds the smallest value of a field as the next aggregate, read as a value of the field type.
+	 *
+	 * @param clazz the class of the field, in the query
+	 * @param fieldName the name of the field
+	 * @return this query
+	 * @throws NoSuchFieldException if the field is not mapped to a column
+	 */
+	public AggregateQuery min(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+		return aggregate("MIN", clazz, fieldName, true);
+	}
+
+	/**
+	 * Adds the largest value of a field as the next aggregate, read as a value of the field type.
+	 *
+	 * @param clazz the class of the field, in the query
+	 * @param fieldName the name of the field
+	 * @return this query
+	 * @throws NoSuchFieldException if the field is not mapped to a column
+	 */
+	public AggregateQuery max(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+		return aggregate("MAX", clazz, fieldName, true);
+	}
+
+	private AggregateQuery aggregate(String function, Class<?> clazz, String fieldName, boolean readAsField) throws NoSuchFieldException {
+		ColumnRef column = columnRef(clazz, fieldName);
+		aggregates.add(new Aggregate(function + "(" + column.getQualifiedName() + ")", readAsField ? column : null));
+		return this;
+	}
+
+	// Execution
+
+	/**
+	 * Builds the SQL of the query, with a parameter placeholder for each condition value.
+	 *
+	 * @return the query
+	 * @throws NoSuchFieldException if a condition refers to a field that is not mapped to a column
+	 * @throws IllegalStateException if no aggregates were added
+	 */
+	public String toSql() throws NoSuchFieldException {
+		if (aggregates.isEmpty()) {
+			throw new IllegalStateException("Aggregate query must contain at least one aggregate");
+		}
+
+		StringBuilder query = new StringBuilder("SELECT ");
+		for (ColumnRef column : groupColumns) {
+			query.append(column.getQualifiedName()).append(", ");
+		}
+		for (Aggregate aggregate : aggregates) {
+			query.append(aggregate.expression).append(", ");
+		}
+		query.setLength(query.length() - 2);
+
+		query.append(" FROM ").append(root.getTableName()).append(joins);
+
+		for (int i = 0; i < filters.size(); i++) {
+			query.append(i == 0 ? " WHERE " : " AND ");
+			Filter filter = filters.get(i);
+			filter.condition.appendSql(query, filter.table, true);
+		}
+
+		if (!groupColumns.isEmpty()) {
+			StringBuilder columns = new StringBuilder();
+			for (ColumnRef column : groupColumns) {
+				columns.append(columns.length() > 0 ? ", " : "").append(column.getQualifiedName());
+			}
+			query.append(" GROUP BY ").append(columns).append(" ORDER BY ").append(columns);
+		}
+		return query.toString();
+	}
+
+	/**
+	 * Runs the query on a pooled read-only connection.
+	 *
+	 * @return the groups and their aggregates
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a condition refers to a field that is not mapped to a column
+	 */
+	public AggregateResult execute() throws SQLException, NoSuchFieldException {
+		try (Connection connection = DatabaseManager.getReadConnection()) {
+			return execute(connection);
+		}
+	}
+
+	/**
+	 * Runs the query using the given connection.
+	 *
+	 * @param connection the database connection to use
+	 * @return the groups and their aggregates
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a condition refers to a field that is not mapped to a column
+	 */
+	public AggregateResult execute(Connection connection) throws SQLException, NoSuchFieldException {
+		String query = toSql();
+
+		List<AggregateResult.Row> rows = new ArrayList<>();
+		try (PreparedStatement stmt = connection.prepareStatement(query)) {
+			int index = 1;
+			for (Filter filter : filters) {
+				index = filter.condition.bind(stmt, index);
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Object[] keys = new Object[groupColumns.size()];
+					for (int i = 0; i < keys.length; i++) {
+						keys[i] = groupColumns.get(i).readValue(rs, i + 1);
+					}
+					Object[] values = new Object[aggregates.size()];
+					for (int i = 0; i < values.length; i++) {
+						ColumnRef column = aggregates.get(i).column;
+						int columnIndex = keys.length + i + 1;
+						if (column != null) {
+							values[i] = column.readValue(rs, columnIndex);
+						} else {
+							Object value = rs.getObject(columnIndex);
+							// The driver returns small integers as Integer
+							values[i] = value instanceof Integer ? Long.valueOf((Integer) value) : value;
+						}
+					}
+					rows.add(new AggregateResult.Row(keys, values));
+				}
+			}
+		}
+		return new AggregateResult(groupColumns.size(), rows);
+	}
+
+	private EntityMetadata getTable(Class<?> clazz) {
+		for (EntityMetadata table : tables) {
+			if (table.getEntityClass() == clazz) {
+				return table;
+			}
+		}
+		throw new IllegalArgumentException(clazz.getName() + " is not in the query");
+	}
+
+	private ColumnRef columnRef(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+		EntityMetadata table = getTable(clazz);
+		return new ColumnRef(table, table.getColumnByFieldName(fieldName));
+	}
+
+	private static final class ColumnRef {
+		private final EntityMetadata table;
+		private final EntityMetadata.Column column;
+
+		private ColumnRef(EntityMetadata table, EntityMetadata.Column column) {
+			this.table = table;
+			this.column = column;
+		}
+
+		private String getQualifiedName() {
+			return table.getTableName() + "." + column.getName();
+		}
+
+		/**
+		 * Reads the column as a value of the field type, decoding dates and times with their codecs.
+		 */
+		private Object readValue(ResultSet rs, int columnIndex) throws SQLException {
+			Object value = RowMapper.forClass(table.getEntityClass()).getAccessor(column).readValue(rs, columnIndex);
+			// Primitive accessors read NULL, like the MIN of no rows, as 0
+			return rs.wasNull() ? null : value;
+		}
+	}
+
+	private static final class Aggregate {
+		private final String expression;
+		private final ColumnRef column;
+
+		private Aggregate(String expression, ColumnRef column) {
+			this.expression = expression;
+			this.column = column;
+		}
+	}
+
+	private static final class Filter {
+		private final EntityMetadata table;
+		private final FilterCondition condition;
+
+		private Filter(EntityMetadata table, FilterCondition condition) {
+			this.table = table;
+			this.condition = condition;
+		}
+	}
+}
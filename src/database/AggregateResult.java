@@ -0,0 +1,160 @@
+package database;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows of an {@link AggregateQuery}: one row per group, with the values of the grouped fields
+ * as keys, in the order of the groupBy calls, followed by the aggregates, in the order they were added.
+ * A query without groups has a single row.
+ */
+public final class AggregateResult {
+	private final int keyCount;
+	private final List<Row> rows;
+
+	AggregateResult(int keyCount, List<Row> rows) {
+		this.keyCount = keyCount;
+		this.rows = Collections.unmodifiableList(rows);
+	}
+
+	// Getters
+
+	public List<Row> getRows() {
+		return rows;
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * Returns an aggregate of a query without groups as a long.
+	 *
+	 * @param aggregateIndex the index of the aggregate
+	 * @return the aggregate, or 0 if it is NULL
+	 */
+	public long getLong(int aggregateIndex) {
+		return rows.isEmpty() ? 0 : rows.get(0).getLong(aggregateIndex);
+	}
+
+	/**
+	 * Returns an aggregate of a query without groups as a double.
+	 *
+	 * @param aggregateIndex the index of the aggregate
+	 * @return the aggregate, or 0 if it is NULL
+	 */
+	public double getDouble(int aggregateIndex) {
+		return rows.isEmpty() ? 0 : rows.get(0).getDouble(aggregateIndex);
+	}
+
+	/**
+	 * Returns an aggregate of a query grouped by one field, by the value of the field.
+	 *
+	 * @param <K> the type of the grouped field, boxed for primitive fields
+	 * @param keyType the type of the grouped field, boxed for primitive fields
+	 * @param aggregateIndex the index of the aggregate
+	 * @return a map from the value of the field to the aggregate, in the order of the groups
+	 * @throws IllegalStateException if the query is not grouped by exactly one field
+	 */
+	public <K> Map<K, Long> toLongMap(Class<K> keyType, int aggregateIndex) {
+		Map<K, Long> map = new LinkedHashMap<>();
+		for (Row row : singleKeyRows()) {
+			map.put(keyType.cast(row.getKey(0)), row.getLong(aggregateIndex));
+		}
+		return map;
+	}
+
+	/**
+	 * Returns an aggregate of a query grouped by one field, by the value of the field.
+	 *
+	 * @param <K> the type of the grouped field, boxed for primitive fields
+	 * @param keyType the type of the grouped field, boxed for primitive fields
+	 * @param aggregateIndex the index of the aggregate
+	 * @return a map from the value of the field to the aggregate, in the order of the groups
+	 * @throws IllegalStateException if the query is not grouped by exactly one field
+	 */
+	public <K> Map<K, Double> toDoubleMap(Class<K> keyType, int aggregateIndex) {
+		Map<K, Double> map = new LinkedHashMap<>();
+		for (Row row : singleKeyRows()) {
+			map.put(keyType.cast(row.getKey(0)), row.getDouble(aggregateIndex));
+		}
+		return map;
+	}
+
+	/**
+	 * Returns an aggregate of a query grouped by two fields, by the value of the first field
+	 * and then by the value of the second one.
+	 *
+	 * @param <K1> the type of the first grouped field, boxed for primitive fields
+	 * @param <K2> the type of the second grouped field, boxed for primitive fields
+	 * @param firstKeyType the type of the first grouped field
+	 * @param secondKeyType the type of the second grouped field
+	 * @param aggregateIndex the index of the aggregate
+	 * @return the nested maps of the aggregates, in the order of the groups
+	 * @throws IllegalStateException if the query is not grouped by exactly two fields
+	 */
+	public <K1, K2> Map<K1, Map<K2, Long>> toNestedLongMap(Class<K1> firstKeyType, Class<K2> secondKeyType, int aggregateIndex) {
+		if (keyCount != 2) {
+			throw new IllegalStateException("Aggregate query is grouped by " + keyCount + " fields, not 2");
+		}
+		Map<K1, Map<K2, Long>> map = new LinkedHashMap<>();
+		for (Row row : rows) {
+			map.computeIfAbsent(firstKeyType.cast(row.getKey(0)), key -> new LinkedHashMap<>())
+				.put(secondKeyType.cast(row.getKey(1)), row.getLong(aggregateIndex));
+		}
+		return map;
+	}
+
+	private List<Row> singleKeyRows() {
+		if (keyCount != 1) {
+			throw new IllegalStateException("Aggregate query is grouped by " + keyCount + " fields, not 1");
+		}
+		return rows;
+	}
+
+	/**
+	 * A group and its aggregates.
+	 */
+	public static final class Row {
+		private final Object[] keys;
+		private final Object[] values;
+
+		Row(Object[] keys, Object[] values) {
+			this.keys = keys;
+			this.values = values;
+		}
+
+		/**
+		 * Returns the value of a grouped field.
+		 *
+		 * @param keyIndex the index of the grouped field
+		 * @return the value, boxed for primitive fields, or null if it is NULL
+		 */
+		public Object getKey(int keyIndex) {
+			return keys[keyIndex];
+		}
+
+		/**
+		 * Returns an aggregate: a Long for COUNT and integer SUMs, a Double for AVG and decimal SUMs,
+		 * and a value of the field type for MIN and MAX.
+		 *
+		 * @param aggregateIndex the index of the aggregate
+		 * @return the aggregate, or null if it is NULL
+		 */
+		public Object get(int aggregateIndex) {
+			return values[aggregateIndex];
+		}
+
+		public long getLong(int aggregateIndex) {
+			Object value = values[aggregateIndex];
+			return value == null ? 0 : ((Number) value).longValue();
+		}
+
+		public double getDouble(int aggregateIndex) {
+			Object value = values[aggregateIndex];
+			return value == null ? 0 : ((Number) value).doubleValue();
+		}
+	}
+}
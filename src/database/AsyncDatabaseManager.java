@@ -0,0 +1,347 @@
+package database;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs database calls on virtual threads and returns their results as {@link CompletableFuture}s,
+ * so they can be started from the Swing event thread without blocking it, and independent
+ * lookups can run at the same time.
+ *
+ * At most {@link #getMaxConcurrency()} calls run at once, the others wait for a turn without
+ * holding a connection. Cancelling a future, or reaching its deadline, interrupts the call if it
+ * is waiting for a turn or a connection, and skips it if it has not started yet. A call already
+ * running its SQL completes, but its result is discarded.
+ *
+ * The futures complete on the virtual threads, so Swing components must be updated with
+ * {@code thenAcceptAsync(..., SwingUtilities::invokeLater)} or similar.
+ */
+public final class AsyncDatabaseManager {
+	private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+	// Replaced as a whole when reconfigured, calls already waiting keep the old one
+	private static volatile Semaphore permits = new Semaphore(ConnectionPool.DEFAULT_MAX_SIZE, true);
+	private static volatile int maxConcurrency = ConnectionPool.DEFAULT_MAX_SIZE;
+
+	private AsyncDatabaseManager() {
+		throw new AssertionError("Cannot instantiate AsyncDatabaseManager");
+	}
+
+	/**
+	 * A database call run on a virtual thread.
+	 *
+	 * @param <R> the type of the result
+	 */
+	@FunctionalInterface
+	public interface DatabaseCall<R> {
+		R call() throws Exception;
+	}
+
+	/**
+	 * Sets the number of calls that can run at the same time. There is no point in
+	 * a number larger than the size of the connection pool.
+	 *
+	 * @param concurrency the maximum number of concurrent calls
+	 * @throws IllegalArgumentException if the number is not positive
+	 */
+	public static synchronized void configureMaxConcurrency(int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Maximum concurrency must be positive: " + concurrency);
+		}
+		permits = new Semaphore(concurrency, true);
+		maxConcurrency = concurrency;
+	}
+
+	public static int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * Runs a database call asynchronously.
+	 *
+	 * @param <R> the type of the result
+	 * @param call the call
+	 * @return the future result of the call
+	 */
+	public static <R> CompletableFuture<R> supply(DatabaseCall<R> call) {
+		return supply(call, null);
+	}
+
+	/**
+	 * Runs a database call asynchronously, failing with a {@link TimeoutException} if it does not
+	 * complete before the deadline.
+	 *
+	 * @param <R> the type of the result
+	 * @param call the call
+	 * @param deadline the maximum time from now until the call completes, or null for no deadline
+	 * @return the future result of the call
+	 */
+	public static <R> CompletableFuture<R> supply(DatabaseCall<R> call, Duration deadline) {
+		CompletableFuture<R> result = new CompletableFuture<>();
+		Semaphore semaphore = permits;
+
+		Future<?> task = EXECUTOR.submit(() -> {
+			try {
+				semaphore.acquire();
+			} catch (InterruptedException e) {
+				result.completeExceptionally(new CancellationException("Interrupted while waiting for a turn"));
+				return;
+			}
+			try {
+				// Cancelled or timed out while waiting
+				if (!result.isDone()) {
+					result.complete(call.call());
+				}
+			} catch (Throwable e) {
+				result.completeExceptionally(e);
+			} finally {
+				semaphore.release();
+			}
+		});
+
+		result.whenComplete((value, e) -> {
+			if (e instanceof CancellationException || e instanceof TimeoutException) {
+				task.cancel(true);
+			}
+		});
+		if (deadline != null) {
+			result.orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+		}
+		return result;
+	}
+
+	/**
+	 * Combines futures into one completing with all of their results, in order, or failing
+	 * with the first failure, in which case the other futures are cancelled.
+	 *
+	 * @param <T> the type of the results
+	 * @param futures the futures
+	 * @return the future list of results
+	 */
+	public static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+		CompletableFuture<List<T>> result = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+			.thenApply(ignored -> {
+				List<T> values = new ArrayList<>(futures.size());
+				for (CompletableFuture<T> future : futures) {
+					values.add(future.join());
+				}
+				return values;
+			});
+
+		for (CompletableFuture<T> future : futures) {
+			future.whenComplete((value, e) -> {
+				if (e != null) {
+					result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+				}
+			});
+		}
+		result.whenComplete((values, e) -> {
+			if (e != null) {
+				for (CompletableFuture<T> future : futures) {
+					future.cancel(true);
+				}
+			}
+		});
+		return result;
+	}
+
+	// DatabaseManager calls
+
+	/**
+	 * Asynchronous {@link DatabaseManager#getRowById(Class, int)}.
+	 *
+	 * @param <T> the type of the object
+	 * @param clazz the class of the object
+	 * @param id the ID of the row
+	 * @return the future object, or null if no matching row is found
+	 */
+	public static <T> CompletableFuture<T> getRowById(Class<T> clazz, int id) {
+		return supply(() -> DatabaseManager.getRowById(clazz, id));
+	}
+
+	/**
+	 * Asynchronous {@link DatabaseManager#getRowsFilteredAndSortedBy(Class, List, String, boolean)}.
+	 *
+	 * @param <T> the type of the objects
+	 * @param clazz the class of the objects
+	 * @param filters the filter conditions
+	 * @param sortBy the name of the field to sort by
+	 * @param ascending true for ascending order, false for descending
+	 * @return the future list of objects
+	 */
+	public static <T> CompletableFuture<List<T>> getRowsFilteredAndSortedBy(Class<T> clazz, List<FilterCondition> filters,
+			String sortBy, boolean ascending) {
+		return supply(() -> DatabaseManager.getRowsFilteredAndSortedBy(clazz, filters, sortBy, ascending));
+	}
+
+	/**
+	 * Asynchronous {@link DatabaseManager#getPage}.
+	 *
+	 * @param <T> the type of the objects
+	 * @param clazz the class of the objects
+	 * @param filters the filter conditions
+	 * @param sortBy the name of the field to sort by
+	 * @param ascending true for ascending order, false for descending
+	 * @param pageSize the maximum number of rows of the page
+	 * @param after the token of the previous page, or null for the first page
+	 * @param includeTotalCount whether to count the rows matching the filters
+	 * @return the future page
+	 */
+	public static <T> CompletableFuture<Page<T>> getPage(Class<T> clazz, List<FilterCondition> filters, String sortBy,
+			boolean ascending, int pageSize, PageToken after, boolean includeTotalCount) {
+		return supply(() -> DatabaseManager.getPage(clazz, filters, sortBy, ascending, pageSize, after, includeTotalCount));
+	}
+
+	/**
+	 * Asynchronous {@link DatabaseManager#count(Class, List)}.
+	 *
+	 * @param <T> the type of the entity class
+	 * @param clazz the entity class
+	 * @param filters the filter conditions
+	 * @return the future number of matching rows
+	 */
+	public static <T> CompletableFuture<Integer> count(Class<T> clazz, List<FilterCondition> filters) {
+		return supply(() -> DatabaseManager.count(clazz, filters));
+	}
+
+	/**
+	 * Asynchronous {@link DatabaseManager#inTransaction}. If the future is cancelled or the deadline
+	 * is reached before the work returns, the transaction is rolled back instead of committed, and a
+	 * call still waiting for a turn or a connection is interrupted.
+	 *
+	 * Unlike {@link #supply(DatabaseCall, Duration)}, the future completes only with the outcome of the
+	 * transaction: once the work has returned in time the transaction is committed, and the future
+	 * holds its result even if it is cancelled or the deadline is reached during the commit. A failed
+	 * future therefore always means nothing was written.
+	 *
+	 * @param <R> the type of the result
+	 * @param work the work to run in a transaction
+	 * @param deadline the maximum time from now until the work returns, or null for no deadline
+	 * @return the future result of the work, failing with a {@link CancellationException} or a
+	 *         {@link TimeoutException} if it was stopped
+	 */
+	public static <R> CompletableFuture<R> inTransaction(DatabaseManager.ConnectionWork<R> work, Duration deadline) {
+		TransactionFuture<R> result = new TransactionFuture<>();
+		long deadlineNanos = deadline == null ? 0 : System.nanoTime() + deadline.toNanos();
+		Semaphore semaphore = permits;
+
+		EXECUTOR.execute(() -> {
+			if (!result.start()) {
+				return;
+			}
+			R value;
+			try {
+				semaphore.acquire();
+				try {
+					value = DatabaseManager.inTransaction(connection -> {
+						R workValue = work.run(connection);
+						// Checked last, the transaction is committed only if it was not stopped by now
+						if (deadline != null && System.nanoTime() - deadlineNanos >= 0) {
+							result.stop(new TimeoutException("Transaction deadline exceeded"));
+						}
+						Exception stopped = result.commit();
+						if (stopped != null) {
+							throw stopped;
+						}
+						return workValue;
+					});
+				} finally {
+					semaphore.release();
+				}
+			} catch (Throwable e) {
+				// Rolled back or never started
+				Exception stopped = result.stopReason.get();
+				result.finish(null, stopped != null ? stopped : e);
+				return;
+			}
+			result.finish(value, null);
+		});
+
+		if (deadline != null) {
+			CompletableFuture.delayedExecutor(deadline.toNanos(), TimeUnit.NANOSECONDS)
+				.execute(() -> result.stop(new TimeoutException("Transaction deadline exceeded")));
+		}
+		return result;
+	}
+
+	/**
+	 * The future of a transaction, which a cancellation or a deadline only asks to roll back.
+	 * It is completed by the thread running the transaction, unless the transaction never started.
+	 */
+	private static final class TransactionFuture<R> extends CompletableFuture<R> {
+		private static final int PENDING = 0;
+		private static final int RUNNING = 1;
+		private static final int COMMITTING = 2;
+		private static final int STOPPED = 3;
+
+		final AtomicReference<Exception> stopReason = new AtomicReference<>();
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+		private volatile Thread runner;
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			stop(new CancellationException("Transaction cancelled"));
+			return isCancelled();
+		}
+
+		/**
+		 * Marks the transaction as started by the current thread.
+		 *
+		 * @return false if it was stopped before it started
+		 */
+		boolean start() {
+			runner = Thread.currentThread();
+			return state.compareAndSet(PENDING, RUNNING);
+		}
+
+		/**
+		 * Marks the work as done, after which a stop no longer interrupts the thread.
+		 *
+		 * @return the reason to roll back instead of committing, or null to commit
+		 */
+		Exception commit() {
+			state.set(COMMITTING);
+			return stopReason.get();
+		}
+
+		/**
+		 * Asks the transaction to roll back, failing the future at once if it has not started.
+		 */
+		void stop(Exception reason) {
+			if (isDone() || !stopReason.compareAndSet(null, reason)) {
+				return;
+			}
+			if (state.compareAndSet(PENDING, STOPPED)) {
+				super.completeExceptionally(reason);
+				return;
+			}
+			Thread thread = runner;
+			if (thread != null && state.get() == RUNNING) {
+				thread.interrupt();
+			}
+		}
+
+		void finish(R value, Throwable failure) {
+			runner = null;
+			// A late stop must not interrupt the dependent actions run by this thread
+			Thread.interrupted();
+			if (failure == null) {
+				super.complete(value);
+			} else {
+				super.completeExceptionally(failure);
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package database;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity class whose rows are kept in the {@link EntityCache} when read by ID.
+ * Meant for reference data that rarely changes, since rows changed outside of
+ * {@link DatabaseManager} stay cached until they expire.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cached {
+    /**
+     * How long a cached row is used before it is read again, in seconds.
+     */
+    int ttlSeconds() default 300;
+}
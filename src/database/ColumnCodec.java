@@ -0,0 +1,51 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts the values of a Java type to and from the form they are stored in the database.
+ *
+ * Codecs are registered in {@link ColumnCodecs} by Java type and used for every mapped field,
+ * filter value and statement parameter of that type.
+ *
+ * @param <T> the Java type
+ */
+public interface ColumnCodec<T> {
+	Class<T> getJavaType();
+
+	/**
+	 * Returns the SQL type of the columns storing the values, used when creating tables.
+	 *
+	 * @return the SQL type name
+	 */
+	String getSqlType();
+
+	/**
+	 * Returns the JDBC type of the stored values, used to bind NULL.
+	 *
+	 * @return a constant of {@link java.sql.Types}
+	 */
+	int getJdbcType();
+
+	/**
+	 * Reads a value from a result set column.
+	 *
+	 * @param rs the result set positioned on a row
+	 * @param columnIndex the index of the column
+	 * @return the value, or null if the column is NULL
+	 * @throws SQLException if a database access error occurs
+	 */
+	T read(ResultSet rs, int columnIndex) throws SQLException;
+
+	/**
+	 * Sets a non null value as a statement parameter.
+	 *
+	 * @param ps the statement
+	 * @param parameterIndex the index of the parameter
+	 * @param value the value
+	 * @throws SQLException if a database access error occurs
+	 */
+	void write(PreparedStatement ps, int parameterIndex, T value) throws SQLException;
+}
@@ -0,0 +1,170 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The built in column codecs and the registry of the codec used for each Java type.
+ *
+ * By default dates are stored as the number of days since 1970-01-01 and times as the number of
+ * seconds since midnight, so they are read and written without parsing or formatting and compare
+ * as integers in SQL. Databases written with the text formats are converted by {@link DateTimeMigration}.
+ */
+public final class ColumnCodecs {
+
+	/** Stores a date as its epoch day in an INTEGER column. */
+	public static final ColumnCodec<LocalDate> EPOCH_DAY = new ColumnCodec<LocalDate>() {
+		@Override
+		public Class<LocalDate> getJavaType() {
+			return LocalDate.class;
+		}
+
+		@Override
+		public String getSqlType() {
+			return "INTEGER";
+		}
+
+		@Override
+		public int getJdbcType() {
+			return Types.INTEGER;
+		}
+
+		@Override
+		public LocalDate read(ResultSet rs, int columnIndex) throws SQLException {
+			long epochDay = rs.getLong(columnIndex);
+			return rs.wasNull() ? null : LocalDate.ofEpochDay(epochDay);
+		}
+
+		@Override
+		public void write(PreparedStatement ps, int parameterIndex, LocalDate value) throws SQLException {
+			ps.setLong(parameterIndex, value.toEpochDay());
+		}
+	};
+
+	/** Stores a time as its second of day in an INTEGER column. Fractions of a second are dropped. */
+	public static final ColumnCodec<LocalTime> SECOND_OF_DAY = new ColumnCodec<LocalTime>() {
+		@Override
+		public Class<LocalTime> getJavaType() {
+			return LocalTime.class;
+		}
+
+		@Override
+		public String getSqlType() {
+			return "INTEGER";
+		}
+
+		@Override
+		public int getJdbcType() {
+			return Types.INTEGER;
+		}
+
+		@Override
+		public LocalTime read(ResultSet rs, int columnIndex) throws SQLException {
+			int secondOfDay = rs.getInt(columnIndex);
+			return rs.wasNull() ? null : LocalTime.ofSecondOfDay(secondOfDay);
+		}
+
+		@Override
+		public void write(PreparedStatement ps, int parameterIndex, LocalTime value) throws SQLException {
+			ps.setInt(parameterIndex, value.toSecondOfDay());
+		}
+	};
+
+	/** Stores a date as yyyy-MM-dd text, the format used before {@link #EPOCH_DAY}. */
+	public static final ColumnCodec<LocalDate> ISO_DATE_TEXT = new ColumnCodec<LocalDate>() {
+		@Override
+		public Class<LocalDate> getJavaType() {
+			return LocalDate.class;
+		}
+
+		@Override
+		public String getSqlType() {
+			return "TEXT";
+		}
+
+		@Override
+		public int getJdbcType() {
+			return Types.VARCHAR;
+		}
+
+		@Override
+		public LocalDate read(ResultSet rs, int columnIndex) throws SQLException {
+			String value = rs.getString(columnIndex);
+			return value == null ? null : LocalDate.parse(value, DatabaseAnnotationUtils.DATE_FORMATTER);
+		}
+
+		@Override
+		public void write(PreparedStatement ps, int parameterIndex, LocalDate value) throws SQLException {
+			ps.setString(parameterIndex, value.format(DatabaseAnnotationUtils.DATE_FORMATTER));
+		}
+	};
+
+	/** Stores a time as HH:mm:ss text, the format used before {@link #SECOND_OF_DAY}. */
+	public static final ColumnCodec<LocalTime> ISO_TIME_TEXT = new ColumnCodec<LocalTime>() {
+		@Override
+		public Class<LocalTime> getJavaType() {
+			return LocalTime.class;
+		}
+
+		@Override
+		public String getSqlType() {
+			return "TEXT";
+		}
+
+		@Override
+		public int getJdbcType() {
+			return Types.VARCHAR;
+		}
+
+		@Override
+		public LocalTime read(ResultSet rs, int columnIndex) throws SQLException {
+			String value = rs.getString(columnIndex);
+			return value == null ? null : LocalTime.parse(value, DatabaseAnnotationUtils.TIME_FORMATTER);
+		}
+
+		@Override
+		public void write(PreparedStatement ps, int parameterIndex, LocalTime value) throws SQLException {
+			ps.setString(parameterIndex, value.format(DatabaseAnnotationUtils.TIME_FORMATTER));
+		}
+	};
+
+	private static final Map<Class<?>, ColumnCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+	static {
+		register(EPOCH_DAY);
+		register(SECOND_OF_DAY);
+	}
+
+	private ColumnCodecs() {
+		throw new AssertionError("Cannot instantiate ColumnCodecs");
+	}
+
+	/**
+	 * Makes the codec the one used for its Java type, replacing the previous one.
+	 * Row mappers keep the codecs they were built with, so codecs must be registered
+	 * before the first query on a class with a field of the type.
+	 *
+	 * @param codec the codec
+	 */
+	public static void register(ColumnCodec<?> codec) {
+		CODECS.put(codec.getJavaType(), codec);
+	}
+
+	/**
+	 * Returns the codec used for the given Java type.
+	 *
+	 * @param <T> the Java type
+	 * @param type the Java type
+	 * @return the codec, or null if values of the type are stored without a codec
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ColumnCodec<T> forType(Class<T> type) {
+		return (ColumnCodec<T>) CODECS.get(type);
+	}
+}
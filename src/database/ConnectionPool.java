@@ -0,0 +1,871 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections.
+ *
+ * Connections handed out by the pool are proxies: calling {@code close()} on them
+ * returns the physical connection to the pool instead of closing it, so callers
+ * can keep using the usual try-with-resources / closeConnection idioms.
+ * Statements created through a pooled connection and still open are closed when it is returned.
+ * The pool opens {@code minSize} connections when it is created and keeps that many open.
+ * Actions can be deferred until the transaction of a pooled connection commits, see {@link #runAfterCommit}.
+ *
+ * A thread that already holds every connection of the pool and borrows again is handed back the
+ * connection it holds instead of waiting forever, see {@link #borrow()}.
+ */
+public class ConnectionPool {
+	public static final int DEFAULT_MIN_SIZE = 1;
+	public static final int DEFAULT_MAX_SIZE = 8;
+	public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30_000;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60_000;
+	public static final long DEFAULT_LEAK_THRESHOLD_MILLIS = 60_000;
+	public static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 2;
+
+	// System property recording where each connection is borrowed, printed with the leak reports
+	public static final String BORROW_TRACE_PROPERTY = "cinema.db.borrowTrace";
+
+	private static final long HOUSEKEEPING_PERIOD_MILLIS = 10_000;
+
+	private final String jdbcUrl;
+	private final ConnectionProfile profile;
+	private final int minSize;
+	private final int maxSize;
+	private final long borrowTimeoutMillis;
+	private final long idleTimeoutMillis;
+	private final long leakThresholdMillis;
+	private final int validationTimeoutSeconds;
+	private volatile boolean recordBorrowTraces = Boolean.getBoolean(BORROW_TRACE_PROPERTY);
+
+	// Idle connections, most recently returned first
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Set<PooledConnection> active = ConcurrentHashMap.newKeySet();
+	// One permit per connection that may exist, idle or active
+	private final Semaphore permits;
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean shutdown = false;
+
+	// Metrics
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong totalBorrowWaitNanos = new AtomicLong();
+	private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong destroyedCount = new AtomicLong();
+	private final AtomicLong validationFailureCount = new AtomicLong();
+	private final AtomicLong leakCount = new AtomicLong();
+	private final AtomicLong reborrowCount = new AtomicLong();
+	private final AtomicLong totalHoldNanos = new AtomicLong();
+	private final AtomicLong maxHoldNanos = new AtomicLong();
+	private final long createdAt = System.nanoTime();
+
+	/**
+	 * Creates a pool with the default timeouts.
+	 *
+	 * @param jdbcUrl the JDBC URL used to open physical connections
+	 * @param minSize the number of connections kept open even when idle
+	 * @param maxSize the maximum number of connections open at the same time
+	 */
+	public ConnectionPool(String jdbcUrl, int minSize, int maxSize) {
+		this(jdbcUrl, null, minSize, maxSize);
+	}
+
+	/**
+	 * Creates a pool with the default timeouts whose connections are set up with the given profile.
+	 *
+	 * @param jdbcUrl the JDBC URL used to open physical connections
+	 * @param profile the settings applied to every new connection, or null to keep the SQLite defaults
+	 * @param minSize the number of connections kept open even when idle
+	 * @param maxSize the maximum number of connections open at the same time
+	 */
+	public ConnectionPool(String jdbcUrl, ConnectionProfile profile, int minSize, int maxSize) {
+		this(jdbcUrl, profile, minSize, maxSize, DEFAULT_BORROW_TIMEOUT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS,
+				DEFAULT_LEAK_THRESHOLD_MILLIS, DEFAULT_VALIDATION_TIMEOUT_SECONDS);
+	}
+
+	/**
+	 * Creates a pool.
+	 *
+	 * @param jdbcUrl the JDBC URL used to open physical connections
+	 * @param profile the settings applied to every new connection, or null to keep the SQLite defaults
+	 * @param minSize the number of connections kept open even when idle
+	 * @param maxSize the maximum number of connections open at the same time
+	 * @param borrowTimeoutMillis how long a borrower waits for a free connection before failing
+	 * @param idleTimeoutMillis idle connections above {@code minSize} are closed after this long
+	 * @param leakThresholdMillis a connection held longer than this is reported as a possible leak, 0 disables
+	 * @param validationTimeoutSeconds timeout for the validity check done on every borrow
+	 * @throws IllegalArgumentException if the sizes are invalid
+	 */
+	public ConnectionPool(String jdbcUrl, ConnectionProfile profile, int minSize, int maxSize, long borrowTimeoutMillis,
+			long idleTimeoutMillis, long leakThresholdMillis, int validationTimeoutSeconds) {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+		}
+		this.jdbcUrl = jdbcUrl;
+		this.profile = profile;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.permits = new Semaphore(maxSize, true);
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.housekeeper.scheduleWithFixedDelay(this::housekeep,
+				HOUSEKEEPING_PERIOD_MILLIS, HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+
+		openMinimumConnections();
+	}
+
+	// Getters
+
+	public String getJdbcUrl() {
+		return jdbcUrl;
+	}
+
+	/**
+	 * Returns the settings applied to every new connection.
+	 *
+	 * @return the connection profile, or null if the SQLite defaults are used
+	 */
+	public ConnectionProfile getProfile() {
+		return profile;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public boolean isRecordingBorrowTraces() {
+		return recordBorrowTraces;
+	}
+
+	/**
+	 * Sets whether the stack of every borrow is recorded, to be printed if the connection is reported
+	 * as a possible leak. Recording costs a stack capture per borrow, so it is off unless the
+	 * {@value #BORROW_TRACE_PROPERTY} system property is true, and the leak reports only give the
+	 * time and the thread of the borrow.
+	 *
+	 * @param record true to record the stack of every borrow
+	 */
+	public void setRecordBorrowTraces(boolean record) {
+		recordBorrowTraces = record;
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if none is idle and the pool is not full.
+	 * The returned connection must be closed to give it back.
+	 *
+	 * A thread already holding every connection of the pool, like a nested call with the single
+	 * connection write lane, gets the connection it borrowed last instead, and closing it gives
+	 * nothing back. If that connection is in a transaction, the nested borrow runs inside it: a
+	 * savepoint is set when it is borrowed, its {@code rollback()} goes back to the savepoint, and its
+	 * {@code commit()} and {@code setAutoCommit} leave the outer transaction to the outer borrower.
+	 * Otherwise the nested borrow controls its own transactions, and one it leaves open when it is
+	 * closed is rolled back.
+	 *
+	 * @return a validated connection
+	 * @throws SQLException if the pool is shut down, the wait times out or a connection cannot be opened
+	 */
+	public Connection borrow() throws SQLException {
+		if (shutdown) {
+			throw new SQLException("Connection pool is shut down");
+		}
+
+		// Waiting would never end if this thread already holds every connection
+		PooledConnection held = lastHeldByCurrentThread();
+		if (held != null) {
+			reborrowCount.incrementAndGet();
+			return new NestedBorrow(held).proxy;
+		}
+
+		long start = System.nanoTime();
+		waiting.incrementAndGet();
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timed out after " + borrowTimeoutMillis
+						+ " ms waiting for a database connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		} finally {
+			waiting.decrementAndGet();
+		}
+
+		PooledConnection pooled = null;
+		try {
+			// Reuse an idle connection if a valid one is available
+			while ((pooled = idle.pollFirst()) != null) {
+				if (isValid(pooled.physical)) {
+					break;
+				}
+				validationFailureCount.incrementAndGet();
+				destroy(pooled);
+			}
+
+			if (pooled == null) {
+				pooled = new PooledConnection(openPhysicalConnection());
+				createdCount.incrementAndGet();
+			}
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+
+		pooled.onBorrow(leakThresholdMillis > 0 && recordBorrowTraces);
+		active.add(pooled);
+
+		long waited = System.nanoTime() - start;
+		borrowCount.incrementAndGet();
+		totalBorrowWaitNanos.addAndGet(waited);
+		maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+
+		return pooled.proxy;
+	}
+
+	/**
+	 * Closes every idle connection and rejects further borrows.
+	 * Connections that are still borrowed are closed when they are returned.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		housekeeper.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			destroy(pooled);
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the pool metrics.
+	 *
+	 * @return the current pool statistics
+	 */
+	public PoolStatistics getStatistics() {
+		return new PoolStatistics(active.size(), idle.size(), waiting.get(), borrowCount.get(),
+				totalBorrowWaitNanos.get(), maxBorrowWaitNanos.get(), totalHoldNanos.get(), maxHoldNanos.get(),
+				System.nanoTime() - createdAt, createdCount.get(), destroyedCount.get(),
+				validationFailureCount.get(), leakCount.get(), reborrowCount.get());
+	}
+
+	/**
+	 * Runs the action once the transaction of a pooled connection is committed, by {@code commit()} or
+	 * by switching auto-commit back on, or at once if the connection is in auto-commit mode. The action
+	 * is dropped if the transaction is rolled back or the connection is returned without committing.
+	 *
+	 * @param connection the connection
+	 * @param action the action
+	 * @return false if the connection was not borrowed from a pool, in which case nothing is done
+	 * @throws SQLException if the connection was returned to its pool or its mode cannot be read
+	 */
+	static boolean runAfterCommit(Connection connection, Runnable action) throws SQLException {
+		if (!Proxy.isProxyClass(connection.getClass())) {
+			return false;
+		}
+		InvocationHandler handler = Proxy.getInvocationHandler(connection);
+		if (handler instanceof PooledConnection pooled) {
+			pooled.runAfterCommit(connection, action);
+			return true;
+		} else if (handler instanceof NestedBorrow nested) {
+			if (nested.closed) {
+				throw new SQLException("Connection is closed");
+			}
+			// Deferred until the outer transaction commits if the nested borrow runs inside it
+			nested.pooled.runAfterCommit(nested.pooled.proxy, action);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the connection the current thread borrowed last if it holds every connection of the pool.
+	 */
+	private PooledConnection lastHeldByCurrentThread() {
+		Thread current = Thread.currentThread();
+		int count = 0;
+		PooledConnection last = null;
+		for (PooledConnection pooled : active) {
+			if (pooled.borrower == current) {
+				count++;
+				if (last == null || pooled.borrowedAt - last.borrowedAt > 0) {
+					last = pooled;
+				}
+			}
+		}
+		return count >= maxSize ? last : null;
+	}
+
+	/**
+	 * Opens a new physical connection and applies the connection profile to it.
+	 * Subclasses may override this to prepare connections, it is called from the constructor too.
+	 *
+	 * @return a new physical connection
+	 * @throws SQLException if the connection cannot be opened or set up
+	 */
+	protected Connection openPhysicalConnection() throws SQLException {
+		Connection connection = DriverManager.getConnection(jdbcUrl);
+		if (profile != null) {
+			try {
+				profile.apply(connection);
+			} catch (SQLException e) {
+				connection.close();
+				throw e;
+			}
+		}
+		return connection;
+	}
+
+	/**
+	 * Opens idle connections until {@code minSize} are open. A connection that cannot be opened is
+	 * reported and left to the next borrow or housekeeping run.
+	 */
+	private void openMinimumConnections() {
+		while (!shutdown && active.size() + idle.size() < minSize) {
+			PooledConnection pooled;
+			try {
+				pooled = new PooledConnection(openPhysicalConnection());
+			} catch (SQLException e) {
+				System.err.println("Unable to open pooled connection: " + e.getMessage());
+				return;
+			}
+			createdCount.incrementAndGet();
+			pooled.returnedAt = System.nanoTime();
+			idle.offerLast(pooled);
+		}
+	}
+
+	private boolean isValid(Connection connection) {
+		try {
+			return !connection.isClosed() && connection.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void release(PooledConnection pooled) {
+		if (!active.remove(pooled)) {
+			return;
+		}
+		pooled.borrower = null;
+
+		long held = System.nanoTime() - pooled.borrowedAt;
+		totalHoldNanos.addAndGet(held);
+		maxHoldNanos.accumulateAndGet(held, Math::max);
+
+		boolean reusable = !shutdown;
+		pooled.closeStatements();
+		pooled.clearAfterCommit();
+
+		// Leave the connection in the state a new borrower expects
+		try {
+			if (!pooled.physical.getAutoCommit()) {
+				pooled.physical.rollback();
+				pooled.physical.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			System.err.println("Unable to reset pooled connection: " + e.getMessage());
+			reusable = false;
+		}
+
+		if (reusable) {
+			pooled.returnedAt = System.nanoTime();
+			idle.offerFirst(pooled);
+		} else {
+			destroy(pooled);
+		}
+		permits.release();
+	}
+
+	private void destroy(PooledConnection pooled) {
+		destroyedCount.incrementAndGet();
+		try {
+			pooled.physical.close();
+		} catch (SQLException e) {
+			System.err.println("Unable to close pooled connection: " + e.getMessage());
+		}
+	}
+
+	private void housekeep() {
+		try {
+			long now = System.nanoTime();
+
+			// Evict connections that were idle too long, oldest first, keeping minSize open
+			PooledConnection oldest;
+			while (active.size() + idle.size() > minSize && (oldest = idle.peekLast()) != null
+					&& now - oldest.returnedAt > TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+				if (idle.removeLastOccurrence(oldest)) {
+					destroy(oldest);
+				}
+			}
+
+			// Report connections that were borrowed but never given back
+			if (leakThresholdMillis > 0) {
+				for (PooledConnection pooled : active) {
+					if (!pooled.leakReported
+							&& now - pooled.borrowedAt > TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis)) {
+						pooled.leakReported = true;
+						leakCount.incrementAndGet();
+						System.err.println("Possible connection leak: connection borrowed at "
+								+ Instant.ofEpochMilli(pooled.borrowedAtMillis) + " by thread " + pooled.borrowerName
+								+ " held for more than " + leakThresholdMillis + " ms");
+						if (pooled.borrowTrace != null) {
+							pooled.borrowTrace.printStackTrace();
+						}
+					}
+				}
+			}
+
+			// Replace the connections closed after failing validation
+			openMinimumConnections();
+		} catch (RuntimeException e) {
+			System.err.println("Connection pool housekeeping failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Adds a statement to the statements to close with the connection. The statements the borrower
+	 * closed itself are dropped first, so the list only grows with the statements left open.
+	 */
+	private static void track(List<Statement> statements, Statement statement) {
+		statements.removeIf(tracked -> {
+			try {
+				return tracked.isClosed();
+			} catch (SQLException e) {
+				return false;
+			}
+		});
+		statements.add(statement);
+	}
+
+	/**
+	 * A physical connection together with its pool bookkeeping.
+	 */
+	private class PooledConnection implements InvocationHandler {
+		private final Connection physical;
+		private final List<Statement> statements = new ArrayList<>();
+		// Actions waiting for the current transaction to commit
+		private final List<Runnable> afterCommit = new ArrayList<>();
+		private volatile Connection proxy;
+		private volatile boolean logicallyClosed;
+		private volatile long borrowedAt;
+		private volatile long borrowedAtMillis;
+		private volatile String borrowerName;
+		private volatile long returnedAt;
+		private volatile boolean leakReported;
+		private volatile Throwable borrowTrace;
+		private volatile Thread borrower;
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+		}
+
+		void onBorrow(boolean recordTrace) {
+			logicallyClosed = false;
+			leakReported = false;
+			borrowedAt = System.nanoTime();
+			borrowedAtMillis = System.currentTimeMillis();
+			borrower = Thread.currentThread();
+			// Virtual threads have no name unless given one
+			borrowerName = borrower.getName().isEmpty() ? "#" + borrower.threadId() : borrower.getName();
+			borrowTrace = recordTrace ? new Throwable("Connection borrowed here") : null;
+			// A fresh proxy per borrow so a stale reference cannot close the next borrower's connection
+			proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+		}
+
+		synchronized void closeStatements() {
+			for (Statement statement : statements) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					System.err.println("Unable to close statement: " + e.getMessage());
+				}
+			}
+			statements.clear();
+		}
+
+		void runAfterCommit(Connection connection, Runnable action) throws SQLException {
+			if (connection != proxy || logicallyClosed) {
+				throw new SQLException("Connection has been returned to the pool");
+			}
+			if (physical.getAutoCommit()) {
+				action.run();
+				return;
+			}
+			synchronized (this) {
+				afterCommit.add(action);
+			}
+		}
+
+		synchronized void clearAfterCommit() {
+			afterCommit.clear();
+		}
+
+		private void committed() {
+			List<Runnable> actions;
+			synchronized (this) {
+				if (afterCommit.isEmpty()) {
+					return;
+				}
+				actions = new ArrayList<>(afterCommit);
+				afterCommit.clear();
+			}
+			for (Runnable action : actions) {
+				try {
+					action.run();
+				} catch (RuntimeException e) {
+					System.err.println("Action after commit failed: " + e.getMessage());
+				}
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxyInstance, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+
+			if (proxyInstance != proxy) {
+				// Proxy from an earlier borrow
+				if (name.equals("close")) {
+					return null;
+				} else if (name.equals("isClosed")) {
+					return true;
+				}
+				throw new SQLException("Connection has been returned to the pool");
+			}
+
+			switch (name) {
+				case "close":
+					if (!logicallyClosed) {
+						logicallyClosed = true;
+						release(this);
+					}
+					return null;
+				case "isClosed":
+					return logicallyClosed || physical.isClosed();
+				case "unwrap":
+					if (((Class<?>) args[0]).isInstance(proxyInstance)) {
+						return proxyInstance;
+					}
+					break;
+				case "isWrapperFor":
+					if (((Class<?>) args[0]).isInstance(proxyInstance)) {
+						return true;
+					}
+					break;
+				case "equals":
+					return proxyInstance == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxyInstance);
+				case "toString":
+					return "PooledConnection[" + physical + "]";
+				default:
+					break;
+			}
+
+			if (logicallyClosed) {
+				throw new SQLException("Connection is closed");
+			}
+
+			// Committing runs the deferred actions, rolling the whole transaction back drops them
+			boolean commits = name.equals("commit")
+					|| (name.equals("setAutoCommit") && (Boolean) args[0] && !physical.getAutoCommit());
+			boolean rollsBack = name.equals("rollback") && args == null;
+
+			try {
+				Object result = method.invoke(physical, args);
+				if (commits) {
+					committed();
+				} else if (rollsBack) {
+					clearAfterCommit();
+				}
+				if (result instanceof Statement) {
+					synchronized (this) {
+						track(statements, (Statement) result);
+					}
+				}
+				return result;
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * A borrow of a connection already held by the borrowing thread, see {@link ConnectionPool#borrow()}.
+	 */
+	private class NestedBorrow implements InvocationHandler {
+		private final PooledConnection pooled;
+		private final Connection proxy;
+		// Set when the connection was in a transaction, which the nested borrow joins
+		private final Savepoint savepoint;
+		private final List<Statement> statements = new ArrayList<>();
+		private volatile boolean closed;
+
+		NestedBorrow(PooledConnection pooled) throws SQLException {
+			this.pooled = pooled;
+			this.savepoint = pooled.physical.getAutoCommit() ? null : pooled.physical.setSavepoint();
+			this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxyInstance, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			Connection physical = pooled.physical;
+
+			switch (name) {
+				case "close":
+					if (!closed) {
+						closed = true;
+						end();
+					}
+					return null;
+				case "isClosed":
+					return closed || physical.isClosed();
+				case "unwrap":
+					if (((Class<?>) args[0]).isInstance(proxyInstance)) {
+						return proxyInstance;
+					}
+					break;
+				case "isWrapperFor":
+					if (((Class<?>) args[0]).isInstance(proxyInstance)) {
+						return true;
+					}
+					break;
+				case "equals":
+					return proxyInstance == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxyInstance);
+				case "toString":
+					return "NestedConnection[" + physical + "]";
+				default:
+					break;
+			}
+
+			if (closed) {
+				throw new SQLException("Connection is closed");
+			}
+
+			boolean commits = false;
+			boolean rollsBack = false;
+			if (savepoint != null) {
+				// The outer borrower owns the transaction
+				switch (name) {
+					case "setAutoCommit":
+					case "commit":
+						return null;
+					case "getAutoCommit":
+						return false;
+					case "rollback":
+						if (args == null) {
+							physical.rollback(savepoint);
+							return null;
+						}
+						break;
+					default:
+						break;
+				}
+			} else {
+				commits = name.equals("commit")
+						|| (name.equals("setAutoCommit") && (Boolean) args[0] && !physical.getAutoCommit());
+				rollsBack = name.equals("rollback") && args == null;
+			}
+
+			try {
+				Object result = method.invoke(physical, args);
+				if (commits) {
+					pooled.committed();
+				} else if (rollsBack) {
+					pooled.clearAfterCommit();
+				}
+				if (result instanceof Statement) {
+					track(statements, (Statement) result);
+				}
+				return result;
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		/**
+		 * Closes the statements of the nested borrow and leaves the connection as the outer borrower had it.
+		 */
+		private void end() {
+			for (Statement statement : statements) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					System.err.println("Unable to close statement: " + e.getMessage());
+				}
+			}
+			statements.clear();
+
+			try {
+				if (savepoint != null) {
+					pooled.physical.releaseSavepoint(savepoint);
+				} else if (!pooled.physical.getAutoCommit()) {
+					pooled.physical.rollback();
+					pooled.physical.setAutoCommit(true);
+					pooled.clearAfterCommit();
+				}
+			} catch (SQLException e) {
+				System.err.println("Unable to end nested connection borrow: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * An immutable snapshot of the pool metrics.
+	 */
+	public static class PoolStatistics {
+		private final int activeCount;
+		private final int idleCount;
+		private final int waitingCount;
+		private final long borrowCount;
+		private final long totalBorrowWaitNanos;
+		private final long maxBorrowWaitNanos;
+		private final long totalHoldNanos;
+		private final long maxHoldNanos;
+		private final long elapsedNanos;
+		private final long createdCount;
+		private final long destroyedCount;
+		private final long validationFailureCount;
+		private final long leakCount;
+		private final long reborrowCount;
+
+		PoolStatistics(int activeCount, int idleCount, int waitingCount, long borrowCount,
+				long totalBorrowWaitNanos, long maxBorrowWaitNanos, long totalHoldNanos, long maxHoldNanos,
+				long elapsedNanos, long createdCount, long destroyedCount, long validationFailureCount, long leakCount,
+				long reborrowCount) {
+			this.activeCount = activeCount;
+			this.idleCount = idleCount;
+			this.waitingCount = waitingCount;
+			this.borrowCount = borrowCount;
+			this.totalBorrowWaitNanos = totalBorrowWaitNanos;
+			this.maxBorrowWaitNanos = maxBorrowWaitNanos;
+			this.totalHoldNanos = totalHoldNanos;
+			this.maxHoldNanos = maxHoldNanos;
+			this.elapsedNanos = elapsedNanos;
+			this.createdCount = createdCount;
+			this.destroyedCount = destroyedCount;
+			this.validationFailureCount = validationFailureCount;
+			this.leakCount = leakCount;
+			this.reborrowCount = reborrowCount;
+		}
+
+		// Getters
+
+		public int getActiveCount() {
+			return activeCount;
+		}
+
+		public int getIdleCount() {
+			return idleCount;
+		}
+
+		public int getWaitingCount() {
+			return waitingCount;
+		}
+
+		public long getBorrowCount() {
+			return borrowCount;
+		}
+
+		public double getAverageBorrowWaitMillis() {
+			return borrowCount == 0 ? 0.0 : totalBorrowWaitNanos / (double) borrowCount / 1_000_000.0;
+		}
+
+		public double getMaxBorrowWaitMillis() {
+			return maxBorrowWaitNanos / 1_000_000.0;
+		}
+
+		/**
+		 * Returns the average time between borrowing a connection and giving it back,
+		 * over the connections given back.
+		 *
+		 * @return the average hold time in milliseconds
+		 */
+		public double getAverageHoldMillis() {
+			long returned = borrowCount - activeCount;
+			return returned <= 0 ? 0.0 : totalHoldNanos / (double) returned / 1_000_000.0;
+		}
+
+		public double getMaxHoldMillis() {
+			return maxHoldNanos / 1_000_000.0;
+		}
+
+		/**
+		 * Returns the number of borrows per second since the pool was created.
+		 *
+		 * @return the borrow throughput
+		 */
+		public double getBorrowsPerSecond() {
+			return elapsedNanos <= 0 ? 0.0 : borrowCount / (elapsedNanos / 1_000_000_000.0);
+		}
+
+		public long getCreatedCount() {
+			return createdCount;
+		}
+
+		public long getDestroyedCount() {
+			return destroyedCount;
+		}
+
+		public long getValidationFailureCount() {
+			return validationFailureCount;
+		}
+
+		public long getLeakCount() {
+			return leakCount;
+		}
+
+		/**
+		 * Returns the number of nested borrows handed the connection their thread already held.
+		 *
+		 * @return the number of nested borrows
+		 */
+		public long getReborrowCount() {
+			return reborrowCount;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("active=%d idle=%d waiting=%d borrows=%d (%.1f/s) avgWait=%.3fms maxWait=%.3fms"
+					+ " avgHold=%.3fms maxHold=%.3fms created=%d destroyed=%d validationFailures=%d leaks=%d reborrows=%d",
+					activeCount, idleCount, waitingCount, borrowCount, getBorrowsPerSecond(), getAverageBorrowWaitMillis(),
+					getMaxBorrowWaitMillis(), getAverageHoldMillis(), getMaxHoldMillis(), createdCount, destroyedCount,
+					validationFailureCount, leakCount, reborrowCount);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SQLite settings applied to every new connection with PRAGMA statements.
+ *
+ * The presets cover the ways the application uses the database. All of them use WAL journaling,
+ * where readers do not block the writer and the writer does not block readers, since the journal
+ * mode is stored in the database file and every connection must agree on it.
+ */
+public final class ConnectionProfile {
+
+	/**
+	 * For the ticket counters: many short reads and small booking transactions.
+	 */
+	public static final ConnectionProfile KIOSK = new ConnectionProfile("kiosk",
+			JournalMode.WAL, Synchronous.NORMAL, 64L * 1024 * 1024, 16 * 1024, TempStore.MEMORY, 5_000);
+
+	/**
+	 * For the admin screens: larger scans and reports, which benefit from more cache and memory mapping.
+	 */
+	public static final ConnectionProfile BACK_OFFICE = new ConnectionProfile("back-office",
+			JournalMode.WAL, Synchronous.NORMAL, 256L * 1024 * 1024, 64 * 1024, TempStore.MEMORY, 15_000);
+
+	/**
+	 * For imports and data generation: no fsync and a large cache. A crash may lose the last
+	 * transactions, but cannot corrupt the database.
+	 */
+	public static final ConnectionProfile BULK_LOAD = new ConnectionProfile("bulk-load",
+			JournalMode.WAL, Synchronous.OFF, 256L * 1024 * 1024, 256 * 1024, TempStore.MEMORY, 60_000);
+
+	private final String name;
+	private final JournalMode journalMode;
+	private final Synchronous synchronous;
+	private final long mmapSizeBytes;
+	private final int cacheSizeKibibytes;
+	private final TempStore tempStore;
+	private final int busyTimeoutMillis;
+	private final boolean queryOnly;
+
+	/**
+	 * Creates a profile.
+	 *
+	 * @param name the name of the profile, used in messages
+	 * @param journalMode the journal mode
+	 * @param synchronous how often SQLite waits for data to reach the disk
+	 * @param mmapSizeBytes the maximum number of bytes of the database file accessed through memory mapping, 0 disables
+	 * @param cacheSizeKibibytes the size of the page cache of each connection in KiB
+	 * @param tempStore where temporary tables and indexes are stored
+	 * @param busyTimeoutMillis how long a connection waits for a lock held by another one before failing
+	 * @throws IllegalArgumentException if a size or the timeout is negative
+	 */
+	public ConnectionProfile(String name, JournalMode journalMode, Synchronous synchronous, long mmapSizeBytes,
+			int cacheSizeKibibytes, TempStore tempStore, int busyTimeoutMillis) {
+		this(name, journalMode, synchronous, mmapSizeBytes, cacheSizeKibibytes, tempStore, busyTimeoutMillis, false);
+	}
+
+	private ConnectionProfile(String name, JournalMode journalMode, Synchronous synchronous, long mmapSizeBytes,
+			int cacheSizeKibibytes, TempStore tempStore, int busyTimeoutMillis, boolean queryOnly) {
+		if (mmapSizeBytes < 0 || cacheSizeKibibytes < 0 || busyTimeoutMillis < 0) {
+			throw new IllegalArgumentException("Connection profile " + name + " has a negative size or timeout");
+		}
+		this.name = name;
+		this.journalMode = journalMode;
+		this.synchronous = synchronous;
+		this.mmapSizeBytes = mmapSizeBytes;
+		this.cacheSizeKibibytes = cacheSizeKibibytes;
+		this.tempStore = tempStore;
+		this.busyTimeoutMillis = busyTimeoutMillis;
+		this.queryOnly = queryOnly;
+	}
+
+	/**
+	 * Returns a profile with the same settings whose connections cannot change the database.
+	 *
+	 * @return the read-only profile
+	 */
+	public ConnectionProfile asQueryOnly() {
+		if (queryOnly) {
+			return this;
+		}
+		return new ConnectionProfile(name + "-read", journalMode, synchronous, mmapSizeBytes, cacheSizeKibibytes,
+				tempStore, busyTimeoutMillis, true);
+	}
+
+	/**
+	 * Returns the preset with the given name.
+	 *
+	 * @param name the name of a preset: kiosk, back-office or bulk-load
+	 * @return the preset
+	 * @throws IllegalArgumentException if there is no preset with the name
+	 */
+	public static ConnectionProfile forName(String name) {
+		for (ConnectionProfile profile : new ConnectionProfile[] { KIOSK, BACK_OFFICE, BULK_LOAD }) {
+			if (profile.name.equalsIgnoreCase(name)) {
+				return profile;
+			}
+		}
+		throw new IllegalArgumentException("Unknown connection profile: " + name);
+	}
+
+	/**
+	 * Applies the settings of the profile to a connection.
+	 *
+	 * @param connection the connection
+	 * @throws SQLException if a setting cannot be applied
+	 */
+	public void apply(Connection connection) throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			// Set first, so the other statements wait for locks instead of failing
+			stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+			stmt.execute("PRAGMA journal_mode = " + journalMode);
+			stmt.execute("PRAGMA synchronous = " + synchronous);
+			stmt.execute("PRAGMA mmap_size = " + mmapSizeBytes);
+			// A negative cache size is in KiB instead of pages
+			stmt.execute("PRAGMA cache_size = -" + cacheSizeKibibytes);
+			stmt.execute("PRAGMA temp_store = " + tempStore);
+			if (queryOnly) {
+				// Statements that would write fail with SQLITE_READONLY
+				stmt.execute("PRAGMA query_only = ON");
+			}
+		}
+	}
+
+	// Getters
+
+	public String getName() {
+		return name;
+	}
+
+	public JournalMode getJournalMode() {
+		return journalMode;
+	}
+
+	public Synchronous getSynchronous() {
+		return synchronous;
+	}
+
+	public long getMmapSizeBytes() {
+		return mmapSizeBytes;
+	}
+
+	public int getCacheSizeKibibytes() {
+		return cacheSizeKibibytes;
+	}
+
+	public TempStore getTempStore() {
+		return tempStore;
+	}
+
+	public int getBusyTimeoutMillis() {
+		return busyTimeoutMillis;
+	}
+
+	public boolean isQueryOnly() {
+		return queryOnly;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionProfile[" + name + ", journal_mode=" + journalMode + ", synchronous=" + synchronous
+			+ ", mmap_size=" + mmapSizeBytes + ", cache_size=" + cacheSizeKibibytes + " KiB"
+			+ ", temp_store=" + tempStore + ", busy_timeout=" + busyTimeoutMillis + (queryOnly ? ", query_only" : "") + "]";
+	}
+
+	public enum JournalMode {
+		DELETE,
+		TRUNCATE,
+		PERSIST,
+		MEMORY,
+		WAL,
+		OFF
+	}
+
+	public enum Synchronous {
+		OFF,
+		NORMAL,
+		FULL,
+		EXTRA
+	}
+
+	public enum TempStore {
+		DEFAULT,
+		FILE,
+		MEMORY
+	}
+}
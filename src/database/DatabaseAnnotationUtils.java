@@ -1,18 +1,15 @@
 package database;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDate;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 public final class DatabaseAnnotationUtils {
+	public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+	public static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
 	
 	private DatabaseAnnotationUtils() {
 		throw new AssertionError("Cannot instantiate DatabaseAnnotationUtils");
@@ -26,11 +23,7 @@ public final class DatabaseAnnotationUtils {
 	 * @throws IllegalArgumentException If the class does not have a TableName annotation.
 	 */
     public static String getTableName(Class<?> clazz) {
-        TableName tableNameAnnotation = clazz.getAnnotation(TableName.class);
-        if (tableNameAnnotation == null) {
-            throw new IllegalArgumentException("Class " + clazz.getName() + " does not have a TableName annotation");
-        }
-        return tableNameAnnotation.value();
+        return EntityMetadata.forClass(clazz).getTableName();
     }
 
 	/**
@@ -56,21 +49,7 @@ public final class DatabaseAnnotationUtils {
 	 * @throws IllegalArgumentException if the class does not have any fields with the ColumnName annotation
 	 */
 	public static Map<String, Field> getColumnNamesAndFields(Class<?> clazz) {
-		Map<String, Field> columnFieldMap = new LinkedHashMap<>();
-		Field[] fields = clazz.getDeclaredFields();
-
-		for (Field field : fields) {
-			ColumnName columnNameAnnotation = field.getAnnotation(ColumnName.class);
-			if (columnNameAnnotation != null) {
-				columnFieldMap.put(columnNameAnnotation.value(), field);
-			}
-		}
-
-		if (columnFieldMap.isEmpty()) {
-			throw new IllegalArgumentException("Class " + clazz.getName() + " does not have any fields with the ColumnName annotation");
-		}
-
-		return columnFieldMap;
+		return EntityMetadata.forClass(clazz).getColumnFieldMap();
 	}
 
 	/**
@@ -81,13 +60,7 @@ public final class DatabaseAnnotationUtils {
 	 * @throws IllegalArgumentException if the class does not have a field with the PrimaryKey annotation
 	 */
 	public static String getPrimaryKey(Class<?> clazz) {
-		Field[] fields = clazz.getDeclaredFields();
-		for (Field field : fields) {
-			if (field.getAnnotation(PrimaryKey.class) != null) {
-				return getColumnName(field);
-			}
-		}
-		throw new IllegalArgumentException("Class " + clazz.getName() + " does not have a field with the PrimaryKey annotation");
+		return EntityMetadata.forClass(clazz).getPrimaryKey().getName();
 	}
 
 	/**
@@ -98,13 +71,7 @@ public final class DatabaseAnnotationUtils {
 	 * @throws IllegalArgumentException if the object does not have a field with the PrimaryKey annotation
 	 */
 	public static int getPrimaryKeyValue(Object object) {
-		Class<?> clazz= object.getClass();
-		for (Field field : clazz.getDeclaredFields()) {
-			if (field.getAnnotation(PrimaryKey.class) != null) {
-				return (int) getFieldValue(field, object);
-			}
-		}
-		throw new IllegalArgumentException("Object " + object.getClass().getName() + " does not have a field with the PrimaryKey annotation");
+		return EntityMetadata.forClass(object.getClass()).getPrimaryKeyValue(object);
 	}
 
 	/**
@@ -116,23 +83,7 @@ public final class DatabaseAnnotationUtils {
 	 * @throws RuntimeException if unable to create the object
 	 */
 	public static <T> T createNewInstance(Class<T> clazz) {
-		T object = null;
-		try {
-			Constructor<T> constructor = clazz.getDeclaredConstructor();
-			constructor.setAccessible(true);
-			object = clazz.cast(constructor.newInstance());
-		} catch (NoSuchMethodException | IllegalAccessException | 
-				InstantiationException | InvocationTargetException e) {
-			System.err.println("Unable to access constructor: " + e.getMessage());
-			throw new RuntimeException("Unable to create object: " + e.getMessage(), e);
-		} finally {
-			try {
-				clazz.getDeclaredConstructor().setAccessible(false);
-			} catch (NoSuchMethodException e) {
-				System.err.println("Unable to access constructor: " + e.getMessage());
-			}
-		}
-		return object;
+		return RowMapper.forClass(clazz).newInstance();
 	}
 
 	/**
@@ -151,7 +102,9 @@ public final class DatabaseAnnotationUtils {
 		try {
 			int i = 1;
 			for (Field field : columnFieldMap.values()) {
-				field.setAccessible(true);
+				if (!field.canAccess(object)) {
+					field.setAccessible(true);
+				}
 				Object value;
 				Class<?> type = field.getType();
 				if (type == int.class || type == Integer.class) {
@@ -166,20 +119,12 @@ public final class DatabaseAnnotationUtils {
 					value = rs.getLong(i);
 				} else if (type == float.class || type == Float.class) {
 					value = rs.getFloat(i);
-				} else if (type == LocalDate.class) {
-					value = LocalDate.parse(
-						rs.getString(i),
-						DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-				} else if (type == LocalTime.class) {
-					value = LocalTime.parse(
-						rs.getString(i),
-						DateTimeFormatter.ofPattern("HH:mm:ss"));
+				} else if (ColumnCodecs.forType(type) != null) {
+					value = ColumnCodecs.forType(type).read(rs, i);
 				} else {
-					field.setAccessible(false);
 					throw new IllegalArgumentException("Unsupported field type: " + type.getName());
 				}
 				field.set(object, value);
-				field.setAccessible(false);
 				i++;
 			}
 		} catch (IllegalAccessException | SQLException e) {
@@ -189,6 +134,25 @@ public final class DatabaseAnnotationUtils {
 		return object;
 	}
 
+	/**
+	 * Sets the mapped fields of an object from the current row of a ResultSet, using the row mapper of its class.
+	 *
+	 * @param <T>    the type of the object
+	 * @param object    the object to set the fields on
+	 * @param rs    the ResultSet containing the values, with the mapped columns first
+	 * @return the object with the fields set
+	 * @throws RuntimeException if unable to set the fields
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T setFieldsFromResultSet(T object, ResultSet rs) {
+		try {
+			return RowMapper.forClass((Class<T>) object.getClass()).read(rs, 1, object);
+		} catch (SQLException e) {
+			System.err.println("Unable to set field: " + e.getMessage());
+			throw new RuntimeException("Unable to set field: " + e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Checks if the given field is marked as a primary key.
 	 *
@@ -210,13 +174,13 @@ public final class DatabaseAnnotationUtils {
 	 */
 	public static Object getFieldValue(Field field, Object object) {
 		try {
-			field.setAccessible(true);
+			if (!field.canAccess(object)) {
+				field.setAccessible(true);
+			}
 			return field.get(object);
 		} catch (IllegalAccessException e) {
 			System.err.println("Unable to get field value: " + e.getMessage());
 			throw new RuntimeException("Unable to get field value: " + e.getMessage(), e);
-		} finally {
-			field.setAccessible(false);
 		}
 	}
 
@@ -231,8 +195,6 @@ public final class DatabaseAnnotationUtils {
 	public static void setPreparedStatementValue(PreparedStatement stmt, int index, Object value) throws SQLException {
 		if (value == null) {
 			stmt.setNull(index, java.sql.Types.NULL);
-		} else if (value instanceof LocalDate) {
-			stmt.setString(index, ((LocalDate) value).format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
 		} else if (value instanceof Integer) {
 			stmt.setInt(index, (Integer) value);
 		} else if (value instanceof Float) {
@@ -243,16 +205,21 @@ public final class DatabaseAnnotationUtils {
 			stmt.setLong(index, (Long) value);
 		} else if (value instanceof Boolean) {
 			stmt.setBoolean(index, (Boolean) value);
-		} else if (value instanceof LocalTime) {
-			stmt.setString(index, ((LocalTime) value).format(DateTimeFormatter.ofPattern("HH:mm:ss"))); 
 		} else if (value instanceof String) {
 			stmt.setString(index, (String) value);
+		} else if (ColumnCodecs.forType(value.getClass()) != null) {
+			writeWithCodec(stmt, index, ColumnCodecs.forType(value.getClass()), value);
 		} else {
 			System.err.println("Setting value with setObject for type: " + value.getClass().getName());
 			stmt.setObject(index, value);
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	private static <T> void writeWithCodec(PreparedStatement stmt, int index, ColumnCodec<T> codec, Object value) throws SQLException {
+		codec.write(stmt, index, (T) value);
+	}
+
 	/**
 	 * Sets the values of a PreparedStatement based on the given column-field mapping and object.
 	 *
@@ -277,6 +244,24 @@ public final class DatabaseAnnotationUtils {
 		}
 	}
 
+	/**
+	 * Sets the non primary key values of the given entity on a PreparedStatement,
+	 * in the order used by the INSERT and UPDATE queries of its class.
+	 *
+	 * @param object the entity from which to retrieve the field values
+	 * @param ps the PreparedStatement to set the values on
+	 * @return the index of the next parameter, where the primary key goes in an UPDATE query
+	 * @throws RuntimeException if unable to set the prepared statement values
+	 */
+	public static int setPreparedStatementValueSet(Object object, PreparedStatement ps) {
+		try {
+			return RowMapper.forClass(object.getClass()).writeNonPrimaryKeyColumns(object, ps, 1);
+		} catch (SQLException e) {
+			System.err.println("Unable to set prepared statement values: " + e.getMessage());
+			throw new RuntimeException("Unable to set prepared statement values: " + e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * Generates an SQL INSERT query for the specified class.
 	 *
@@ -284,23 +269,7 @@ public final class DatabaseAnnotationUtils {
 	 * @return the generated INSERT query as a string
 	 */
 	public static String getInsertQuery(Class<?> clazz) {
-		StringBuilder queryBuilder = new StringBuilder("INSERT INTO " + getTableName(clazz) + " (");
-		StringBuilder valuesBuilder = new StringBuilder(") VALUES (");
-
-		Map<String, Field> columnFieldMap = getColumnNamesAndFields(clazz);
-
-		for (String columnName : columnFieldMap.keySet()) {
-			if (!isPrimaryKey(columnFieldMap.get(columnName))) {
-				queryBuilder.append(columnName).append(", ");
-				valuesBuilder.append("?, ");
-			}
-		}
-
-		// Remove the last comma and space
-		queryBuilder.delete(queryBuilder.length() - 2, queryBuilder.length());
-		valuesBuilder.delete(valuesBuilder.length() - 2, valuesBuilder.length());
-
-		return queryBuilder.append(valuesBuilder).append(")").toString();
+		return EntityMetadata.forClass(clazz).getInsertQuery();
 	}
 
 	/**
@@ -310,22 +279,7 @@ public final class DatabaseAnnotationUtils {
 	 * @return the update query as a string
 	 */
 	public static String getUpdateQuery(Class<?> clazz) {
-		StringBuilder queryBuilder = new StringBuilder("UPDATE " + getTableName(clazz) + " SET ");
-
-		Map<String, Field> columnFieldMap = getColumnNamesAndFields(clazz);
-
-		for (String columnName : columnFieldMap.keySet()) {
-			if (!isPrimaryKey(columnFieldMap.get(columnName))) {
-				queryBuilder.append(columnName).append(" = ?, ");
-			}
-		}
-
-		// Remove the last comma and space
-		queryBuilder.delete(queryBuilder.length() - 2, queryBuilder.length());
-
-		queryBuilder.append(" WHERE ").append(getPrimaryKey(clazz)).append(" = ?");
-
-		return queryBuilder.toString();
+		return EntityMetadata.forClass(clazz).getUpdateQuery();
 	}
 
 	/**
@@ -335,6 +289,6 @@ public final class DatabaseAnnotationUtils {
 	 * @return the delete query string
 	 */
 	public static String getDeleteQuery(Class<?> clazz) {
-		return "DELETE FROM " + getTableName(clazz) + " WHERE " + getPrimaryKey(clazz) + " = ?";
+		return EntityMetadata.forClass(clazz).getDeleteQuery();
 	}
 }
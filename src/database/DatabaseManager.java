@@ -1,28 +1,317 @@
 package database;
-import java.lang.reflect.Field;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DatabaseManager {
-	public static final String SQLITE_JDBC_URL = "jdbc:sqlite:data/cinema_mecpine.db";
+	public static final String DEFAULT_DATABASE_FILE = "data/cinema_mecpine.db";
+	public static final String SQLITE_JDBC_URL = "jdbc:sqlite:" + DEFAULT_DATABASE_FILE;
+
+	// Maximum number of rows sent to the database in one batch by the bulk methods
+	public static final int BATCH_SIZE = 500;
+
+	// System property selecting the connection profile preset, see ConnectionProfile.forName
+	public static final String CONNECTION_PROFILE_PROPERTY = "cinema.db.profile";
+
+	// System properties selecting the storage backend and the database file, see StorageBackend.forName
+	public static final String STORAGE_BACKEND_PROPERTY = "cinema.db.backend";
+	public static final String DATABASE_FILE_PROPERTY = "cinema.db.file";
+
+	// Connections of the write lane, a single one makes the writers wait in one first come, first served queue
+	public static final int WRITE_LANE_SIZE = 1;
+
+	private static StorageBackend storageBackend;
+	private static ConnectionPool connectionPool;
+	private static ConnectionPool readPool;
+	private static ConnectionProfile connectionProfile;
+
+	// Number of rows the driver fetches per round trip when reading query results
+	private static volatile int fetchSize = 256;
+
+	// WHERE clauses rendered from filters, keyed by table and filter structure
+	private static final Map<String, String> WHERE_CLAUSE_CACHE = new ConcurrentHashMap<>();
+	private static final int WHERE_CLAUSE_CACHE_LIMIT = 1024;
+
+	// Rows of the classes annotated with Cached, read by getRowById
+	private static final EntityCache ENTITY_CACHE = new EntityCache(EntityCache.DEFAULT_MAX_SIZE);
 
 /**
- * Returns a connection to the database.
+ * Returns a connection to the database, for work that writes to it.
+ * The connection is borrowed from the connection pool of the write lane, closing it returns it to the pool.
+ * With the default single connection lane, the writers wait for each other in the order they arrived.
+ * A nested call borrowing a connection on a thread that already holds the write connection shares it,
+ * and inside a transaction its commit and rollback only apply to its own part, see {@link ConnectionPool#borrow()}.
  *
  * @return a connection to the database
  * @throws SQLException if a database access error occurs
  */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(SQLITE_JDBC_URL);
+        return getConnectionPool().borrow();
     }
 
+	/**
+	 * Returns a connection to the database that cannot write to it, for queries and reports.
+	 * Read connections come from their own pool, so reads never wait for the write lane, and in
+	 * WAL mode they do not block the writer either.
+	 *
+	 * @return a read-only connection to the database
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static Connection getReadConnection() throws SQLException {
+		return getReadPool().borrow();
+	}
+
+	/**
+	 * Returns the connection pool of the write lane, creating it with the default settings on first use.
+	 *
+	 * @return the connection pool behind {@link #getConnection()}
+	 */
+	public static synchronized ConnectionPool getConnectionPool() {
+		if (connectionPool == null) {
+			connectionPool = new ConnectionPool(getStorageBackend().getJdbcUrl(), getConnectionProfile(),
+					ConnectionPool.DEFAULT_MIN_SIZE, WRITE_LANE_SIZE);
+		}
+		return connectionPool;
+	}
+
+	/**
+	 * Returns the connection pool of the read-only connections, creating it with the default settings on first use.
+	 *
+	 * @return the connection pool behind {@link #getReadConnection()}
+	 */
+	public static synchronized ConnectionPool getReadPool() {
+		if (readPool == null) {
+			readPool = new ConnectionPool(getStorageBackend().getJdbcUrl(), getConnectionProfile().asQueryOnly(),
+					ConnectionPool.DEFAULT_MIN_SIZE, ConnectionPool.DEFAULT_MAX_SIZE);
+		}
+		return readPool;
+	}
+
+	/**
+	 * Returns the storage of the database, opening it on first use.
+	 * Unless configured, this is the backend named by the {@value #STORAGE_BACKEND_PROPERTY} system property
+	 * with the file named by the {@value #DATABASE_FILE_PROPERTY} system property, or the
+	 * {@value #DEFAULT_DATABASE_FILE} file if the properties are not set.
+	 *
+	 * @return the storage backend
+	 * @throws IllegalArgumentException if the system property names an unknown backend
+	 * @throws IllegalStateException if the backend cannot be opened
+	 */
+	public static synchronized StorageBackend getStorageBackend() {
+		if (storageBackend == null) {
+			StorageBackend backend = StorageBackend.forName(System.getProperty(STORAGE_BACKEND_PROPERTY, FileStorageBackend.NAME),
+					System.getProperty(DATABASE_FILE_PROPERTY, DEFAULT_DATABASE_FILE));
+			try {
+				backend.open();
+			} catch (SQLException e) {
+				throw new IllegalStateException("Unable to open " + backend + ": " + e.getMessage(), e);
+			}
+			storageBackend = backend;
+		}
+		return storageBackend;
+	}
+
+	/**
+	 * Switches to another storage backend, replacing the connection pools with ones of the same size
+	 * and emptying the entity cache. Connections borrowed from the previous pool are closed when they
+	 * are returned, and the previous backend is closed.
+	 *
+	 * @param backend the new storage backend
+	 * @throws SQLException if the new backend cannot be opened, in which case nothing is changed
+	 */
+	public static synchronized void configureStorageBackend(StorageBackend backend) throws SQLException {
+		backend.open();
+
+		StorageBackend previous = storageBackend;
+		storageBackend = backend;
+		if (connectionPool != null) {
+			configureConnectionPool(connectionPool.getMinSize(), connectionPool.getMaxSize());
+		}
+		if (readPool != null) {
+			configureReadPool(readPool.getMinSize(), readPool.getMaxSize());
+		}
+		ENTITY_CACHE.clear();
+		if (previous != null && previous != backend) {
+			previous.close();
+		}
+	}
+
+	/**
+	 * Returns the settings applied to every new connection.
+	 * Unless configured, this is the preset named by the {@value #CONNECTION_PROFILE_PROPERTY}
+	 * system property, or {@link ConnectionProfile#KIOSK} if the property is not set.
+	 *
+	 * @return the connection profile
+	 * @throws IllegalArgumentException if the system property names an unknown preset
+	 */
+	public static synchronized ConnectionProfile getConnectionProfile() {
+		if (connectionProfile == null) {
+			String name = System.getProperty(CONNECTION_PROFILE_PROPERTY);
+			connectionProfile = name != null ? ConnectionProfile.forName(name) : ConnectionProfile.KIOSK;
+		}
+		return connectionProfile;
+	}
+
+	/**
+	 * Replaces the connection pools with ones of the same size whose connections use the given profile,
+	 * made query only for the read pool.
+	 * Connections borrowed from the previous pools are closed when they are returned.
+	 *
+	 * @param profile the settings applied to every new connection
+	 */
+	public static synchronized void configureConnectionProfile(ConnectionProfile profile) {
+		connectionProfile = profile;
+		if (connectionPool != null) {
+			configureConnectionPool(connectionPool.getMinSize(), connectionPool.getMaxSize());
+		}
+		if (readPool != null) {
+			configureReadPool(readPool.getMinSize(), readPool.getMaxSize());
+		}
+	}
+
+	/**
+	 * Replaces the connection pool of the write lane with one of the given size.
+	 * A size above 1 lets writers run at the same time, leaving SQLite to serialize them with its locks.
+	 * Connections borrowed from the previous pool are closed when they are returned.
+	 *
+	 * @param minSize the number of connections kept open even when idle
+	 * @param maxSize the maximum number of connections open at the same time
+	 * @throws IllegalArgumentException if the sizes are invalid
+	 */
+	public static synchronized void configureConnectionPool(int minSize, int maxSize) {
+		configureConnectionPool(new ConnectionPool(getStorageBackend().getJdbcUrl(), getConnectionProfile(), minSize, maxSize));
+	}
+
+	/**
+	 * Replaces the connection pool of the write lane with the given one.
+	 * Connections borrowed from the previous pool are closed when they are returned.
+	 *
+	 * @param pool the new connection pool
+	 */
+	public static synchronized void configureConnectionPool(ConnectionPool pool) {
+		if (connectionPool != null) {
+			connectionPool.shutdown();
+		}
+		connectionPool = pool;
+	}
+
+	/**
+	 * Replaces the read-only connection pool with one of the given size.
+	 * Connections borrowed from the previous pool are closed when they are returned.
+	 *
+	 * @param minSize the number of connections kept open even when idle
+	 * @param maxSize the maximum number of connections open at the same time
+	 * @throws IllegalArgumentException if the sizes are invalid
+	 */
+	public static synchronized void configureReadPool(int minSize, int maxSize) {
+		ConnectionPool pool = new ConnectionPool(getStorageBackend().getJdbcUrl(), getConnectionProfile().asQueryOnly(),
+				minSize, maxSize);
+		if (readPool != null) {
+			readPool.shutdown();
+		}
+		readPool = pool;
+	}
+
+	/**
+	 * Returns a snapshot of the write lane metrics: the writers waiting in the queue, how long they
+	 * waited, how long they held the connection and how many went through per second.
+	 *
+	 * @return the connection pool statistics of the write lane
+	 */
+	public static ConnectionPool.PoolStatistics getConnectionPoolStatistics() {
+		return getConnectionPool().getStatistics();
+	}
+
+	/**
+	 * Returns a snapshot of the read-only connection pool metrics.
+	 *
+	 * @return the connection pool statistics of the read pool
+	 */
+	public static ConnectionPool.PoolStatistics getReadPoolStatistics() {
+		return getReadPool().getStatistics();
+	}
+
+	/**
+	 * Returns the cache used by {@link #getRowById} for the classes annotated with {@link Cached}.
+	 *
+	 * @return the entity cache
+	 */
+	public static EntityCache getEntityCache() {
+		return ENTITY_CACHE;
+	}
+
+	/**
+	 * Runs the action once the changes made with the connection are committed: at once in auto-commit
+	 * mode, otherwise when its transaction commits. The action is dropped if the transaction is rolled
+	 * back. Connections that were not borrowed from the pools run the action at once.
+	 *
+	 * Work keeping a copy of rows outside of the database, like the entity cache, uses this to drop
+	 * the copy only when the new rows can be read by the other connections.
+	 *
+	 * @param connection the connection of the changes
+	 * @param action the action
+	 * @throws SQLException if the connection was returned to its pool or its mode cannot be read
+	 */
+	public static void afterCommit(Connection connection, Runnable action) throws SQLException {
+		if (!ConnectionPool.runAfterCommit(connection, action)) {
+			action.run();
+		}
+	}
+
+	/**
+	 * Removes a row from the entity cache once the change made with the connection is committed.
+	 * Invalidating before the commit would let a concurrent reader cache the old row again.
+	 */
+	private static void invalidateAfterCommit(Connection connection, Class<?> clazz, int id) throws SQLException {
+		if (EntityCache.isCached(clazz)) {
+			afterCommit(connection, () -> ENTITY_CACHE.invalidate(clazz, id));
+		}
+	}
+
+	private static void invalidateAllAfterCommit(Connection connection, Class<?> clazz) throws SQLException {
+		if (EntityCache.isCached(clazz)) {
+			afterCommit(connection, () -> ENTITY_CACHE.invalidateAll(clazz));
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the entity cache metrics.
+	 *
+	 * @return the entity cache statistics
+	 */
+	public static EntityCache.CacheStatistics getEntityCacheStatistics() {
+		return ENTITY_CACHE.getStatistics();
+	}
+
+	/**
+	 * Sets the number of rows fetched per round trip by the row reading methods.
+	 *
+	 * @param size the fetch size, 0 lets the driver decide
+	 * @throws IllegalArgumentException if the size is negative
+	 */
+	public static void setFetchSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Fetch size cannot be negative: " + size);
+		}
+		fetchSize = size;
+	}
+
+	public static int getFetchSize() {
+		return fetchSize;
+	}
+
 	/**
 	 * Closes the given database connection.
 	 *
@@ -174,18 +463,13 @@ public class DatabaseManager {
 	 * @throws IllegalArgumentException if the class does not have a TableName annotation or any fields with the ColumnName annotation
 	 */
 	public static <T> List<T> getAllRows(Class<T> clazz) throws SQLException, IllegalAccessException, InstantiationException, NoSuchFieldException {
-		// Get the table name from the TableName annotation
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
-	
-		// Get a map of column names and fields from the ColumnName annotations
-		Map<String, Field> columnNamesAndFields = DatabaseAnnotationUtils.getColumnNamesAndFields(clazz);
-	
-		// Build the SQL query
-		String query = "SELECT * FROM " + tableName;
+		// Get the mapping of the class
+		RowMapper<T> mapper = RowMapper.forClass(clazz);
+		EntityMetadata metadata = mapper.getMetadata();
 	
 		// Execute the query and get the result set
-		try (	Connection connection = getConnection();
-				PreparedStatement stmt = connection.prepareStatement(query);
+		try (	Connection connection = getReadConnection();
+				PreparedStatement stmt = prepareWithFetchSize(connection, metadata.getSelectAllQuery());
 			 	ResultSet rs = stmt.executeQuery()) {
 	
 			// Create a list to hold the result objects
@@ -193,8 +477,7 @@ public class DatabaseManager {
 
 			// For each row in the result set, create an object and add it to the list
 			while (rs.next()) {
-				T object = DatabaseAnnotationUtils.createNewInstance(clazz);
-				result.add((T) DatabaseAnnotationUtils.setFieldsFromResultSet(columnNamesAndFields, clazz, object, rs));
+				result.add(mapper.read(rs));
 			}
 	
 			// Return the list of objects
@@ -215,49 +498,21 @@ public class DatabaseManager {
 	 * @throws NoSuchFieldException If the specified field does not exist in the class.
 	 */
 	public static <T> List<T> getRowsFilteredAndSortedBy(Class<T> clazz, List<FilterCondition> filters, String sortBy, boolean ascending, Connection connection) throws SQLException, NoSuchFieldException {
-		// Get the table name from the TableName annotation
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
-	
-		// Get a map of column names and fields from the ColumnName annotations
-		Map<String, Field> columnNamesAndFields = DatabaseAnnotationUtils.getColumnNamesAndFields(clazz);
+		// Get the mapping of the class
+		RowMapper<T> mapper = RowMapper.forClass(clazz);
+		EntityMetadata metadata = mapper.getMetadata();
 	
 		// Build the SQL query
-		StringBuilder query = new StringBuilder("SELECT * FROM " + tableName);
-	
-		// Add the filters to the query
-		if (!filters.isEmpty()) {
-			query.append(" WHERE ");
-			for (FilterCondition filter : filters) {
-				Field field = clazz.getDeclaredField(filter.getFieldName());
-				String columnName = DatabaseAnnotationUtils.getColumnName(field);
-				query.append(columnName).append(" ").append(filter.getRelationOperator()).append(" ? AND ");
-			}
-			// Remove the last " AND "
-			query.setLength(query.length() - 5);
-		}
-	
-		// Add the sort by clause to the query
-		if (sortBy != null) {
-			Field field = clazz.getDeclaredField(sortBy);
-			String columnName = DatabaseAnnotationUtils.getColumnName(field);
-			query.append(" ORDER BY ").append(columnName).append(ascending ? " ASC" : " DESC");
-		}
+		String query = buildSelectQuery(metadata, filters, sortBy, ascending);
 	
 		// Execute the query and get the result set
 		PreparedStatement stmt = null;
 		try {
-			stmt = connection.prepareStatement(query.toString());
+			stmt = connection.prepareStatement(query);
+			stmt.setFetchSize(fetchSize);
 	
 			// Set the filter values in the PreparedStatement
-			int index = 1;
-			for (FilterCondition filter : filters) {
-				if (filter.getRelationOperator().equalsIgnoreCase("LIKE")) {
-					DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index, "%" + filter.getValue() + "%");
-				} else {
-					DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index, filter.getValue());
-				}
-				index++;
-			}
+			bindFilters(stmt, filters, 1);
 	
 			ResultSet rs = stmt.executeQuery();
 	
@@ -266,8 +521,7 @@ public class DatabaseManager {
 	
 			// For each row in the result set, create a new object and set its fields from the result set
 			while (rs.next()) {
-				T object = DatabaseAnnotationUtils.createNewInstance(clazz);
-				result.add((T) DatabaseAnnotationUtils.setFieldsFromResultSet(columnNamesAndFields, clazz, object, rs));
+				result.add(mapper.read(rs));
 			}
 	
 			// Return the list of objects
@@ -294,252 +548,990 @@ public class DatabaseManager {
 	 * @throws NoSuchFieldException    If the specified sortBy column does not exist in the class.
 	 */
 	public static <T> List<T> getRowsFilteredAndSortedBy(Class<T> clazz, List<FilterCondition> filters, String sortBy, boolean ascending) throws SQLException, IllegalAccessException, InstantiationException, NoSuchFieldException {
-		try (Connection connection = getConnection()) {
+		try (Connection connection = getReadConnection()) {
 			return getRowsFilteredAndSortedBy(clazz, filters, sortBy, ascending, connection);
 		}
 	}
 
 	/**
-	 * Inserts a new row into the database table based on the provided object.
+	 * Retrieves at most {@code limit} rows from the database table, filtered and sorted by the specified conditions,
+	 * skipping the first {@code offset} matching rows.
+	 * The database still reads the skipped rows, so {@link #getPage} should be preferred for deep pages.
 	 *
-	 * @param object the object representing the row to be inserted
-	 * @return the ID of the newly inserted row
-	 * @throws SQLException if an error occurs while executing the SQL statement
-	 * @throws IllegalArgumentException if the provided object does not have a TableName annotation
-	 * @throws RuntimeException if unable to access a field in the provided object
-	 * @throws SQLException if creating the row fails or no ID is obtained
-	 * @throws IllegalAccessException 
+	 * @param <T>       the type of the objects to retrieve
+	 * @param clazz     the class of the objects to retrieve
+	 * @param filters   the list of filter conditions to apply
+	 * @param sortBy    the field name to sort the rows by, or null for no sorting
+	 * @param ascending whether the rows should be sorted in ascending order
+	 * @param limit     the maximum number of rows to return
+	 * @param offset    the number of matching rows to skip
+	 * @return a list of at most {@code limit} matching rows
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 * @throws IllegalArgumentException if the limit or the offset is negative
 	 */
-	public static <T> int insertRow(T object) throws SQLException, IllegalArgumentException, IllegalAccessException {
-		Class<?> clazz = object.getClass();
-		// Get the table name from the TableName annotation
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
-		
-		// Build the SQL query
-		StringBuilder queryBuilder = new StringBuilder("INSERT INTO " + tableName + " (");
-		StringBuilder valuesBuilder = new StringBuilder(") VALUES (");
-	
-		// Get all fields in the class
-		Field[] fields = clazz.getDeclaredFields();
-		List<Object> values = new ArrayList<>();
-	
-		// Add the column names and values to the query
-		for (Field field : fields) {
-			if (!DatabaseAnnotationUtils.isPrimaryKey(field) && field.getAnnotation(ColumnName.class) != null) {
-				String columnName = DatabaseAnnotationUtils.getColumnName(field);
-				values.add(DatabaseAnnotationUtils.getFieldValue(field, object));
-				queryBuilder.append(columnName).append(", ");
-				valuesBuilder.append("?, ");
-			}
+	public static <T> List<T> getRowsFilteredAndSortedBy(Class<T> clazz, List<FilterCondition> filters, String sortBy, boolean ascending, int limit, int offset) throws SQLException, NoSuchFieldException {
+		if (limit < 0 || offset < 0) {
+			throw new IllegalArgumentException("Limit and offset cannot be negative: " + limit + ", " + offset);
 		}
+		RowMapper<T> mapper = RowMapper.forClass(clazz);
+		String query = buildSelectQuery(mapper.getMetadata(), filters, sortBy, ascending) + " LIMIT ? OFFSET ?";
 
-	
-		// Remove the last comma and space from the query and values builders and add the closing parentheses
-		queryBuilder.delete(queryBuilder.length() - 2, queryBuilder.length());
-		valuesBuilder.delete(valuesBuilder.length() - 2, valuesBuilder.length());
-		valuesBuilder.append(")");
-	
-		// Build the final query string
-		String query = queryBuilder.toString() + valuesBuilder.toString();
-		
-		// Execute the query and return the generated ID
-		try (Connection connection = getConnection();
-			 PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-			for (int i = 0, offsetForId = 0; i < values.size() + offsetForId; i++) {
-				if (!DatabaseAnnotationUtils.isPrimaryKey(fields[i]) && fields[i].getAnnotation(ColumnName.class) != null){
-					DatabaseAnnotationUtils.setPreparedStatementValue(statement, i + 1 - offsetForId, values.get(i - offsetForId));
-				} else {
-					offsetForId++;
-				}
-			}
-	
-			int affectedRows = statement.executeUpdate();
-	
-			if (affectedRows == 0) {
-				throw new SQLException("Creating row failed, no rows affected.");
-			}
-	
-			try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
-				if (generatedKeys.next()) {
-					return generatedKeys.getInt(1);
-				} else {
-					throw new SQLException("Creating row failed, no ID obtained.");
+		try (Connection connection = getReadConnection();
+			 PreparedStatement stmt = prepareWithFetchSize(connection, query)) {
+			int index = bindFilters(stmt, filters, 1);
+			stmt.setInt(index++, limit);
+			stmt.setInt(index, offset);
+
+			List<T> result = new ArrayList<>(Math.min(limit, fetchSize));
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					result.add(mapper.read(rs));
 				}
 			}
+			return result;
 		}
 	}
 
 	/**
-	 * Updates a row in the database table corresponding to the given object.
+	 * Retrieves one page of rows from the database table, filtered and sorted by the specified conditions.
 	 *
-	 * @param object the object representing the row to be updated
-	 * @return true if the row was successfully updated, false otherwise
+	 * Pages are read with a keyset condition on the sort column and the primary key instead of an OFFSET,
+	 * so reading any page costs the same no matter how deep it is. Rows are ordered by the sort column and
+	 * then by the primary key, which makes the order total even when sort values repeat. The sort column
+	 * should not contain NULL values, rows with a NULL sort value are not reached by later pages.
+	 *
+	 * @param <T>               the type of the objects to retrieve
+	 * @param clazz             the class of the objects to retrieve
+	 * @param filters           the list of filter conditions to apply
+	 * @param sortBy            the field name to sort the rows by, or null to sort by primary key only
+	 * @param ascending         whether the rows should be sorted in ascending order
+	 * @param pageSize          the maximum number of rows in the page
+	 * @param after             the token of the previous page, or null for the first page
+	 * @param includeTotalCount whether to also count all rows matching the filters
+	 * @return the page of rows
 	 * @throws SQLException if a database access error occurs
-	 * @throws IllegalArgumentException if the object is null or does not have a valid primary key value
-	 * @throws IllegalAccessException if the object's fields cannot be accessed
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 * @throws IllegalArgumentException if the page size is not positive or the class has no primary key
 	 */
-	public static boolean updateRow(Object object) throws SQLException, IllegalArgumentException, IllegalAccessException {
-		Class<?> clazz = object.getClass();
-		// Get the table name from the TableName annotation
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
-	
-		// Build the SQL query
-		StringBuilder queryBuilder = new StringBuilder("UPDATE " + tableName + " SET ");
-	
-		// Get all fields in the class
-		Field[] fields = clazz.getDeclaredFields();
-		List<Object> values = new ArrayList<>();
-	
-		int idIndex = 1;
-		// Add the column names and values to the query
-		for (Field field : fields) {
-			if (!DatabaseAnnotationUtils.isPrimaryKey(field) && field.getAnnotation(ColumnName.class) != null) {
-				String columnName = DatabaseAnnotationUtils.getColumnName(field);
-				values.add(DatabaseAnnotationUtils.getFieldValue(field, object));
-				queryBuilder.append(columnName).append(" = ?, ");
-				idIndex++;
+	public static <T> Page<T> getPage(Class<T> clazz, List<FilterCondition> filters, String sortBy, boolean ascending,
+			int pageSize, PageToken after, boolean includeTotalCount) throws SQLException, NoSuchFieldException {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+		}
+		RowMapper<T> mapper = RowMapper.forClass(clazz);
+		EntityMetadata metadata = mapper.getMetadata();
+		EntityMetadata.Column primaryKey = metadata.getPrimaryKey();
+
+		EntityMetadata.Column sortColumn = sortBy != null ? metadata.getColumnByFieldName(sortBy) : null;
+		if (sortColumn != null && sortColumn.isPrimaryKey()) {
+			sortColumn = null;
+		}
+		String direction = ascending ? " ASC" : " DESC";
+		String comparison = ascending ? " > ?" : " < ?";
+
+		StringBuilder query = new StringBuilder(metadata.getSelectAllQuery());
+		appendFilters(query, metadata, filters);
+
+		// Continue after the last row of the previous page
+		if (after != null) {
+			query.append(filters.isEmpty() ? " WHERE " : " AND ");
+			if (sortColumn == null) {
+				query.append(primaryKey.getName()).append(comparison);
+			} else {
+				query.append("(").append(sortColumn.getName()).append(comparison)
+					.append(" OR (").append(sortColumn.getName()).append(" = ? AND ")
+					.append(primaryKey.getName()).append(comparison).append("))");
 			}
 		}
-	
-		// Remove the last comma and space from the query and add the WHERE clause
-		queryBuilder.delete(queryBuilder.length() - 2, queryBuilder.length());
-		queryBuilder.append(" WHERE id = ?");
-	
-		// Build the final query string
-		String query = queryBuilder.toString();
-	
-		// Execute the query
-		try (Connection connection = getConnection();
-			 PreparedStatement statement = connection.prepareStatement(query)) {
-		
-			DatabaseAnnotationUtils.setPreparedStatementValueSet(
-				DatabaseAnnotationUtils.getColumnNamesAndFields(clazz),
-				object,
-				statement
-			);
 
-			statement.setInt(idIndex, DatabaseAnnotationUtils.getPrimaryKeyValue(object));
-	
-			int affectedRows = statement.executeUpdate();
-	
-			return affectedRows > 0;
-		} catch (SQLException e) {
-			System.err.println("Unable to update row: " + e.getMessage());
-			return false;
+		query.append(" ORDER BY ");
+		if (sortColumn != null) {
+			query.append(sortColumn.getName()).append(direction).append(", ");
 		}
-	}
+		query.append(primaryKey.getName()).append(direction);
 
-	/**
-	 * Retrieves a list of objects of the specified class from the database based on the provided query.
-	 *
-	 * @param <T>       the type of objects to retrieve
-	 * @param clazz     the class of objects to retrieve
-	 * @param addQuery  the additional query to append to the SELECT statement
-	 * @return          a list of objects of the specified class retrieved from the database
-	 * @throws SQLException if a database access error occurs
-	 */
-	public static <T> List<T> getClassWithQuery(Class<T> clazz, String addQuery) throws SQLException {
-		StringBuilder queryBuilder = new StringBuilder("SELECT DISTINCT ");
-		
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
+		// One extra row tells whether there is a next page
+		query.append(" LIMIT ?");
 
-		queryBuilder.append(tableName).append(".* FROM ").append(tableName).append(" ").append(addQuery);
+		try (Connection connection = getReadConnection()) {
+			List<T> items = new ArrayList<>(pageSize + 1);
+			try (PreparedStatement stmt = prepareWithFetchSize(connection, query.toString())) {
+				int index = bindFilters(stmt, filters, 1);
+				if (after != null) {
+					if (sortColumn != null) {
+						DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index++, after.getSortValue());
+						DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index++, after.getSortValue());
+					}
+					stmt.setInt(index++, after.getId());
+				}
+				stmt.setInt(index, pageSize + 1);
 
-		try (Connection connection = getConnection();
-			 PreparedStatement stmt = connection.prepareStatement(queryBuilder.toString());
-			 ResultSet rs = stmt.executeQuery()) {
-			List<T> result = new ArrayList<>();
-			while (rs.next()) {
-				T object = DatabaseAnnotationUtils.createNewInstance(clazz);
-				result.add((T) DatabaseAnnotationUtils.setFieldsFromResultSet(DatabaseAnnotationUtils.getColumnNamesAndFields(clazz), clazz, object, rs));
+				try (ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) {
+						items.add(mapper.read(rs));
+					}
+				}
 			}
-			return result;
+
+			PageToken nextPageToken = null;
+			if (items.size() > pageSize) {
+				items.remove(pageSize);
+				T last = items.get(pageSize - 1);
+				nextPageToken = new PageToken(sortColumn != null ? sortColumn.getValue(last) : null,
+						metadata.getPrimaryKeyValue(last));
+			}
+
+			int totalCount = Page.UNKNOWN_TOTAL_COUNT;
+			if (includeTotalCount) {
+				totalCount = count(connection, metadata, filters);
+			}
+
+			return new Page<>(items, nextPageToken, totalCount);
 		}
 	}
 
 	/**
-	 * Retrieves a row from the database table based on the provided class and ID.
+	 * Streams the rows of the database table associated with the given class, filtered and sorted
+	 * according to the provided parameters, without loading them all into memory.
+	 * Rows are read from the database as the stream is consumed, {@link #getFetchSize()} at a time.
+	 * The stream holds a connection until it is closed, so it must be used in a try-with-resources block.
 	 *
-	 * @param <T> the type of the object to retrieve from the database
-	 * @param clazz the class of the object to retrieve from the database
-	 * @param id the ID of the row to retrieve
-	 * @return the retrieved object, or null if no matching row is found
+	 * @param <T>       the type of the objects to retrieve
+	 * @param clazz     the class of the objects to retrieve
+	 * @param filters   the list of filter conditions to apply
+	 * @param sortBy    the field name to sort the rows by, or null for no sorting
+	 * @param ascending whether the rows should be sorted in ascending order
+	 * @return a stream of the matching rows that must be closed after use
 	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
 	 */
-	public static <T> T getRowById (Class<T> clazz, int id) throws SQLException {
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
-		
-		// Get a map of column names and fields from the ColumnName annotations
-		Map<String, Field> columnNamesAndFields = DatabaseAnnotationUtils.getColumnNamesAndFields(clazz);
+	public static <T> Stream<T> streamRows(Class<T> clazz, List<FilterCondition> filters, String sortBy, boolean ascending) throws SQLException, NoSuchFieldException {
+		RowMapper<T> mapper = RowMapper.forClass(clazz);
+		String query = buildSelectQuery(mapper.getMetadata(), filters, sortBy, ascending);
 
-		String query = "SELECT * FROM " + tableName + " WHERE id = ?";
+		Connection connection = getReadConnection();
+		PreparedStatement stmt = null;
+		ResultSet rs;
+		try {
+			stmt = prepareWithFetchSize(connection, query);
+			bindFilters(stmt, filters, 1);
+			rs = stmt.executeQuery();
+		} catch (SQLException | RuntimeException e) {
+			closeStatement(stmt);
+			closeConnection(connection);
+			throw e;
+		}
 
-		try (Connection connection = getConnection();
-			 PreparedStatement stmt = connection.prepareStatement(query)) {
-			stmt.setInt(1, id);
-			
-			T object = null;
-			try (ResultSet rs = stmt.executeQuery()) {
-				if (rs.next()) {
-					object = DatabaseAnnotationUtils.createNewInstance(clazz);
-					object = DatabaseAnnotationUtils.setFieldsFromResultSet(columnNamesAndFields, clazz, object, rs);
+		final PreparedStatement statement = stmt;
+		Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try {
+					if (!rs.next()) {
+						return false;
+					}
+					action.accept(mapper.read(rs));
+					return true;
+				} catch (SQLException e) {
+					System.err.println("Unable to read row: " + e.getMessage());
+					throw new RuntimeException("Unable to read row: " + e.getMessage(), e);
 				}
 			}
+		};
 
-			return object;
-		}
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				rs.close();
+			} catch (SQLException e) {
+				System.err.println("Unable to close result set: " + e.getMessage());
+			}
+			closeStatement(statement);
+			closeConnection(connection);
+		});
 	}
-	
 
 	/**
-	 * Checks if a row exists in the database table based on the provided filter conditions.
+	 * Streams all rows of the database table associated with the given class.
+	 * The stream must be closed after use.
 	 *
-	 * @param clazz the class representing the database table
-	 * @param filters a list of FilterCondition objects representing the filter conditions
-	 * @return true if a row exists that matches the filter conditions, false otherwise
+	 * @param <T>   the type of the objects to retrieve
+	 * @param clazz the class of the objects to retrieve
+	 * @return a stream of all rows that must be closed after use
 	 * @throws SQLException if a database access error occurs
-	 * @throws IllegalAccessException if the class or its nullary constructor is not accessible
-	 * @throws InstantiationException if the class that declares the underlying constructor represents an abstract class
-	 * @throws NoSuchFieldException if a field with the specified name is not found
-	 * @throws IllegalArgumentException if the class does not have a TableName annotation or any fields with the ColumnName annotation
 	 */
-	public static <T> boolean exists(Class<T> clazz, List<FilterCondition> filters) throws SQLException, IllegalAccessException, InstantiationException, NoSuchFieldException {
-		// Get the table name from the TableName annotation
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
+	public static <T> Stream<T> streamAllRows(Class<T> clazz) throws SQLException {
+		try {
+			return streamRows(clazz, List.of(), null, false);
+		} catch (NoSuchFieldException e) {
+			// Cannot happen without filters or sorting
+			throw new IllegalStateException(e);
+		}
+	}
 
-		// Build the SQL query
-		StringBuilder query = new StringBuilder("SELECT 1 FROM " + tableName);
+	/**
+	 * Calls the action for each row of the database table associated with the given class, filtered
+	 * and sorted according to the provided parameters, reading the rows {@link #getFetchSize()} at a time.
+	 *
+	 * When {@code reuseInstance} is true a single object is refilled for every row, so a read-only
+	 * scan allocates no entity per row. The action must then not keep a reference to the object
+	 * after it returns.
+	 *
+	 * @param <T>           the type of the objects to retrieve
+	 * @param clazz         the class of the objects to retrieve
+	 * @param filters       the list of filter conditions to apply
+	 * @param sortBy        the field name to sort the rows by, or null for no sorting
+	 * @param ascending     whether the rows should be sorted in ascending order
+	 * @param reuseInstance whether the same object is passed to the action for every row
+	 * @param action        the action to call for each row
+	 * @return the number of rows visited
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 */
+	public static <T> int forEachRow(Class<T> clazz, List<FilterCondition> filters, String sortBy, boolean ascending,
+			boolean reuseInstance, Consumer<? super T> action) throws SQLException, NoSuchFieldException {
+		RowMapper<T> mapper = RowMapper.forClass(clazz);
+		String query = buildSelectQuery(mapper.getMetadata(), filters, sortBy, ascending);
 
-		// Add the filters to the query
+		try (Connection connection = getReadConnection();
+			 PreparedStatement stmt = prepareWithFetchSize(connection, query)) {
+			bindFilters(stmt, filters, 1);
+
+			int count = 0;
+			T instance = reuseInstance ? mapper.newInstance() : null;
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					action.accept(reuseInstance ? mapper.read(rs, 1, instance) : mapper.read(rs));
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Retrieves the rows matching the filters with only the fields of the projection set.
+	 * Only the projected columns are selected, the other fields keep the values set by the default constructor.
+	 *
+	 * @param <T>        the type of the objects to retrieve
+	 * @param projection the fields to read
+	 * @param filters    the list of filter conditions to apply
+	 * @param sortBy     the field name to sort the rows by, or null for no sorting
+	 * @param ascending  whether the rows should be sorted in ascending order
+	 * @return a list of partially populated objects
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 */
+	public static <T> List<T> getProjectedRows(Projection<T> projection, List<FilterCondition> filters, String sortBy, boolean ascending) throws SQLException, NoSuchFieldException {
+		String query = buildSelectQuery(projection.getSelectQuery(), projection.getMetadata(), filters, sortBy, ascending);
+
+		try (Connection connection = getReadConnection();
+			 PreparedStatement stmt = prepareWithFetchSize(connection, query)) {
+			bindFilters(stmt, filters, 1);
+
+			List<T> result = new ArrayList<>();
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					result.add(projection.read(rs));
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Retrieves the rows matching the filters together with the rows of the relations of the fetch plan,
+	 * in a single query.
+	 *
+	 * @param <T>       the type of the objects to retrieve
+	 * @param plan      the relations to load
+	 * @param filters   the list of filter conditions to apply
+	 * @param sortBy    the field name to sort the rows by, or null for no sorting
+	 * @param ascending whether the rows should be sorted in ascending order
+	 * @return the objects and their related objects
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 */
+	public static <T> FetchResult<T> getRowsWithRelations(FetchPlan<T> plan, List<FilterCondition> filters, String sortBy, boolean ascending) throws SQLException, NoSuchFieldException {
+		try (Connection connection = getReadConnection()) {
+			return getRowsWithRelations(plan, filters, sortBy, ascending, connection);
+		}
+	}
+
+	/**
+	 * Retrieves the rows matching the filters together with the rows of the relations of the fetch plan,
+	 * in a single query using the given connection.
+	 *
+	 * @param <T>        the type of the objects to retrieve
+	 * @param plan       the relations to load
+	 * @param filters    the list of filter conditions to apply
+	 * @param sortBy     the field name to sort the rows by, or null for no sorting
+	 * @param ascending  whether the rows should be sorted in ascending order
+	 * @param connection the database connection to use
+	 * @return the objects and their related objects
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 */
+	public static <T> FetchResult<T> getRowsWithRelations(FetchPlan<T> plan, List<FilterCondition> filters, String sortBy, boolean ascending, Connection connection) throws SQLException, NoSuchFieldException {
+		String query = plan.buildSelectQuery(filters, sortBy, ascending);
+
+		try (PreparedStatement stmt = prepareWithFetchSize(connection, query)) {
+			bindFilters(stmt, filters, 1);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				return plan.readAll(rs);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the values of the projected fields of the rows matching the filters, without creating entities.
+	 *
+	 * @param projection the fields to read
+	 * @param filters    the list of filter conditions to apply
+	 * @param sortBy     the field name to sort the rows by, or null for no sorting
+	 * @param ascending  whether the rows should be sorted in ascending order
+	 * @return a list with one array of values per row, in the order of the projected fields
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 */
+	public static List<Object[]> getTuples(Projection<?> projection, List<FilterCondition> filters, String sortBy, boolean ascending) throws SQLException, NoSuchFieldException {
+		String query = buildSelectQuery(projection.getSelectQuery(), projection.getMetadata(), filters, sortBy, ascending);
+
+		try (Connection connection = getReadConnection();
+			 PreparedStatement stmt = prepareWithFetchSize(connection, query)) {
+			bindFilters(stmt, filters, 1);
+
+			List<Object[]> result = new ArrayList<>();
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					result.add(projection.readTuple(rs));
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Retrieves the values of an integer field of the rows matching the filters, without boxing.
+	 * NULL values are read as 0.
+	 *
+	 * @param clazz     the class representing the database table
+	 * @param fieldName the name of the field to read
+	 * @param filters   the list of filter conditions to apply
+	 * @param sortBy    the field name to sort the rows by, or null for no sorting
+	 * @param ascending whether the rows should be sorted in ascending order
+	 * @return the values of the field, one per row
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if the field, a filter or the sort field is not mapped to a column
+	 */
+	public static int[] getIntValues(Class<?> clazz, String fieldName, List<FilterCondition> filters, String sortBy, boolean ascending) throws SQLException, NoSuchFieldException {
+		EntityMetadata metadata = EntityMetadata.forClass(clazz);
+		String select = "SELECT " + metadata.getColumnByFieldName(fieldName).getName() + " FROM " + metadata.getTableName();
+		String query = buildSelectQuery(select, metadata, filters, sortBy, ascending);
+
+		try (Connection connection = getReadConnection();
+			 PreparedStatement stmt = prepareWithFetchSize(connection, query)) {
+			bindFilters(stmt, filters, 1);
+
+			int[] values = new int[16];
+			int size = 0;
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					if (size == values.length) {
+						values = Arrays.copyOf(values, size * 2);
+					}
+					values[size++] = rs.getInt(1);
+				}
+			}
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Inserts a new row into the database table based on the provided object.
+	 *
+	 * @param object the object representing the row to be inserted
+	 * @return the ID of the newly inserted row
+	 * @throws SQLException if an error occurs while executing the SQL statement
+	 * @throws IllegalArgumentException if the provided object does not have a TableName annotation
+	 * @throws RuntimeException if unable to access a field in the provided object
+	 * @throws SQLException if creating the row fails or no ID is obtained
+	 * @throws IllegalAccessException 
+	 */
+	public static <T> int insertRow(T object) throws SQLException, IllegalArgumentException, IllegalAccessException {
+		try (Connection connection = getConnection()) {
+			return insertRow(object, connection);
+		}
+	}
+
+	/**
+	 * Inserts a row into the database table of the object using the given connection.
+	 * The transaction of the connection is left to the caller.
+	 *
+	 * @param <T> the type of the object
+	 * @param object the object representing the row to be inserted
+	 * @param connection the database connection to use
+	 * @return the ID of the newly inserted row
+	 * @throws SQLException if creating the row fails or no ID is obtained
+	 */
+	public static <T> int insertRow(T object, Connection connection) throws SQLException {
+		RowMapper<?> mapper = RowMapper.forClass(object.getClass());
+		
+		// Execute the query and return the generated ID
+		try (PreparedStatement statement = connection.prepareStatement(mapper.getMetadata().getInsertQuery(), Statement.RETURN_GENERATED_KEYS)) {
+			mapper.writeNonPrimaryKeyColumns(object, statement, 1);
+	
+			int affectedRows = statement.executeUpdate();
+	
+			if (affectedRows == 0) {
+				throw new SQLException("Creating row failed, no rows affected.");
+			}
+	
+			try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+				if (generatedKeys.next()) {
+					int id = generatedKeys.getInt(1);
+					invalidateAfterCommit(connection, object.getClass(), id);
+					return id;
+				} else {
+					throw new SQLException("Creating row failed, no ID obtained.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates a row in the database table corresponding to the given object.
+	 *
+	 * @param object the object representing the row to be updated
+	 * @return true if the row was successfully updated, false otherwise
+	 * @throws SQLException if a database access error occurs
+	 * @throws IllegalArgumentException if the object is null or does not have a valid primary key value
+	 * @throws IllegalAccessException if the object's fields cannot be accessed
+	 */
+	public static boolean updateRow(Object object) throws SQLException, IllegalArgumentException, IllegalAccessException {
+		try (Connection connection = getConnection()) {
+			return updateRow(object, connection);
+		} catch (SQLException e) {
+			System.err.println("Unable to update row: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Updates the row of the given object using the given connection.
+	 * The transaction of the connection is left to the caller.
+	 *
+	 * @param object the object representing the row to be updated
+	 * @param connection the database connection to use
+	 * @return true if a row was updated, false if there is no row with the ID of the object
+	 * @throws SQLException if a database access error occurs
+	 * @throws IllegalArgumentException if the class of the object has no primary key
+	 */
+	public static boolean updateRow(Object object, Connection connection) throws SQLException {
+		RowMapper<?> mapper = RowMapper.forClass(object.getClass());
+	
+		// Execute the query
+		try (PreparedStatement statement = connection.prepareStatement(mapper.getMetadata().getUpdateQuery())) {
+		
+			int idIndex = mapper.writeNonPrimaryKeyColumns(object, statement, 1);
+
+			mapper.writePrimaryKey(object, statement, idIndex);
+	
+			int affectedRows = statement.executeUpdate();
+			invalidateAfterCommit(connection, object.getClass(), mapper.getMetadata().getPrimaryKeyValue(object));
+	
+			return affectedRows > 0;
+		}
+	}
+
+	/**
+	 * Inserts the row of the given object, or updates the existing row when the insert would break the
+	 * unique constraint on the conflict fields, with a single INSERT ... ON CONFLICT statement.
+	 *
+	 * @param <T> the type of the object
+	 * @param object the object representing the row to be inserted or updated
+	 * @param conflictFields the fields of a primary key or unique index of the table
+	 * @return the ID of the inserted or updated row
+	 * @throws SQLException if a database access error occurs, or the fields do not match a unique constraint
+	 * @throws NoSuchFieldException if a conflict field is not mapped to a column
+	 */
+	public static <T> int upsert(T object, List<String> conflictFields) throws SQLException, NoSuchFieldException {
+		try (Connection connection = getConnection()) {
+			return upsert(object, conflictFields, connection);
+		}
+	}
+
+	/**
+	 * Inserts or updates the row of the given object using the given connection.
+	 * The transaction of the connection is left to the caller.
+	 *
+	 * @param <T> the type of the object
+	 * @param object the object representing the row to be inserted or updated
+	 * @param conflictFields the fields of a primary key or unique index of the table
+	 * @param connection the database connection to use
+	 * @return the ID of the inserted or updated row
+	 * @throws SQLException if a database access error occurs, or the fields do not match a unique constraint
+	 * @throws NoSuchFieldException if a conflict field is not mapped to a column
+	 * @throws IllegalArgumentException if no conflict field is given or the class has no primary key
+	 */
+	public static <T> int upsert(T object, List<String> conflictFields, Connection connection) throws SQLException, NoSuchFieldException {
+		if (conflictFields.isEmpty()) {
+			throw new IllegalArgumentException("Upsert requires at least one conflict field");
+		}
+		RowMapper<?> mapper = RowMapper.forClass(object.getClass());
+		EntityMetadata metadata = mapper.getMetadata();
+
+		StringBuilder conflictColumns = new StringBuilder();
+		List<String> conflictColumnNames = new ArrayList<>();
+		for (String fieldName : conflictFields) {
+			String columnName = metadata.getColumnByFieldName(fieldName).getName();
+			if (conflictColumns.length() > 0) {
+				conflictColumns.append(", ");
+			}
+			conflictColumns.append(columnName);
+			conflictColumnNames.add(columnName);
+		}
+
+		// Every other column takes the value of the row that could not be inserted
+		StringBuilder updates = new StringBuilder();
+		for (EntityMetadata.Column column : metadata.getNonPrimaryKeyColumns()) {
+			if (conflictColumnNames.contains(column.getName())) {
+				continue;
+			}
+			if (updates.length() > 0) {
+				updates.append(", ");
+			}
+			updates.append(column.getName()).append(" = excluded.").append(column.getName());
+		}
+		if (updates.length() == 0) {
+			// A no-op update, so that RETURNING reports the existing row
+			updates.append(conflictColumnNames.get(0)).append(" = excluded.").append(conflictColumnNames.get(0));
+		}
+
+		String primaryKey = metadata.getPrimaryKey().getName();
+		String query = metadata.getInsertQuery() + " ON CONFLICT (" + conflictColumns + ") DO UPDATE SET " + updates
+				+ " RETURNING " + primaryKey;
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			mapper.writeNonPrimaryKeyColumns(object, statement, 1);
+
+			try (ResultSet rs = statement.executeQuery()) {
+				if (!rs.next()) {
+					throw new SQLException("Upserting row failed, no ID obtained.");
+				}
+				int id = rs.getInt(1);
+				invalidateAfterCommit(connection, object.getClass(), id);
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Updates the row of the given object only if it still matches the filter conditions, with a single
+	 * UPDATE statement. A row changed by another connection since it was read is left as it is.
+	 *
+	 * @param object the object representing the row to be updated
+	 * @param filters the conditions the row must match, combined with AND
+	 * @return the number of updated rows, 0 or 1
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter refers to a field that is not mapped to a column
+	 */
+	public static int updateWhere(Object object, List<FilterCondition> filters) throws SQLException, NoSuchFieldException {
+		try (Connection connection = getConnection()) {
+			return updateWhere(object, filters, connection);
+		}
+	}
+
+	/**
+	 * Updates the row of the given object only if it still matches the filter conditions, using the
+	 * given connection. The transaction of the connection is left to the caller.
+	 *
+	 * @param object the object representing the row to be updated
+	 * @param filters the conditions the row must match, combined with AND
+	 * @param connection the database connection to use
+	 * @return the number of updated rows, 0 or 1
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a filter refers to a field that is not mapped to a column
+	 * @throws IllegalArgumentException if the class of the object has no primary key
+	 */
+	public static int updateWhere(Object object, List<FilterCondition> filters, Connection connection) throws SQLException, NoSuchFieldException {
+		RowMapper<?> mapper = RowMapper.forClass(object.getClass());
+		EntityMetadata metadata = mapper.getMetadata();
+		metadata.getPrimaryKey();
+
+		StringBuilder query = new StringBuilder(metadata.getUpdateQuery());
 		if (!filters.isEmpty()) {
-			query.append(" WHERE ");
-			for (FilterCondition filter : filters) {
-				Field field = clazz.getDeclaredField(filter.getFieldName());
-				String columnName = DatabaseAnnotationUtils.getColumnName(field);
-				query.append(columnName).append(" ").append(filter.getRelationOperator()).append(" ? AND ");
+			// The update query ends with the WHERE clause of the primary key
+			StringBuilder where = new StringBuilder();
+			appendFilters(where, metadata, filters);
+			query.append(" AND (").append(where.substring(" WHERE ".length())).append(')');
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement(query.toString())) {
+			int idIndex = mapper.writeNonPrimaryKeyColumns(object, statement, 1);
+			mapper.writePrimaryKey(object, statement, idIndex);
+			bindFilters(statement, filters, idIndex + 1);
+
+			int affectedRows = statement.executeUpdate();
+			invalidateAfterCommit(connection, object.getClass(), metadata.getPrimaryKeyValue(object));
+			return affectedRows;
+		}
+	}
+
+	/**
+	 * Sets the given fields of every row matching the filter conditions, with a single UPDATE statement.
+	 *
+	 * @param clazz the class representing the database table
+	 * @param values the new values by field name
+	 * @param filters the conditions the rows must match, combined with AND, or an empty list for all rows
+	 * @return the number of updated rows
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a field is not mapped to a column
+	 */
+	public static int updateWhere(Class<?> clazz, Map<String, Object> values, List<FilterCondition> filters) throws SQLException, NoSuchFieldException {
+		try (Connection connection = getConnection()) {
+			return updateWhere(clazz, values, filters, connection);
+		}
+	}
+
+	/**
+	 * Sets the given fields of every row matching the filter conditions using the given connection.
+	 * The transaction of the connection is left to the caller.
+	 *
+	 * @param clazz the class representing the database table
+	 * @param values the new values by field name
+	 * @param filters the conditions the rows must match, combined with AND, or an empty list for all rows
+	 * @param connection the database connection to use
+	 * @return the number of updated rows
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a field is not mapped to a column
+	 * @throws IllegalArgumentException if no value is given
+	 */
+	public static int updateWhere(Class<?> clazz, Map<String, Object> values, List<FilterCondition> filters, Connection connection) throws SQLException, NoSuchFieldException {
+		if (values.isEmpty()) {
+			throw new IllegalArgumentException("Update requires at least one value");
+		}
+		EntityMetadata metadata = EntityMetadata.forClass(clazz);
+
+		StringBuilder query = new StringBuilder("UPDATE " + metadata.getTableName() + " SET ");
+		List<Object> parameters = new ArrayList<>(values.size());
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+			if (!parameters.isEmpty()) {
+				query.append(", ");
 			}
-			// Remove the last " AND "
-			query.setLength(query.length() - 5);
+			query.append(metadata.getColumnByFieldName(entry.getKey()).getName()).append(" = ?");
+			parameters.add(entry.getValue());
 		}
+		appendFilters(query, metadata, filters);
 
-		// Execute the query and check if any rows are returned
-		try (Connection connection = getConnection();
-			 PreparedStatement stmt = connection.prepareStatement(query.toString())) {
-				// Set the filter values in the PreparedStatement
-				int index = 1;
-				for (FilterCondition filter : filters) {
-					DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index, filter.getValue());
-					index++;
+		try (PreparedStatement statement = connection.prepareStatement(query.toString())) {
+			int index = 1;
+			for (Object parameter : parameters) {
+				DatabaseAnnotationUtils.setPreparedStatementValue(statement, index++, parameter);
+			}
+			bindFilters(statement, filters, index);
+
+			int affectedRows = statement.executeUpdate();
+			if (affectedRows > 0) {
+				invalidateAllAfterCommit(connection, clazz);
+			}
+			return affectedRows;
+		}
+	}
+
+	/**
+	 * Inserts the given objects into the database table of their class in a single transaction.
+	 * The rows are sent in batches of {@link #BATCH_SIZE} through one prepared statement.
+	 *
+	 * @param <T> the type of the objects
+	 * @param objects the objects to insert, all of the same class
+	 * @return the IDs of the inserted rows, in the order of the objects
+	 * @throws SQLException if a database access error occurs, in which case no rows are inserted
+	 * @throws IllegalArgumentException if the objects are not all of the same class
+	 */
+	public static <T> int[] insertAll(List<T> objects) throws SQLException {
+		if (objects.isEmpty()) {
+			return new int[0];
+		}
+		return inTransaction(connection -> insertAll(objects, connection));
+	}
+
+	/**
+	 * Inserts the given objects into the database table of their class using the given connection.
+	 * The rows are sent in batches of {@link #BATCH_SIZE} through one prepared statement.
+	 * The transaction of the connection is left to the caller, and the connection must be in one:
+	 * the IDs of a batch are only known to be consecutive while the transaction holds the write lock.
+	 *
+	 * @param <T> the type of the objects
+	 * @param objects the objects to insert, all of the same class
+	 * @param connection the database connection to use, not in auto-commit mode
+	 * @return the IDs of the inserted rows, in the order of the objects
+	 * @throws SQLException if a database access error occurs
+	 * @throws IllegalArgumentException if the objects are not all of the same class
+	 * @throws IllegalStateException if the connection is in auto-commit mode
+	 */
+	public static <T> int[] insertAll(List<T> objects, Connection connection) throws SQLException {
+		int[] ids = new int[objects.size()];
+		if (objects.isEmpty()) {
+			return ids;
+		}
+		if (connection.getAutoCommit()) {
+			throw new IllegalStateException("insertAll needs a connection in a transaction, use insertAll(List) or inTransaction");
+		}
+		RowMapper<?> mapper = batchMapper(objects);
+
+		try (PreparedStatement statement = connection.prepareStatement(mapper.getMetadata().getInsertQuery(), Statement.RETURN_GENERATED_KEYS)) {
+			for (int start = 0; start < objects.size(); start += BATCH_SIZE) {
+				int end = Math.min(start + BATCH_SIZE, objects.size());
+				for (int i = start; i < end; i++) {
+					mapper.writeNonPrimaryKeyColumns(objects.get(i), statement, 1);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				readGeneratedKeys(statement, ids, start, end);
+			}
+		}
+		for (int id : ids) {
+			invalidateAfterCommit(connection, mapper.getEntityClass(), id);
+		}
+		return ids;
+	}
+
+	/**
+	 * Updates the rows of the given objects in a single transaction.
+	 * The rows are sent in batches of {@link #BATCH_SIZE} through one prepared statement.
+	 *
+	 * @param objects the objects to update, all of the same class
+	 * @return the number of updated rows
+	 * @throws SQLException if a database access error occurs, in which case no rows are updated
+	 * @throws IllegalArgumentException if the objects are not all of the same class or the class has no primary key
+	 */
+	public static int updateAll(List<?> objects) throws SQLException {
+		if (objects.isEmpty()) {
+			return 0;
+		}
+		return inTransaction(connection -> updateAll(objects, connection));
+	}
+
+	/**
+	 * Updates the rows of the given objects using the given connection.
+	 * The transaction of the connection is left to the caller.
+	 *
+	 * @param objects the objects to update, all of the same class
+	 * @param connection the database connection to use
+	 * @return the number of updated rows
+	 * @throws SQLException if a database access error occurs
+	 * @throws IllegalArgumentException if the objects are not all of the same class or the class has no primary key
+	 */
+	public static int updateAll(List<?> objects, Connection connection) throws SQLException {
+		if (objects.isEmpty()) {
+			return 0;
+		}
+		RowMapper<?> mapper = batchMapper(objects);
+
+		int updated = 0;
+		try (PreparedStatement statement = connection.prepareStatement(mapper.getMetadata().getUpdateQuery())) {
+			for (int start = 0; start < objects.size(); start += BATCH_SIZE) {
+				int end = Math.min(start + BATCH_SIZE, objects.size());
+				for (int i = start; i < end; i++) {
+					int idIndex = mapper.writeNonPrimaryKeyColumns(objects.get(i), statement, 1);
+					mapper.writePrimaryKey(objects.get(i), statement, idIndex);
+					statement.addBatch();
 				}
+				updated += sumUpdateCounts(statement.executeBatch());
+			}
+		}
+		for (Object object : objects) {
+			invalidateAfterCommit(connection, mapper.getEntityClass(), mapper.getMetadata().getPrimaryKeyValue(object));
+		}
+		return updated;
+	}
+
+	/**
+	 * Deletes the rows with the given IDs from the database table of the class in a single transaction.
+	 *
+	 * @param <T> the type of the class
+	 * @param clazz the class representing the database table
+	 * @param ids the IDs of the rows to delete
+	 * @return the number of deleted rows
+	 * @throws SQLException if a database access error occurs, in which case no rows are deleted
+	 */
+	public static <T> int deleteAllById(Class<T> clazz, int[] ids) throws SQLException {
+		if (ids.length == 0) {
+			return 0;
+		}
+		return inTransaction(connection -> deleteAllById(clazz, ids, connection));
+	}
+
+	/**
+	 * Deletes the rows with the given IDs from the database table of the class using the given connection.
+	 * The transaction of the connection is left to the caller.
+	 *
+	 * @param <T> the type of the class
+	 * @param clazz the class representing the database table
+	 * @param ids the IDs of the rows to delete
+	 * @param connection the database connection to use
+	 * @return the number of deleted rows
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static <T> int deleteAllById(Class<T> clazz, int[] ids, Connection connection) throws SQLException {
+		int deleted = 0;
+		try (PreparedStatement statement = connection.prepareStatement(EntityMetadata.forClass(clazz).getDeleteQuery())) {
+			for (int start = 0; start < ids.length; start += BATCH_SIZE) {
+				int end = Math.min(start + BATCH_SIZE, ids.length);
+				for (int i = start; i < end; i++) {
+					statement.setInt(1, ids[i]);
+					statement.addBatch();
+				}
+				deleted += sumUpdateCounts(statement.executeBatch());
+			}
+		}
+		for (int id : ids) {
+			invalidateAfterCommit(connection, clazz, id);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Retrieves a list of objects of the specified class from the database based on the provided query.
+	 *
+	 * @param <T>       the type of objects to retrieve
+	 * @param clazz     the class of objects to retrieve
+	 * @param addQuery  the additional query to append to the SELECT statement
+	 * @return          a list of objects of the specified class retrieved from the database
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static <T> List<T> getClassWithQuery(Class<T> clazz, String addQuery) throws SQLException {
+		StringBuilder queryBuilder = new StringBuilder("SELECT DISTINCT ");
 		
-				ResultSet rs = stmt.executeQuery();
-			return rs.next();
+		EntityMetadata metadata = EntityMetadata.forClass(clazz);
+		String tableName = metadata.getTableName();
+
+		queryBuilder.append(tableName).append(".* FROM ").append(tableName).append(" ").append(addQuery);
+
+		try (Connection connection = getReadConnection();
+			 PreparedStatement stmt = connection.prepareStatement(queryBuilder.toString());
+			 ResultSet rs = stmt.executeQuery()) {
+			RowMapper<T> mapper = RowMapper.forClass(clazz);
+			List<T> result = new ArrayList<>();
+			while (rs.next()) {
+				result.add(mapper.read(rs));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Retrieves a row from the database table based on the provided class and ID.
+	 * Rows of classes annotated with {@link Cached} are served from the entity cache when possible.
+	 *
+	 * @param <T> the type of the object to retrieve from the database
+	 * @param clazz the class of the object to retrieve from the database
+	 * @param id the ID of the row to retrieve
+	 * @return the retrieved object, or null if no matching row is found
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static <T> T getRowById (Class<T> clazz, int id) throws SQLException {
+		if (!EntityCache.isCached(clazz)) {
+			try (Connection connection = getReadConnection()) {
+				return getRowById(clazz, id, connection);
+			}
+		}
+
+		T object = ENTITY_CACHE.get(clazz, id);
+		if (object == null) {
+			long version = ENTITY_CACHE.getVersion(clazz);
+			try (Connection connection = getReadConnection()) {
+				object = getRowById(clazz, id, connection);
+			}
+			ENTITY_CACHE.put(clazz, id, object, version);
+		}
+		return object;
+	}
+
+	/**
+	 * Retrieves a row from the database table of the class using the given connection.
+	 * The entity cache is not used, so the row reflects the uncommitted changes of the connection.
+	 *
+	 * @param <T> the type of the object to retrieve from the database
+	 * @param clazz the class of the object to retrieve from the database
+	 * @param id the ID of the row to retrieve
+	 * @param connection the database connection to use
+	 * @return the retrieved object, or null if no matching row is found
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static <T> T getRowById(Class<T> clazz, int id, Connection connection) throws SQLException {
+		RowMapper<T> mapper = RowMapper.forClass(clazz);
+		EntityMetadata metadata = mapper.getMetadata();
+
+		try (PreparedStatement stmt = connection.prepareStatement(metadata.getSelectByIdQuery())) {
+			stmt.setInt(1, id);
+			
+			T object = null;
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					object = mapper.read(rs);
+				}
+			}
+
+			return object;
+		}
+	}
+	
+
+	/**
+	 * Checks if a row exists in the database table based on the provided filter conditions.
+	 *
+	 * @param clazz the class representing the database table
+	 * @param filters a list of FilterCondition objects representing the filter conditions
+	 * @return true if a row exists that matches the filter conditions, false otherwise
+	 * @throws SQLException if a database access error occurs
+	 * @throws IllegalAccessException if the class or its nullary constructor is not accessible
+	 * @throws InstantiationException if the class that declares the underlying constructor represents an abstract class
+	 * @throws NoSuchFieldException if a field with the specified name is not found
+	 * @throws IllegalArgumentException if the class does not have a TableName annotation or any fields with the ColumnName annotation
+	 */
+	public static <T> boolean exists(Class<T> clazz, List<FilterCondition> filters) throws SQLException, IllegalAccessException, InstantiationException, NoSuchFieldException {
+		try (Connection connection = getReadConnection()) {
+			return exists(clazz, filters, connection);
 		} catch (Exception e) {
 			System.err.println("Unable to check if row exists: " + e.getMessage());
 			throw e;
 		}
 	}
 
+	/**
+	 * Checks if a row matching the filter conditions exists using the given connection.
+	 *
+	 * @param clazz the class representing the database table
+	 * @param filters a list of FilterCondition objects representing the filter conditions
+	 * @param connection the database connection to use
+	 * @return true if a row exists that matches the filter conditions, false otherwise
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a field with the specified name is not found
+	 */
+	public static <T> boolean exists(Class<T> clazz, List<FilterCondition> filters, Connection connection) throws SQLException, NoSuchFieldException {
+		EntityMetadata metadata = EntityMetadata.forClass(clazz);
+
+		// Build the SQL query
+		StringBuilder query = new StringBuilder("SELECT 1 FROM " + metadata.getTableName());
+
+		// Add the filters to the query
+		appendFilters(query, metadata, filters);
+		query.append(" LIMIT 1");
+
+		// Execute the query and check if any rows are returned
+		try (PreparedStatement stmt = connection.prepareStatement(query.toString())) {
+			// Set the filter values in the PreparedStatement
+			bindFilters(stmt, filters, 1);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next();
+			}
+		}
+	}
+
 	/**
 	 * Updates the row in the database table based on the provided object.
 	 *
@@ -552,7 +1544,7 @@ public class DatabaseManager {
 	public static boolean exists(String tableName, int id) throws SQLException {
 		String query = "SELECT 1 FROM " + tableName + " WHERE id = ? LIMIT 1";
 
-		try (Connection connection = getConnection();
+		try (Connection connection = getReadConnection();
 			 PreparedStatement stmt = connection.prepareStatement(query)) {
 			stmt.setInt(1, id);
 			try (ResultSet rs = stmt.executeQuery()) {
@@ -575,38 +1567,29 @@ public class DatabaseManager {
 	 * @throws Exception if an error occurs while executing the count query
 	 */
 	public static <T> int count(Class<T> clazz, List<FilterCondition> filters) throws NoSuchFieldException, Exception {
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
-		StringBuilder query = new StringBuilder("SELECT COUNT(*) FROM " + tableName);
-
-		if (!filters.isEmpty()) {
-			query.append(" WHERE ");
-			for (FilterCondition filter : filters) {
-				Field field = clazz.getDeclaredField(filter.getFieldName());
-				String columnName = DatabaseAnnotationUtils.getColumnName(field);
-				query.append(columnName).append(" ").append(filter.getRelationOperator()).append(" ? AND ");
-			}
-			// Remove the last " AND "
-			query.setLength(query.length() - 5);
-		}
-
-		try (Connection connection = getConnection();
-			 PreparedStatement stmt = connection.prepareStatement(query.toString())) {
-			// Set the filter values in the PreparedStatement
-			int index = 1;
-			for (FilterCondition filter : filters) {
-				DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index, filter.getValue());
-				index++;
-			}
-	
-			ResultSet rs = stmt.executeQuery();
-			return rs.getInt(1);
-
+		try (Connection connection = getReadConnection()) {
+			return count(connection, EntityMetadata.forClass(clazz), filters);
 		} catch (Exception e) {
 			System.err.println("Unable to count rows: " + e.getMessage());
 			throw e;
 		}
 	}
 
+	/**
+	 * Counts the rows matching the filters using the given connection.
+	 *
+	 * @param <T> the type of the entity class
+	 * @param clazz the class representing the entity
+	 * @param filters the list of filter conditions to apply
+	 * @param connection the database connection to use
+	 * @return the number of rows that match the filters
+	 * @throws SQLException if a database access error occurs
+	 * @throws NoSuchFieldException if a field specified in the filters does not exist in the entity class
+	 */
+	public static <T> int count(Class<T> clazz, List<FilterCondition> filters, Connection connection) throws SQLException, NoSuchFieldException {
+		return count(connection, EntityMetadata.forClass(clazz), filters);
+	}
+
 	/**
 	 * Deletes a row from the database table based on the provided class and ID.
 	 *
@@ -616,18 +1599,234 @@ public class DatabaseManager {
 	 * @throws SQLException if an error occurs while deleting the row
 	 */
 	public static <T> boolean deleteRow(Class<T> clazz, int id) throws SQLException {
-		String tableName = DatabaseAnnotationUtils.getTableName(clazz);
-		String query = "DELETE FROM " + tableName + " WHERE id = ?";
+		try (Connection connection = getConnection()) {
+			return deleteRow(clazz, id, connection);
+		} catch (SQLException e) {
+			System.err.println("Unable to delete row: " + e.getMessage());
+			return false;
+		}
+	}
 
-		try (Connection connection = getConnection();
-			 PreparedStatement stmt = connection.prepareStatement(query)) {
+	/**
+	 * Deletes a row from the database table of the class using the given connection.
+	 * The transaction of the connection is left to the caller.
+	 *
+	 * @param clazz the class representing the database table
+	 * @param id the ID of the row to be deleted
+	 * @param connection the database connection to use
+	 * @return true if a row was deleted, false if there is no row with the ID
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static <T> boolean deleteRow(Class<T> clazz, int id, Connection connection) throws SQLException {
+		try (PreparedStatement stmt = connection.prepareStatement(EntityMetadata.forClass(clazz).getDeleteQuery())) {
 			stmt.setInt(1, id);
 			int affectedRows = stmt.executeUpdate();
+			invalidateAfterCommit(connection, clazz, id);
 			return affectedRows > 0;
-		} catch (SQLException e) {
-			System.err.println("Unable to delete row: " + e.getMessage());
-			return false;
 		}
 	}
 
+	private static int count(Connection connection, EntityMetadata metadata, List<FilterCondition> filters) throws SQLException, NoSuchFieldException {
+		StringBuilder query = new StringBuilder("SELECT COUNT(*) FROM " + metadata.getTableName());
+		appendFilters(query, metadata, filters);
+
+		try (PreparedStatement stmt = connection.prepareStatement(query.toString())) {
+			// Set the filter values in the PreparedStatement
+			bindFilters(stmt, filters, 1);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+		}
+	}
+
+	/**
+	 * Work done with a connection inside a transaction.
+	 *
+	 * @param <R> the type of the result
+	 */
+	@FunctionalInterface
+	public interface ConnectionWork<R> {
+		R run(Connection connection) throws Exception;
+	}
+
+	/**
+	 * Runs the work as one unit of work: in a single transaction on a single pooled connection,
+	 * committing if the work completes and rolling back if it throws.
+	 *
+	 * The work must do all of its reads and writes with the given connection, using the
+	 * connection-bound variants of the helpers of this class, and must not commit or close it.
+	 * Failures inside the work are reported by throwing, which also undoes its changes.
+	 * Checked exceptions other than SQLException are wrapped in an SQLException.
+	 *
+	 * @param <R> the type of the result
+	 * @param work the work to run
+	 * @return the result of the work
+	 * @throws SQLException if the work throws a checked exception or the transaction cannot be committed
+	 */
+	public static <R> R inTransaction(ConnectionWork<R> work) throws SQLException {
+		try (Connection connection = getConnection()) {
+			connection.setAutoCommit(false);
+			try {
+				R result = work.run(connection);
+				connection.commit();
+				return result;
+			} catch (SQLException | RuntimeException e) {
+				rollback(connection);
+				throw e;
+			} catch (Exception e) {
+				rollback(connection);
+				throw new SQLException(e.getMessage(), e);
+			}
+		}
+	}
+
+	private static RowMapper<?> batchMapper(List<?> objects) {
+		Class<?> clazz = objects.get(0).getClass();
+		for (Object object : objects) {
+			if (object.getClass() != clazz) {
+				throw new IllegalArgumentException("Batch contains objects of different classes: "
+						+ clazz.getName() + " and " + object.getClass().getName());
+			}
+		}
+		return RowMapper.forClass(clazz);
+	}
+
+	/**
+	 * Reads the IDs generated by a batch insert of the rows {@code start} to {@code end}.
+	 * The SQLite driver reports at most the ID of the last row of a batch, which is read with
+	 * last_insert_rowid() when the driver reports nothing. The rows of a batch are inserted one after
+	 * the other while the transaction holds the write lock, so their IDs are the range ending at that ID.
+	 * The caller makes sure the connection is in a transaction.
+	 */
+	private static void readGeneratedKeys(PreparedStatement statement, int[] ids, int start, int end) throws SQLException {
+		int count = 0;
+		int last = 0;
+		try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+			while (generatedKeys != null && generatedKeys.next()) {
+				last = generatedKeys.getInt(1);
+				if (start + count < end) {
+					ids[start + count] = last;
+				}
+				count++;
+			}
+		}
+		if (count == 0) {
+			try (Statement lastIdStatement = statement.getConnection().createStatement();
+				 ResultSet rs = lastIdStatement.executeQuery("SELECT last_insert_rowid()")) {
+				if (!rs.next() || rs.getInt(1) == 0) {
+					throw new SQLException("Creating rows failed, no ID obtained.");
+				}
+				last = rs.getInt(1);
+			}
+		}
+		if (count != end - start) {
+			for (int i = end - 1; i >= start; i--) {
+				ids[i] = last--;
+			}
+		}
+	}
+
+	private static int sumUpdateCounts(int[] updateCounts) {
+		int sum = 0;
+		for (int updateCount : updateCounts) {
+			if (updateCount > 0) {
+				sum += updateCount;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Appends a WHERE clause built from the given filters to the query.
+	 * The clause is cached by the structure of the filters, so filters that differ only in their values
+	 * are rendered once.
+	 *
+	 * @param query the query to append to
+	 * @param metadata the metadata of the queried class
+	 * @param filters the filter conditions, combined with AND
+	 * @throws NoSuchFieldException if a filter refers to a field that is not mapped to a column
+	 */
+	private static void appendFilters(StringBuilder query, EntityMetadata metadata, List<FilterCondition> filters) throws NoSuchFieldException {
+		if (filters.isEmpty()) {
+			return;
+		}
+
+		StringBuilder key = new StringBuilder(metadata.getTableName());
+		for (FilterCondition filter : filters) {
+			key.append('|');
+			filter.appendShape(key);
+		}
+		String cacheKey = key.toString();
+
+		String whereClause = WHERE_CLAUSE_CACHE.get(cacheKey);
+		if (whereClause == null) {
+			StringBuilder where = new StringBuilder(" WHERE ");
+			for (int i = 0; i < filters.size(); i++) {
+				if (i > 0) {
+					where.append(" AND ");
+				}
+				filters.get(i).appendSql(where, metadata);
+			}
+			whereClause = where.toString();
+
+			// IN lists of many sizes could fill the cache, stop caching new shapes past the limit
+			if (WHERE_CLAUSE_CACHE.size() < WHERE_CLAUSE_CACHE_LIMIT) {
+				WHERE_CLAUSE_CACHE.putIfAbsent(cacheKey, whereClause);
+			}
+		}
+		query.append(whereClause);
+	}
+
+	/**
+	 * Sets the values of the given filters on a statement built with {@link #appendFilters}.
+	 *
+	 * @param stmt the statement
+	 * @param filters the filter conditions
+	 * @param firstIndex the index of the first filter parameter
+	 * @return the index of the next parameter
+	 * @throws SQLException if a database access error occurs
+	 */
+	private static int bindFilters(PreparedStatement stmt, List<FilterCondition> filters, int firstIndex) throws SQLException {
+		int index = firstIndex;
+		for (FilterCondition filter : filters) {
+			index = filter.bind(stmt, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Builds a SELECT * query with the given filters and sorting.
+	 *
+	 * @param metadata the metadata of the queried class
+	 * @param filters the filter conditions, combined with AND
+	 * @param sortBy the field name to sort by, or null for no sorting
+	 * @param ascending whether to sort in ascending order
+	 * @return the query
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 */
+	private static String buildSelectQuery(EntityMetadata metadata, List<FilterCondition> filters, String sortBy, boolean ascending) throws NoSuchFieldException {
+		return buildSelectQuery(metadata.getSelectAllQuery(), metadata, filters, sortBy, ascending);
+	}
+
+	private static String buildSelectQuery(String select, EntityMetadata metadata, List<FilterCondition> filters, String sortBy, boolean ascending) throws NoSuchFieldException {
+		StringBuilder query = new StringBuilder(select);
+
+		// Add the filters to the query
+		appendFilters(query, metadata, filters);
+
+		// Add the sort by clause to the query
+		if (sortBy != null) {
+			String columnName = metadata.getColumnByFieldName(sortBy).getName();
+			query.append(" ORDER BY ").append(columnName).append(ascending ? " ASC" : " DESC");
+		}
+		return query.toString();
+	}
+
+	private static PreparedStatement prepareWithFetchSize(Connection connection, String query) throws SQLException {
+		PreparedStatement stmt = connection.prepareStatement(query);
+		stmt.setFetchSize(fetchSize);
+		return stmt;
+	}
+
 }
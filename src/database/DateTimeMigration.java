@@ -0,0 +1,287 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts the date and time columns of a database from yyyy-MM-dd and HH:mm:ss text to the integers
+ * written by {@link ColumnCodecs#EPOCH_DAY} and {@link ColumnCodecs#SECOND_OF_DAY}.
+ *
+ * The tables are rebuilt with INTEGER columns, keeping their constraints, indexes and AUTOINCREMENT
+ * counters, all in one transaction. A migrated database is marked with {@code PRAGMA user_version},
+ * so running the migration again does nothing.
+ *
+ * Can be run on a database file with:
+ * <pre>java database.DateTimeMigration &lt;database file&gt; &lt;entity class&gt;...</pre>
+ */
+public final class DateTimeMigration {
+
+	/** The user_version of a database with integer dates and times. */
+	public static final int SCHEMA_VERSION = 1;
+
+	private static final String TEMPORARY_TABLE_SUFFIX = "_date_time_migration";
+
+	private DateTimeMigration() {
+		throw new AssertionError("Cannot instantiate DateTimeMigration");
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: java database.DateTimeMigration <database file> <entity class>...");
+			System.exit(1);
+		}
+
+		Class<?>[] entityClasses = new Class<?>[args.length - 1];
+		for (int i = 1; i < args.length; i++) {
+			entityClasses[i - 1] = Class.forName(args[i]);
+		}
+
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + args[0])) {
+			List<String> migratedColumns = migrate(connection, entityClasses);
+			System.out.println(migratedColumns.isEmpty() ? "Database is already migrated" : "Migrated columns: " + migratedColumns);
+		}
+	}
+
+	/**
+	 * Migrates the database of the connection pool, if it is not migrated yet.
+	 *
+	 * @param entityClasses the entity classes whose date and time columns are migrated
+	 * @return the migrated columns, empty if the database was already migrated
+	 * @throws SQLException if a database access error occurs, in which case nothing is changed
+	 */
+	public static List<String> migrate(Class<?>... entityClasses) throws SQLException {
+		try (Connection connection = DatabaseManager.getConnection()) {
+			return migrate(connection, entityClasses);
+		}
+	}
+
+	/**
+	 * Migrates the database of the given connection, if it is not migrated yet.
+	 *
+	 * @param connection the connection, in auto-commit mode
+	 * @param entityClasses the entity classes whose date and time columns are migrated
+	 * @return the migrated columns, empty if the database was already migrated
+	 * @throws SQLException if a database access error occurs, in which case nothing is changed
+	 */
+	public static List<String> migrate(Connection connection, Class<?>... entityClasses) throws SQLException {
+		List<String> migratedColumns = new ArrayList<>();
+		if (getUserVersion(connection) >= SCHEMA_VERSION) {
+			return migratedColumns;
+		}
+
+		boolean foreignKeys;
+		try (Statement stmt = connection.createStatement();
+			 ResultSet rs = stmt.executeQuery("PRAGMA foreign_keys")) {
+			foreignKeys = rs.next() && rs.getBoolean(1);
+		}
+
+		try (Statement stmt = connection.createStatement()) {
+			// Rebuilding a table drops it, which must not touch the rows referencing it.
+			// The pragma has no effect inside a transaction, so it is set before.
+			stmt.execute("PRAGMA foreign_keys = OFF");
+			connection.setAutoCommit(false);
+			try {
+				for (Class<?> clazz : entityClasses) {
+					migrateTable(connection, EntityMetadata.forClass(clazz), migratedColumns);
+				}
+				stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+				connection.commit();
+			} catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				migratedColumns.clear();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+				stmt.execute("PRAGMA foreign_keys = " + (foreignKeys ? "ON" : "OFF"));
+			}
+		}
+		return migratedColumns;
+	}
+
+	private static void migrateTable(Connection connection, EntityMetadata metadata, List<String> migratedColumns) throws SQLException {
+		String tableName = metadata.getTableName();
+
+		List<EntityMetadata.Column> dateTimeColumns = new ArrayList<>();
+		for (EntityMetadata.Column column : metadata.getColumns()) {
+			if (column.getType() == LocalDate.class || column.getType() == LocalTime.class) {
+				dateTimeColumns.add(column);
+			}
+		}
+		String createTableQuery = getSchemaSql(connection, "table", tableName);
+		if (dateTimeColumns.isEmpty() || createTableQuery == null) {
+			return;
+		}
+
+		boolean rebuild = false;
+		for (EntityMetadata.Column column : dateTimeColumns) {
+			if (!"INTEGER".equalsIgnoreCase(getDeclaredType(connection, tableName, column.getName()))) {
+				rebuild = true;
+			}
+			migratedColumns.add(tableName + "." + column.getName());
+		}
+
+		try (Statement stmt = connection.createStatement()) {
+			if (!rebuild) {
+				// The columns already have integer affinity, only the values need converting
+				StringBuilder query = new StringBuilder("UPDATE \"" + tableName + "\" SET ");
+				for (int i = 0; i < dateTimeColumns.size(); i++) {
+					EntityMetadata.Column column = dateTimeColumns.get(i);
+					query.append(i > 0 ? ", \"" : "\"").append(column.getName()).append("\" = ")
+						.append(buildConversion(column));
+				}
+				stmt.executeUpdate(query.toString());
+				return;
+			}
+
+			String temporaryTableName = tableName + TEMPORARY_TABLE_SUFFIX;
+			stmt.executeUpdate(rewriteCreateTableQuery(createTableQuery, tableName, temporaryTableName, dateTimeColumns));
+
+			List<String> columnNames = getColumnNames(connection, tableName);
+			StringBuilder columnList = new StringBuilder();
+			StringBuilder selectList = new StringBuilder();
+			for (String columnName : columnNames) {
+				EntityMetadata.Column dateTimeColumn = null;
+				for (EntityMetadata.Column column : dateTimeColumns) {
+					if (column.getName().equals(columnName)) {
+						dateTimeColumn = column;
+					}
+				}
+				columnList.append(columnList.length() > 0 ? ", \"" : "\"").append(columnName).append('"');
+				selectList.append(selectList.length() > 0 ? ", " : "")
+					.append(dateTimeColumn != null ? buildConversion(dateTimeColumn) : "\"" + columnName + "\"");
+			}
+			stmt.executeUpdate("INSERT INTO \"" + temporaryTableName + "\" (" + columnList + ") SELECT "
+				+ selectList + " FROM \"" + tableName + "\"");
+
+			List<String> createIndexQueries = getIndexQueries(connection, tableName);
+			Long sequence = getSequence(connection, tableName);
+
+			stmt.executeUpdate("DROP TABLE \"" + tableName + "\"");
+			stmt.executeUpdate("ALTER TABLE \"" + temporaryTableName + "\" RENAME TO \"" + tableName + "\"");
+			for (String createIndexQuery : createIndexQueries) {
+				stmt.executeUpdate(createIndexQuery);
+			}
+			if (sequence != null) {
+				try (PreparedStatement ps = connection.prepareStatement("UPDATE sqlite_sequence SET seq = ? WHERE name = ?")) {
+					ps.setLong(1, sequence);
+					ps.setString(2, tableName);
+					ps.executeUpdate();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the SQL expression converting a text value of the column to an integer, leaving
+	 * values that are already integers and NULL unchanged.
+	 */
+	private static String buildConversion(EntityMetadata.Column column) {
+		String name = "\"" + column.getName() + "\"";
+		String conversion = column.getType() == LocalDate.class
+			// Julian day of 1970-01-01 at midnight
+			? "CAST(julianday(" + name + ") - 2440587.5 AS INTEGER)"
+			: "CAST(strftime('%s', '1970-01-01 ' || " + name + ") AS INTEGER)";
+		return "CASE WHEN typeof(" + name + ") = 'text' THEN " + conversion + " ELSE " + name + " END";
+	}
+
+	private static String rewriteCreateTableQuery(String createTableQuery, String tableName, String newTableName,
+			List<EntityMetadata.Column> columns) throws SQLException {
+		Matcher tableMatcher = Pattern.compile("^CREATE\\s+TABLE\\s+([\"`\\[]?)" + Pattern.quote(tableName) + "[\"`\\]]?",
+				Pattern.CASE_INSENSITIVE).matcher(createTableQuery);
+		if (!tableMatcher.find()) {
+			throw new SQLException("Unable to rewrite the definition of table " + tableName);
+		}
+		String query = "CREATE TABLE \"" + newTableName + "\"" + createTableQuery.substring(tableMatcher.end());
+
+		for (EntityMetadata.Column column : columns) {
+			Matcher columnMatcher = Pattern.compile("([(,]\\s*[\"`\\[]?" + Pattern.quote(column.getName())
+					+ "[\"`\\]]?\\s+)[A-Za-z]+", Pattern.CASE_INSENSITIVE).matcher(query);
+			if (!columnMatcher.find()) {
+				throw new SQLException("Unable to rewrite the definition of column " + tableName + "." + column.getName());
+			}
+			query = query.substring(0, columnMatcher.start()) + columnMatcher.group(1) + "INTEGER"
+				+ query.substring(columnMatcher.end());
+		}
+		return query;
+	}
+
+	private static int getUserVersion(Connection connection) throws SQLException {
+		try (Statement stmt = connection.createStatement();
+			 ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+	}
+
+	private static String getSchemaSql(Connection connection, String type, String name) throws SQLException {
+		try (PreparedStatement ps = connection.prepareStatement("SELECT sql FROM sqlite_master WHERE type = ? AND name = ?")) {
+			ps.setString(1, type);
+			ps.setString(2, name);
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() ? rs.getString(1) : null;
+			}
+		}
+	}
+
+	private static String getDeclaredType(Connection connection, String tableName, String columnName) throws SQLException {
+		try (PreparedStatement ps = connection.prepareStatement("SELECT type FROM pragma_table_info(?) WHERE name = ?")) {
+			ps.setString(1, tableName);
+			ps.setString(2, columnName);
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() ? rs.getString(1) : null;
+			}
+		}
+	}
+
+	private static List<String> getColumnNames(Connection connection, String tableName) throws SQLException {
+		List<String> columnNames = new ArrayList<>();
+		try (PreparedStatement ps = connection.prepareStatement("SELECT name FROM pragma_table_info(?) ORDER BY cid")) {
+			ps.setString(1, tableName);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					columnNames.add(rs.getString(1));
+				}
+			}
+		}
+		return columnNames;
+	}
+
+	/**
+	 * Returns the CREATE INDEX queries of the indexes of a table, without the ones SQLite
+	 * creates for UNIQUE and PRIMARY KEY constraints, which have no SQL.
+	 */
+	private static List<String> getIndexQueries(Connection connection, String tableName) throws SQLException {
+		List<String> queries = new ArrayList<>();
+		try (PreparedStatement ps = connection.prepareStatement(
+				"SELECT sql FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL")) {
+			ps.setString(1, tableName);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					queries.add(rs.getString(1));
+				}
+			}
+		}
+		return queries;
+	}
+
+	private static Long getSequence(Connection connection, String tableName) throws SQLException {
+		if (getSchemaSql(connection, "table", "sqlite_sequence") == null) {
+			return null;
+		}
+		try (PreparedStatement ps = connection.prepareStatement("SELECT seq FROM sqlite_sequence WHERE name = ?")) {
+			ps.setString(1, tableName);
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : null;
+			}
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package database;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A size bounded cache of entities by class and ID, used by {@link DatabaseManager#getRowById}
+ * for the classes annotated with {@link Cached}.
+ *
+ * The least recently used entry is evicted when the cache is full, and an entry expires after the
+ * TTL of its class. The cache keeps its own copies of the entities and returns a new copy on every
+ * hit, so callers can modify what they get without affecting the cache.
+ *
+ * {@link DatabaseManager} invalidates the entries of the rows it inserts, updates and deletes.
+ * Code changing cached tables with its own SQL must call {@link #invalidate} or {@link #invalidateAll}.
+ */
+public final class EntityCache {
+	/** The default maximum number of cached entities. */
+	public static final int DEFAULT_MAX_SIZE = 10_000;
+
+	private static final Map<Class<?>, Long> TTL_NANOS = new ConcurrentHashMap<>();
+	private static final long NOT_CACHED = -1;
+
+	private final int maxSize;
+	private final LinkedHashMap<Key, Entry> entries;
+
+	/**
+	 * The number of invalidations of each class, used to discard rows read before an invalidation
+	 * that finished after it.
+	 */
+	private final Map<Class<?>, Long> versions = new HashMap<>();
+
+	private long hitCount;
+	private long missCount;
+	private long expiredCount;
+	private long evictionCount;
+	private long invalidationCount;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maxSize the maximum number of cached entities
+	 * @throws IllegalArgumentException if the size is not positive
+	 */
+	public EntityCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		// Access order, so the eldest entry is the least recently used one
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns whether the rows of the given class are cached.
+	 *
+	 * @param clazz the entity class
+	 * @return true if the class is annotated with {@link Cached}
+	 */
+	public static boolean isCached(Class<?> clazz) {
+		return getTtlNanos(clazz) != NOT_CACHED;
+	}
+
+	private static long getTtlNanos(Class<?> clazz) {
+		return TTL_NANOS.computeIfAbsent(clazz, c -> {
+			Cached cached = c.getAnnotation(Cached.class);
+			return cached == null ? NOT_CACHED : TimeUnit.SECONDS.toNanos(cached.ttlSeconds());
+		});
+	}
+
+	/**
+	 * Returns a copy of the cached entity with the given class and ID.
+	 *
+	 * @param <T> the entity type
+	 * @param clazz the entity class
+	 * @param id the ID of the row
+	 * @return a copy of the entity, or null if it is not cached or expired
+	 */
+	public <T> T get(Class<T> clazz, int id) {
+		T entity;
+		synchronized (this) {
+			Key key = new Key(clazz, id);
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				missCount++;
+				return null;
+			}
+			if (System.nanoTime() - entry.expiresAt >= 0) {
+				entries.remove(key);
+				expiredCount++;
+				missCount++;
+				return null;
+			}
+			hitCount++;
+			entity = clazz.cast(entry.entity);
+		}
+		return RowMapper.forClass(clazz).copy(entity);
+	}
+
+	/**
+	 * Returns the version of the given class, to be passed to {@link #put} with an entity read after this call.
+	 *
+	 * @param clazz the entity class
+	 * @return the version
+	 */
+	public synchronized long getVersion(Class<?> clazz) {
+		return versions.getOrDefault(clazz, 0L);
+	}
+
+	/**
+	 * Caches a copy of the entity, unless its class is not cached or was invalidated since the entity was read.
+	 *
+	 * @param <T> the entity type
+	 * @param clazz the entity class
+	 * @param id the ID of the row
+	 * @param entity the entity
+	 * @param version the version of the class returned by {@link #getVersion} before the entity was read
+	 */
+	public <T> void put(Class<T> clazz, int id, T entity, long version) {
+		long ttlNanos = getTtlNanos(clazz);
+		if (ttlNanos == NOT_CACHED || entity == null) {
+			return;
+		}
+		T copy = RowMapper.forClass(clazz).copy(entity);
+		synchronized (this) {
+			if (versions.getOrDefault(clazz, 0L) != version) {
+				return;
+			}
+			entries.put(new Key(clazz, id), new Entry(copy, System.nanoTime() + ttlNanos));
+			if (entries.size() > maxSize) {
+				Iterator<Entry> eldest = entries.values().iterator();
+				eldest.next();
+				eldest.remove();
+				evictionCount++;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entity with the given class and ID.
+	 *
+	 * @param clazz the entity class
+	 * @param id the ID of the row
+	 */
+	public void invalidate(Class<?> clazz, int id) {
+		if (!isCached(clazz)) {
+			return;
+		}
+		synchronized (this) {
+			versions.merge(clazz, 1L, Long::sum);
+			if (entries.remove(new Key(clazz, id)) != null) {
+				invalidationCount++;
+			}
+		}
+	}
+
+	/**
+	 * Removes all entities of the given class.
+	 *
+	 * @param clazz the entity class
+	 */
+	public void invalidateAll(Class<?> clazz) {
+		if (!isCached(clazz)) {
+			return;
+		}
+		synchronized (this) {
+			versions.merge(clazz, 1L, Long::sum);
+			Iterator<Key> iterator = entries.keySet().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().clazz == clazz) {
+					iterator.remove();
+					invalidationCount++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all entities.
+	 */
+	public synchronized void clear() {
+		for (Class<?> clazz : TTL_NANOS.keySet()) {
+			versions.merge(clazz, 1L, Long::sum);
+		}
+		invalidationCount += entries.size();
+		entries.clear();
+	}
+
+	public synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(entries.size(), maxSize, hitCount, missCount, expiredCount, evictionCount, invalidationCount);
+	}
+
+	private static final class Key {
+		private final Class<?> clazz;
+		private final int id;
+
+		private Key(Class<?> clazz, int id) {
+			this.clazz = clazz;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return clazz == other.clazz && id == other.id;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(clazz, id);
+		}
+	}
+
+	private static final class Entry {
+		private final Object entity;
+		private final long expiresAt;
+
+		private Entry(Object entity, long expiresAt) {
+			this.entity = entity;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * A snapshot of the counters of a cache.
+	 */
+	public static class CacheStatistics {
+		private final int size;
+		private final int maxSize;
+		private final long hitCount;
+		private final long missCount;
+		private final long expiredCount;
+		private final long evictionCount;
+		private final long invalidationCount;
+
+		CacheStatistics(int size, int maxSize, long hitCount, long missCount, long expiredCount,
+				long evictionCount, long invalidationCount) {
+			this.size = size;
+			this.maxSize = maxSize;
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.expiredCount = expiredCount;
+			this.evictionCount = evictionCount;
+			this.invalidationCount = invalidationCount;
+		}
+
+		// Getters
+
+		public int getSize() {
+			return size;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public long getHitCount() {
+			return hitCount;
+		}
+
+		/**
+		 * Returns the number of lookups that found no entry, including the ones that found an expired entry.
+		 */
+		public long getMissCount() {
+			return missCount;
+		}
+
+		public long getExpiredCount() {
+			return expiredCount;
+		}
+
+		public long getEvictionCount() {
+			return evictionCount;
+		}
+
+		public long getInvalidationCount() {
+			return invalidationCount;
+		}
+
+		public double getHitRatio() {
+			long lookups = hitCount + missCount;
+			return lookups == 0 ? 0.0 : hitCount / (double) lookups;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("size=%d/%d hits=%d misses=%d hitRatio=%.2f expired=%d evictions=%d invalidations=%d",
+					size, maxSize, hitCount, missCount, getHitRatio(), expiredCount, evictionCount, invalidationCount);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Reads and writes the rows of one entity class with code written for that class.
+ *
+ * Implementations are generated at build time by the {@code daogen.EntityDaoProcessor} annotation
+ * processor and found with {@link java.util.ServiceLoader} by {@link EntityDaos}. When a class has one,
+ * its {@link RowMapper} delegates to it, so every method of {@link DatabaseManager} uses it.
+ *
+ * @param <T> the entity type
+ */
+public interface EntityDao<T> {
+	Class<T> getEntityClass();
+
+	/**
+	 * Returns the names of the mapped columns in declaration order, which the methods of the DAO use.
+	 * A DAO whose columns differ from the metadata of its class was generated from an older version
+	 * of the class and is not used.
+	 *
+	 * @return the column names
+	 */
+	List<String> getColumnNames();
+
+	/**
+	 * Creates a new instance of the entity using its default constructor.
+	 *
+	 * @return a new instance
+	 */
+	T newInstance();
+
+	/**
+	 * Sets the fields of the given entity from the current row of the result set.
+	 *
+	 * @param rs the result set positioned on a row
+	 * @param firstColumn the index of the result set column holding the first mapped column
+	 * @param target the entity to fill
+	 * @return the target entity
+	 * @throws SQLException if a database access error occurs
+	 */
+	T read(ResultSet rs, int firstColumn, T target) throws SQLException;
+
+	/**
+	 * Creates an entity with the mapped fields of the given one.
+	 *
+	 * @param source the entity to copy
+	 * @return a new entity
+	 */
+	T copy(T source);
+
+	/**
+	 * Binds the non primary key columns of the entity to the statement, in declaration order.
+	 *
+	 * @param source the entity to bind
+	 * @param ps the statement
+	 * @param firstParameter the index of the first parameter to set
+	 * @return the index of the next parameter
+	 * @throws SQLException if a database access error occurs
+	 */
+	int writeNonPrimaryKeyColumns(T source, PreparedStatement ps, int firstParameter) throws SQLException;
+
+	/**
+	 * Binds the primary key of the entity to the statement.
+	 *
+	 * @param source the entity to bind
+	 * @param ps the statement
+	 * @param parameterIndex the index of the parameter to set
+	 * @throws SQLException if a database access error occurs
+	 * @throws IllegalArgumentException if the class does not have a primary key
+	 */
+	void writePrimaryKey(T source, PreparedStatement ps, int parameterIndex) throws SQLException;
+}
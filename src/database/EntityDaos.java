@@ -0,0 +1,64 @@
+package database;
+
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The generated {@link EntityDao} implementations, by entity class.
+ *
+ * The DAOs listed in the {@code META-INF/services/database.EntityDao} files of the class path are loaded
+ * on the first lookup. Without them (when the sources are compiled without the annotation processor)
+ * every class is mapped with reflection by {@link RowMapper}.
+ */
+public final class EntityDaos {
+	private static final Map<Class<?>, EntityDao<?>> DAOS = new ConcurrentHashMap<>();
+	private static volatile boolean loaded;
+
+	private EntityDaos() {
+		throw new AssertionError("Cannot instantiate EntityDaos");
+	}
+
+	/**
+	 * Returns the DAO of the given class.
+	 *
+	 * @param <T> the entity type
+	 * @param clazz the entity class
+	 * @return the DAO, or null if the class does not have one
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> EntityDao<T> forClass(Class<T> clazz) {
+		if (!loaded) {
+			load();
+		}
+		return (EntityDao<T>) DAOS.get(clazz);
+	}
+
+	/**
+	 * Makes the DAO the one used for its class, replacing the generated one. Row mappers keep the DAO
+	 * they were built with, so a DAO must be registered before the first query on its class.
+	 *
+	 * @param dao the DAO
+	 */
+	public static void register(EntityDao<?> dao) {
+		if (!loaded) {
+			load();
+		}
+		DAOS.put(dao.getEntityClass(), dao);
+	}
+
+	private static synchronized void load() {
+		if (loaded) {
+			return;
+		}
+		try {
+			for (EntityDao<?> dao : ServiceLoader.load(EntityDao.class, EntityDaos.class.getClassLoader())) {
+				DAOS.putIfAbsent(dao.getEntityClass(), dao);
+			}
+		} catch (ServiceConfigurationError e) {
+			System.err.println("Unable to load generated DAOs: " + e.getMessage());
+		}
+		loaded = true;
+	}
+}
@@ -0,0 +1,421 @@
+package database;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable mapping information of a class annotated with {@link TableName}.
+ *
+ * The annotations of a class are read only once, the first time {@link #forClass(Class)}
+ * is called for it. The result, including the SQL strings used by {@link DatabaseManager},
+ * is cached for the lifetime of the application.
+ */
+public final class EntityMetadata {
+	private static final Map<Class<?>, EntityMetadata> CACHE = new ConcurrentHashMap<>();
+
+	private final Class<?> entityClass;
+	private final Constructor<?> constructor;
+	private final String tableName;
+	private final List<Column> columns;
+	private final List<Column> nonPrimaryKeyColumns;
+	private final List<Column> foreignKeys;
+	private final Column primaryKey;
+	private final Map<String, Column> columnsByFieldName;
+	private final Map<String, Column> columnsByColumnName;
+	private final Map<String, Field> columnFieldMap;
+
+	private final String selectAllQuery;
+	private final String selectByIdQuery;
+	private final String insertQuery;
+	private final String updateQuery;
+	private final String deleteQuery;
+	private final String existsByIdQuery;
+
+	/**
+	 * Returns the metadata of the given class, building it on the first call.
+	 *
+	 * @param clazz the entity class
+	 * @return the metadata of the class
+	 * @throws IllegalArgumentException if the class does not have a TableName annotation or any fields with the ColumnName annotation
+	 */
+	public static EntityMetadata forClass(Class<?> clazz) {
+		EntityMetadata metadata = CACHE.get(clazz);
+		if (metadata == null) {
+			metadata = CACHE.computeIfAbsent(clazz, EntityMetadata::new);
+		}
+		return metadata;
+	}
+
+	private EntityMetadata(Class<?> clazz) {
+		TableName tableNameAnnotation = clazz.getAnnotation(TableName.class);
+		if (tableNameAnnotation == null) {
+			throw new IllegalArgumentException("Class " + clazz.getName() + " does not have a TableName annotation");
+		}
+
+		this.entityClass = clazz;
+		this.tableName = tableNameAnnotation.value();
+		this.constructor = findDefaultConstructor(clazz);
+
+		List<Column> columnList = new ArrayList<>();
+		List<Column> nonPrimaryKeyList = new ArrayList<>();
+		List<Column> foreignKeyList = new ArrayList<>();
+		Map<String, Column> byFieldName = new HashMap<>();
+		Map<String, Column> byColumnName = new HashMap<>();
+		Map<String, Field> fieldMap = new LinkedHashMap<>();
+		Column primaryKeyColumn = null;
+
+		for (Field field : clazz.getDeclaredFields()) {
+			ColumnName columnNameAnnotation = field.getAnnotation(ColumnName.class);
+			if (columnNameAnnotation == null) {
+				continue;
+			}
+
+			field.setAccessible(true);
+
+			ForeignKey foreignKeyAnnotation = field.getAnnotation(ForeignKey.class);
+			Column column = new Column(columnList.size(), columnNameAnnotation.value(), field,
+					field.getAnnotation(PrimaryKey.class) != null,
+					foreignKeyAnnotation != null ? foreignKeyAnnotation.referencedClass() : null);
+
+			columnList.add(column);
+			byFieldName.put(field.getName(), column);
+			byColumnName.put(column.getName(), column);
+			fieldMap.put(column.getName(), field);
+
+			if (column.isPrimaryKey()) {
+				if (primaryKeyColumn == null) {
+					primaryKeyColumn = column;
+				}
+			} else {
+				nonPrimaryKeyList.add(column);
+			}
+			if (column.isForeignKey()) {
+				foreignKeyList.add(column);
+			}
+		}
+
+		if (columnList.isEmpty()) {
+			throw new IllegalArgumentException("Class " + clazz.getName() + " does not have any fields with the ColumnName annotation");
+		}
+
+		this.columns = Collections.unmodifiableList(columnList);
+		this.nonPrimaryKeyColumns = Collections.unmodifiableList(nonPrimaryKeyList);
+		this.foreignKeys = Collections.unmodifiableList(foreignKeyList);
+		this.primaryKey = primaryKeyColumn;
+		this.columnsByFieldName = Collections.unmodifiableMap(byFieldName);
+		this.columnsByColumnName = Collections.unmodifiableMap(byColumnName);
+		this.columnFieldMap = Collections.unmodifiableMap(fieldMap);
+
+		// Precompute the SQL statements
+		this.selectAllQuery = "SELECT * FROM " + tableName;
+		this.insertQuery = buildInsertQuery();
+
+		if (primaryKey != null) {
+			String byId = " WHERE " + primaryKey.getName() + " = ?";
+			this.selectByIdQuery = selectAllQuery + byId;
+			this.updateQuery = buildUpdateQuery() + byId;
+			this.deleteQuery = "DELETE FROM " + tableName + byId;
+			this.existsByIdQuery = "SELECT 1 FROM " + tableName + byId + " LIMIT 1";
+		} else {
+			this.selectByIdQuery = null;
+			this.updateQuery = null;
+			this.deleteQuery = null;
+			this.existsByIdQuery = null;
+		}
+	}
+
+	private static Constructor<?> findDefaultConstructor(Class<?> clazz) {
+		try {
+			Constructor<?> defaultConstructor = clazz.getDeclaredConstructor();
+			defaultConstructor.setAccessible(true);
+			return defaultConstructor;
+		} catch (NoSuchMethodException e) {
+			// Reported when an instance is requested
+			return null;
+		}
+	}
+
+	private String buildInsertQuery() {
+		StringBuilder queryBuilder = new StringBuilder("INSERT INTO " + tableName + " (");
+		StringBuilder valuesBuilder = new StringBuilder(") VALUES (");
+
+		for (Column column : nonPrimaryKeyColumns) {
+			queryBuilder.append(column.getName()).append(", ");
+			valuesBuilder.append("?, ");
+		}
+
+		// Remove the last comma and space
+		queryBuilder.setLength(queryBuilder.length() - 2);
+		valuesBuilder.setLength(valuesBuilder.length() - 2);
+
+		return queryBuilder.append(valuesBuilder).append(")").toString();
+	}
+
+	private String buildUpdateQuery() {
+		StringBuilder queryBuilder = new StringBuilder("UPDATE " + tableName + " SET ");
+
+		for (Column column : nonPrimaryKeyColumns) {
+			queryBuilder.append(column.getName()).append(" = ?, ");
+		}
+
+		// Remove the last comma and space
+		queryBuilder.setLength(queryBuilder.length() - 2);
+
+		return queryBuilder.toString();
+	}
+
+	// Getters
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Returns the mapped columns in declaration order, which is also the order of the table columns.
+	 *
+	 * @return the mapped columns
+	 */
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the mapped columns except the primary key, in the order used by the INSERT and UPDATE queries.
+	 *
+	 * @return the non primary key columns
+	 */
+	public List<Column> getNonPrimaryKeyColumns() {
+		return nonPrimaryKeyColumns;
+	}
+
+	public List<Column> getForeignKeys() {
+		return foreignKeys;
+	}
+
+	/**
+	 * Returns a map of column names to fields, in declaration order.
+	 *
+	 * @return an unmodifiable map of column names to fields
+	 */
+	public Map<String, Field> getColumnFieldMap() {
+		return columnFieldMap;
+	}
+
+	/**
+	 * Returns the primary key column.
+	 *
+	 * @return the primary key column
+	 * @throws IllegalArgumentException if the class does not have a field with the PrimaryKey annotation
+	 */
+	public Column getPrimaryKey() {
+		if (primaryKey == null) {
+			throw new IllegalArgumentException("Class " + entityClass.getName() + " does not have a field with the PrimaryKey annotation");
+		}
+		return primaryKey;
+	}
+
+	public boolean hasPrimaryKey() {
+		return primaryKey != null;
+	}
+
+	/**
+	 * Returns the column mapped to the field with the given name.
+	 *
+	 * @param fieldName the name of the field
+	 * @return the column mapped to the field
+	 * @throws NoSuchFieldException if the class has no mapped field with the given name
+	 */
+	public Column getColumnByFieldName(String fieldName) throws NoSuchFieldException {
+		Column column = columnsByFieldName.get(fieldName);
+		if (column == null) {
+			throw new NoSuchFieldException(fieldName);
+		}
+		return column;
+	}
+
+	/**
+	 * Returns the column with the given column name.
+	 *
+	 * @param columnName the name of the column
+	 * @return the column, or null if the class has no such column
+	 */
+	public Column getColumnByName(String columnName) {
+		return columnsByColumnName.get(columnName);
+	}
+
+	/**
+	 * Returns the accessible default constructor of the entity.
+	 *
+	 * @return the default constructor, or null if the class has none
+	 */
+	Constructor<?> getDefaultConstructor() {
+		return constructor;
+	}
+
+	/**
+	 * Creates a new instance of the entity using its default constructor.
+	 *
+	 * @return a new instance of the entity
+	 * @throws RuntimeException if unable to create the object
+	 */
+	public Object newInstance() {
+		if (constructor == null) {
+			System.err.println("Unable to access constructor: " + entityClass.getName() + ".<init>()");
+			throw new RuntimeException("Unable to create object: " + entityClass.getName() + " has no default constructor");
+		}
+		try {
+			return constructor.newInstance();
+		} catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
+			System.err.println("Unable to access constructor: " + e.getMessage());
+			throw new RuntimeException("Unable to create object: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the primary key value of the given entity.
+	 *
+	 * @param object the entity
+	 * @return the primary key value
+	 * @throws IllegalArgumentException if the class does not have a field with the PrimaryKey annotation
+	 */
+	public int getPrimaryKeyValue(Object object) {
+		return (int) getPrimaryKey().getValue(object);
+	}
+
+	// Queries
+
+	public String getSelectAllQuery() {
+		return selectAllQuery;
+	}
+
+	public String getSelectByIdQuery() {
+		getPrimaryKey();
+		return selectByIdQuery;
+	}
+
+	public String getInsertQuery() {
+		return insertQuery;
+	}
+
+	public String getUpdateQuery() {
+		getPrimaryKey();
+		return updateQuery;
+	}
+
+	public String getDeleteQuery() {
+		getPrimaryKey();
+		return deleteQuery;
+	}
+
+	public String getExistsByIdQuery() {
+		getPrimaryKey();
+		return existsByIdQuery;
+	}
+
+	/**
+	 * A mapped column of an entity.
+	 */
+	public static final class Column {
+		private final int index;
+		private final String name;
+		private final Field field;
+		private final boolean primaryKey;
+		private final Class<?> referencedClass;
+
+		private Column(int index, String name, Field field, boolean primaryKey, Class<?> referencedClass) {
+			this.index = index;
+			this.name = name;
+			this.field = field;
+			this.primaryKey = primaryKey;
+			this.referencedClass = referencedClass;
+		}
+
+		// Getters
+
+		/**
+		 * Returns the zero based position of the column among the mapped columns.
+		 *
+		 * @return the position of the column
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Field getField() {
+			return field;
+		}
+
+		public String getFieldName() {
+			return field.getName();
+		}
+
+		public Class<?> getType() {
+			return field.getType();
+		}
+
+		public boolean isPrimaryKey() {
+			return primaryKey;
+		}
+
+		public boolean isForeignKey() {
+			return referencedClass != null;
+		}
+
+		/**
+		 * Returns the class referenced by the ForeignKey annotation of the column.
+		 *
+		 * @return the referenced class, or null if the column is not a foreign key
+		 */
+		public Class<?> getReferencedClass() {
+			return referencedClass;
+		}
+
+		/**
+		 * Returns the value of the column in the given entity.
+		 *
+		 * @param object the entity
+		 * @return the value of the field mapped to the column
+		 * @throws RuntimeException if unable to get the field value
+		 */
+		public Object getValue(Object object) {
+			try {
+				return field.get(object);
+			} catch (IllegalAccessException e) {
+				System.err.println("Unable to get field value: " + e.getMessage());
+				throw new RuntimeException("Unable to get field value: " + e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * Sets the value of the column in the given entity.
+		 *
+		 * @param object the entity
+		 * @param value the new value
+		 * @throws RuntimeException if unable to set the field value
+		 */
+		public void setValue(Object object, Object value) {
+			try {
+				field.set(object, value);
+			} catch (IllegalAccessException e) {
+				System.err.println("Unable to set field: " + e.getMessage());
+				throw new RuntimeException("Unable to set field: " + e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The relations to load together with the rows of an entity class: the rows referenced by some of its
+ * {@link ForeignKey} fields are selected in the same query, with one LEFT JOIN per relation, so reading
+ * a list of entities and the entities they refer to takes a single query instead of one per row.
+ *
+ * A referenced row shared by many rows is read once and returned as the same object, see {@link FetchResult}.
+ * A plan is immutable and can be kept in a constant and shared between threads.
+ *
+ * @param <T> the entity type
+ */
+public final class FetchPlan<T> {
+	private final RowMapper<T> mapper;
+	private final List<EntityMetadata.Column> foreignKeys;
+
+	private FetchPlan(RowMapper<T> mapper, List<EntityMetadata.Column> foreignKeys) {
+		this.mapper = mapper;
+		this.foreignKeys = Collections.unmodifiableList(foreignKeys);
+	}
+
+	/**
+	 * Creates a plan loading the rows of an entity class without any relations.
+	 *
+	 * @param <T> the entity type
+	 * @param clazz the entity class
+	 * @return the plan
+	 */
+	public static <T> FetchPlan<T> of(Class<T> clazz) {
+		return new FetchPlan<>(RowMapper.forClass(clazz), new ArrayList<>());
+	}
+
+	/**
+	 * Returns a plan also loading the row referenced by a foreign key field. Rows whose foreign key
+	 * is NULL or does not match any row are still loaded, without a referenced row.
+	 *
+	 * @param foreignKeyField the name of the field annotated with {@link ForeignKey}
+	 * @return a new plan
+	 * @throws NoSuchFieldException if the field is not mapped to a column
+	 * @throws IllegalArgumentException if the field is not a foreign key or is already in the plan
+	 */
+	public FetchPlan<T> with(String foreignKeyField) throws NoSuchFieldException {
+		EntityMetadata.Column foreignKey = mapper.getMetadata().getColumnByFieldName(foreignKeyField);
+		if (!foreignKey.isForeignKey()) {
+			throw new IllegalArgumentException("Field " + foreignKeyField + " of " + getEntityClass().getName() + " is not a foreign key");
+		}
+		if (foreignKeys.contains(foreignKey)) {
+			throw new IllegalArgumentException("Field " + foreignKeyField + " is already in the fetch plan");
+		}
+
+		List<EntityMetadata.Column> newForeignKeys = new ArrayList<>(foreignKeys);
+		newForeignKeys.add(foreignKey);
+		return new FetchPlan<>(mapper, newForeignKeys);
+	}
+
+	// Getters
+
+	public Class<T> getEntityClass() {
+		return mapper.getEntityClass();
+	}
+
+	public EntityMetadata getMetadata() {
+		return mapper.getMetadata();
+	}
+
+	public List<EntityMetadata.Column> getForeignKeys() {
+		return foreignKeys;
+	}
+
+	// Reading
+
+	/**
+	 * Builds the SELECT query of the entity columns followed by the columns of each relation, in order.
+	 * The joined tables are aliased, so the filters and the sort field refer to the loaded entity class.
+	 *
+	 * @param filters the filter conditions on the fields of the entity class, combined with AND
+	 * @param sortBy the field name to sort by, or null for no sorting
+	 * @param ascending whether to sort in ascending order
+	 * @return the query
+	 * @throws NoSuchFieldException if a filter or the sort field is not mapped to a column
+	 */
+	String buildSelectQuery(List<FilterCondition> filters, String sortBy, boolean ascending) throws NoSuchFieldException {
+		EntityMetadata metadata = getMetadata();
+		String tableName = metadata.getTableName();
+
+		StringBuilder query = new StringBuilder("SELECT ");
+		appendColumns(query, metadata, tableName);
+		for (int i = 0; i < foreignKeys.size(); i++) {
+			appendColumns(query.append(", "), EntityMetadata.forClass(foreignKeys.get(i).getReferencedClass()), "j" + i);
+		}
+		query.append(" FROM ").append(tableName);
+
+		for (int i = 0; i < foreignKeys.size(); i++) {
+			EntityMetadata.Column foreignKey = foreignKeys.get(i);
+			EntityMetadata referenced = EntityMetadata.forClass(foreignKey.getReferencedClass());
+			query.append(" LEFT JOIN ").append(referenced.getTableName()).append(" j").append(i)
+				.append(" ON ").append(tableName).append('.').append(foreignKey.getName())
+				.append(" = j").append(i).append('.').append(referenced.getPrimaryKey().getName());
+		}
+
+		for (int i = 0; i < filters.size(); i++) {
+			query.append(i == 0 ? " WHERE " : " AND ");
+			filters.get(i).appendSql(query, metadata, true);
+		}
+
+		if (sortBy != null) {
+			query.append(" ORDER BY ").append(tableName).append('.').append(metadata.getColumnByFieldName(sortBy).getName())
+				.append(ascending ? " ASC" : " DESC");
+		}
+		return query.toString();
+	}
+
+	/**
+	 * Reads all the rows of a result set of {@link #buildSelectQuery}.
+	 *
+	 * @param rs the result set, before its first row
+	 * @return the entities and the distinct entities of each relation
+	 * @throws SQLException if a database access error occurs
+	 */
+	FetchResult<T> readAll(ResultSet rs) throws SQLException {
+		FetchResult<T> result = new FetchResult<>(foreignKeys);
+		int rootColumnCount = getMetadata().getColumns().size();
+
+		while (rs.next()) {
+			result.addRow(mapper.read(rs, 1, mapper.newInstance()));
+
+			int firstColumn = rootColumnCount + 1;
+			for (int i = 0; i < foreignKeys.size(); i++) {
+				RowMapper<?> referencedMapper = RowMapper.forClass(foreignKeys.get(i).getReferencedClass());
+				EntityMetadata referenced = referencedMapper.getMetadata();
+
+				// The primary key is NULL when no row matched the join
+				int id = rs.getInt(firstColumn + referenced.getPrimaryKey().getIndex());
+				if (!rs.wasNull() && !result.hasRelated(i, id)) {
+					result.addRelated(i, id, read(referencedMapper, rs, firstColumn));
+				}
+				firstColumn += referenced.getColumns().size();
+			}
+		}
+		return result;
+	}
+
+	private static <R> R read(RowMapper<R> mapper, ResultSet rs, int firstColumn) throws SQLException {
+		return mapper.read(rs, firstColumn, mapper.newInstance());
+	}
+
+	private static void appendColumns(StringBuilder query, EntityMetadata metadata, String tableAlias) {
+		List<EntityMetadata.Column> columns = metadata.getColumns();
+		for (int i = 0; i < columns.size(); i++) {
+			query.append(i > 0 ? ", " : "").append(tableAlias).append('.').append(columns.get(i).getName());
+		}
+	}
+}
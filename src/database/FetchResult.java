@@ -0,0 +1,93 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows loaded with a {@link FetchPlan} and the rows of their relations.
+ *
+ * Each related row is read once per result: the rows referencing the same row share the same object,
+ * which can be looked up by the referencing row or by its ID.
+ *
+ * @param <T> the entity type
+ */
+public final class FetchResult<T> {
+	private final List<T> rows = new ArrayList<>();
+	private final List<EntityMetadata.Column> foreignKeys;
+	private final List<Map<Integer, Object>> related;
+
+	FetchResult(List<EntityMetadata.Column> foreignKeys) {
+		this.foreignKeys = foreignKeys;
+		this.related = new ArrayList<>(foreignKeys.size());
+		for (int i = 0; i < foreignKeys.size(); i++) {
+			related.add(new LinkedHashMap<>());
+		}
+	}
+
+	void addRow(T row) {
+		rows.add(row);
+	}
+
+	boolean hasRelated(int relationIndex, int id) {
+		return related.get(relationIndex).containsKey(id);
+	}
+
+	void addRelated(int relationIndex, int id, Object row) {
+		related.get(relationIndex).put(id, row);
+	}
+
+	// Getters
+
+	public List<T> getRows() {
+		return Collections.unmodifiableList(rows);
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * Returns the row referenced by a foreign key field of a loaded row.
+	 *
+	 * @param <R> the referenced type
+	 * @param row a row of this result
+	 * @param foreignKeyField the name of the foreign key field, in the fetch plan
+	 * @param referencedClass the class referenced by the foreign key
+	 * @return the referenced row, or null if the foreign key is NULL or does not match any row
+	 * @throws IllegalArgumentException if the field is not in the fetch plan
+	 */
+	public <R> R getRelated(T row, String foreignKeyField, Class<R> referencedClass) {
+		int relationIndex = getRelationIndex(foreignKeyField);
+		Object id = foreignKeys.get(relationIndex).getValue(row);
+		return id == null ? null : referencedClass.cast(related.get(relationIndex).get(id));
+	}
+
+	/**
+	 * Returns the distinct rows referenced by a foreign key field, by ID, in the order they were first read.
+	 *
+	 * @param <R> the referenced type
+	 * @param foreignKeyField the name of the foreign key field, in the fetch plan
+	 * @param referencedClass the class referenced by the foreign key
+	 * @return the referenced rows by ID
+	 * @throws IllegalArgumentException if the field is not in the fetch plan
+	 */
+	public <R> Map<Integer, R> getRelatedMap(String foreignKeyField, Class<R> referencedClass) {
+		Map<Integer, R> map = new LinkedHashMap<>();
+		for (Map.Entry<Integer, Object> entry : related.get(getRelationIndex(foreignKeyField)).entrySet()) {
+			map.put(entry.getKey(), referencedClass.cast(entry.getValue()));
+		}
+		return map;
+	}
+
+	private int getRelationIndex(String foreignKeyField) {
+		for (int i = 0; i < foreignKeys.size(); i++) {
+			if (foreignKeys.get(i).getFieldName().equals(foreignKeyField)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Field " + foreignKeyField + " is not in the fetch plan");
+	}
+}
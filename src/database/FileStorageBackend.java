@@ -0,0 +1,49 @@
+package database;
+
+/**
+ * A SQLite database file on disk.
+ */
+public final class FileStorageBackend implements StorageBackend {
+	public static final String NAME = "file";
+
+	private final String databaseFile;
+
+	/**
+	 * Creates a backend for a database file, which SQLite creates on the first connection if it does not exist.
+	 *
+	 * @param databaseFile the path of the database file
+	 */
+	public FileStorageBackend(String databaseFile) {
+		this.databaseFile = databaseFile;
+	}
+
+	// Getters
+
+	public String getDatabaseFile() {
+		return databaseFile;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public String getJdbcUrl() {
+		return "jdbc:sqlite:" + databaseFile;
+	}
+
+	@Override
+	public void open() {
+		// SQLite opens the file with each connection
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public String toString() {
+		return "FileStorageBackend[" + databaseFile + "]";
+	}
+}
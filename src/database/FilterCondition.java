@@ -1,17 +1,158 @@
 package database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A predicate on the rows of a table.
+ *
+ * A condition is either a comparison of a field with a value, like the ones created with the constructor,
+ * or one of the predicates created with the static factory methods: IN lists, BETWEEN ranges, NULL checks,
+ * and AND, OR and NOT groups of other conditions. Groups can be nested, a list of conditions passed to
+ * {@link DatabaseManager} is combined with AND, and the whole tree is rendered into a single parameterized
+ * WHERE clause.
+ */
 public class FilterCondition {
     private String fieldName;
     private Object value;
     private Relation relation;
+    private List<Object> values;
+    private List<FilterCondition> children;
 
+    /**
+     * Compares a field with a value. IN and NOT IN take a collection of values, the other predicates
+     * are created with the static factory methods.
+     *
+     * @param fieldName the name of the field
+     * @param value the value, or the collection of values of IN and NOT IN
+     * @param relation the comparison
+     * @throws IllegalArgumentException if the relation is not a comparison with a value, or IN and NOT IN
+     *         are not given a collection
+     */
     public FilterCondition(String fieldName, Object value, Relation relation) {
+        switch (relation) {
+            case BETWEEN:
+            case IS_NULL:
+            case IS_NOT_NULL:
+            case AND:
+            case OR:
+            case NOT:
+                throw new IllegalArgumentException(relation + " conditions are created with the factory methods "
+                        + "between, isNull, isNotNull, and, or and not");
+            case IN:
+            case NOT_IN:
+                if (!(value instanceof Collection)) {
+                    throw new IllegalArgumentException(relation + " needs a collection of values, use the factory methods in and notIn");
+                }
+                break;
+            default:
+                break;
+        }
         this.fieldName = fieldName;
         this.value = value;
         this.relation = relation;
+        this.values = (relation == Relation.IN || relation == Relation.NOT_IN) && value instanceof Collection
+                ? List.copyOf((Collection<?>) value) : Collections.emptyList();
+        this.children = Collections.emptyList();
+    }
+
+    private FilterCondition(String fieldName, Relation relation, List<Object> values, List<FilterCondition> children) {
+        this.fieldName = fieldName;
+        this.relation = relation;
+        this.values = values;
+        this.children = children;
+    }
+
+    // Factories
+
+    /**
+     * Matches the rows where the field is equal to one of the given values.
+     * An empty collection matches no rows.
+     *
+     * @param fieldName the name of the field
+     * @param values the accepted values
+     * @return the condition
+     */
+    public static FilterCondition in(String fieldName, Collection<?> values) {
+        return new FilterCondition(fieldName, Relation.IN, List.copyOf(values), Collections.emptyList());
+    }
+
+    /**
+     * Matches the rows where the field is not equal to any of the given values.
+     * An empty collection matches all rows.
+     *
+     * @param fieldName the name of the field
+     * @param values the rejected values
+     * @return the condition
+     */
+    public static FilterCondition notIn(String fieldName, Collection<?> values) {
+        return new FilterCondition(fieldName, Relation.NOT_IN, List.copyOf(values), Collections.emptyList());
+    }
+
+    /**
+     * Matches the rows where the field is between the given values, both included.
+     *
+     * @param fieldName the name of the field
+     * @param low the lower bound
+     * @param high the upper bound
+     * @return the condition
+     */
+    public static FilterCondition between(String fieldName, Object low, Object high) {
+        return new FilterCondition(fieldName, Relation.BETWEEN, Arrays.asList(low, high), Collections.emptyList());
+    }
+
+    public static FilterCondition isNull(String fieldName) {
+        return new FilterCondition(fieldName, Relation.IS_NULL, Collections.emptyList(), Collections.emptyList());
+    }
+
+    public static FilterCondition isNotNull(String fieldName) {
+        return new FilterCondition(fieldName, Relation.IS_NOT_NULL, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Matches the rows that match all of the given conditions.
+     *
+     * @param conditions the conditions
+     * @return the condition
+     * @throws IllegalArgumentException if no conditions are given
+     */
+    public static FilterCondition and(FilterCondition... conditions) {
+        return group(Relation.AND, conditions);
+    }
+
+    /**
+     * Matches the rows that match at least one of the given conditions.
+     *
+     * @param conditions the conditions
+     * @return the condition
+     * @throws IllegalArgumentException if no conditions are given
+     */
+    public static FilterCondition or(FilterCondition... conditions) {
+        return group(Relation.OR, conditions);
+    }
+
+    public static FilterCondition not(FilterCondition condition) {
+        return group(Relation.NOT, condition);
+    }
+
+    private static FilterCondition group(Relation relation, FilterCondition... conditions) {
+        if (conditions.length == 0) {
+            throw new IllegalArgumentException(relation + " group must contain at least one condition");
+        }
+        return new FilterCondition(null, relation, Collections.emptyList(), List.of(conditions));
     }
 
     // Getters
 
+	/**
+	 * Returns the name of the filtered field.
+	 *
+	 * @return the field name, or null if the condition is a group
+	 */
 	public String getFieldName() {
 		return fieldName;
 	}
@@ -20,10 +161,32 @@ public class FilterCondition {
 		return value;
 	}
 
+	/**
+	 * Returns the values of an IN, NOT IN or BETWEEN condition.
+	 *
+	 * @return an unmodifiable list of the values, empty for other conditions
+	 */
+	public List<Object> getValues() {
+		return values;
+	}
+
+	/**
+	 * Returns the conditions of an AND, OR or NOT group.
+	 *
+	 * @return an unmodifiable list of the grouped conditions, empty for other conditions
+	 */
+	public List<FilterCondition> getChildren() {
+		return children;
+	}
+
 	public Relation getRelation() {
 		return relation;
 	}
 
+	public boolean isGroup() {
+		return relation == Relation.AND || relation == Relation.OR || relation == Relation.NOT;
+	}
+
 	public String getRelationOperator() {
 		switch (relation) {
 			case EQUALS:
@@ -40,11 +203,160 @@ public class FilterCondition {
 				return "<=";
 			case LIKE:
 				return "LIKE";
+			case IN:
+				return "IN";
+			case NOT_IN:
+				return "NOT IN";
+			case BETWEEN:
+				return "BETWEEN";
+			case IS_NULL:
+				return "IS NULL";
+			case IS_NOT_NULL:
+				return "IS NOT NULL";
+			case AND:
+				return "AND";
+			case OR:
+				return "OR";
+			case NOT:
+				return "NOT";
 			default:
 				return "";
 		}
 	}
 
+	// Rendering
+
+	/**
+	 * Appends a key describing the structure of the condition, which is the same for every
+	 * condition rendered into the same SQL.
+	 *
+	 * @param key the key to append to
+	 */
+	void appendShape(StringBuilder key) {
+		key.append(relation.ordinal());
+		if (isGroup()) {
+			key.append('(');
+			for (FilterCondition child : children) {
+				child.appendShape(key);
+				key.append(',');
+			}
+			key.append(')');
+		} else {
+			key.append(':').append(fieldName);
+			if (relation == Relation.IN || relation == Relation.NOT_IN) {
+				key.append(':').append(values.size());
+			}
+		}
+	}
+
+	/**
+	 * Appends the SQL of the condition, with a parameter placeholder for each value.
+	 *
+	 * @param sql the SQL to append to
+	 * @param metadata the metadata of the filtered class
+	 * @throws NoSuchFieldException if the condition refers to a field that is not mapped to a column
+	 */
+	void appendSql(StringBuilder sql, EntityMetadata metadata) throws NoSuchFieldException {
+		appendSql(sql, metadata, false);
+	}
+
+	/**
+	 * Appends the SQL of the condition, with the column names qualified by the table name when
+	 * the query selects from several tables.
+	 *
+	 * @param sql the SQL to append to
+	 * @param metadata the metadata of the filtered class
+	 * @param qualified whether to prefix the column names with the table name
+	 * @throws NoSuchFieldException if the condition refers to a field that is not mapped to a column
+	 */
+	void appendSql(StringBuilder sql, EntityMetadata metadata, boolean qualified) throws NoSuchFieldException {
+		switch (relation) {
+			case AND:
+			case OR:
+				sql.append('(');
+				for (int i = 0; i < children.size(); i++) {
+					if (i > 0) {
+						sql.append(' ').append(getRelationOperator()).append(' ');
+					}
+					children.get(i).appendSql(sql, metadata, qualified);
+				}
+				sql.append(')');
+				return;
+			case NOT:
+				sql.append("NOT (");
+				children.get(0).appendSql(sql, metadata, qualified);
+				sql.append(')');
+				return;
+			default:
+				break;
+		}
+
+		String columnName = metadata.getColumnByFieldName(fieldName).getName();
+		if (qualified) {
+			columnName = metadata.getTableName() + "." + columnName;
+		}
+		switch (relation) {
+			case IN:
+			case NOT_IN:
+				if (values.isEmpty()) {
+					// An empty list is not valid SQL, match nothing or everything instead
+					sql.append(relation == Relation.IN ? "1 = 0" : "1 = 1");
+					return;
+				}
+				sql.append(columnName).append(' ').append(getRelationOperator()).append(" (");
+				for (int i = 0; i < values.size(); i++) {
+					sql.append(i > 0 ? ", ?" : "?");
+				}
+				sql.append(')');
+				return;
+			case BETWEEN:
+				sql.append(columnName).append(" BETWEEN ? AND ?");
+				return;
+			case IS_NULL:
+			case IS_NOT_NULL:
+				sql.append(columnName).append(' ').append(getRelationOperator());
+				return;
+			default:
+				sql.append(columnName).append(' ').append(getRelationOperator()).append(" ?");
+		}
+	}
+
+	/**
+	 * Sets the values of the condition on a statement, in the order of the placeholders of {@link #appendSql}.
+	 *
+	 * @param stmt the statement
+	 * @param index the index of the first parameter of the condition
+	 * @return the index of the next parameter
+	 * @throws SQLException if a database access error occurs
+	 */
+	int bind(PreparedStatement stmt, int index) throws SQLException {
+		switch (relation) {
+			case AND:
+			case OR:
+			case NOT:
+				for (FilterCondition child : children) {
+					index = child.bind(stmt, index);
+				}
+				return index;
+			case IN:
+			case NOT_IN:
+			case BETWEEN:
+				for (Object v : values) {
+					DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index++, v);
+				}
+				return index;
+			case IS_NULL:
+			case IS_NOT_NULL:
+				return index;
+			case LIKE:
+				DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index, "%" + value + "%");
+				return index + 1;
+			default:
+				DatabaseAnnotationUtils.setPreparedStatementValue(stmt, index, value);
+				return index + 1;
+		}
+	}
+
     public enum Relation {
         EQUALS,
         NOT_EQUALS,
@@ -52,6 +364,14 @@ public class FilterCondition {
         LESS_THAN,
 		GREATER_THAN_OR_EQUALS,
 		LESS_THAN_OR_EQUALS,
-		LIKE
+		LIKE,
+		IN,
+		NOT_IN,
+		BETWEEN,
+		IS_NULL,
+		IS_NOT_NULL,
+		AND,
+		OR,
+		NOT
     }
 }
@@ -0,0 +1,115 @@
+package database;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A SQLite database held in memory, optionally filled with a copy of a database file when opened.
+ * Nothing is written to disk: the database is discarded when the backend is closed.
+ *
+ * Every backend has its own database, shared by all the connections of the pool through the memdb
+ * VFS of SQLite. Unlike a shared-cache {@code :memory:} database, memdb uses the usual database locks,
+ * so concurrent transactions wait for each other with the busy timeout of the connection profile
+ * instead of failing at once. A connection is kept open by the backend, since the database is
+ * discarded when its last connection closes.
+ */
+public final class InMemoryStorageBackend implements StorageBackend {
+	public static final String NAME = "memory";
+
+	private static final AtomicInteger DATABASE_COUNT = new AtomicInteger();
+
+	private final String databaseName;
+	private final String seedFile;
+	private Connection keepAliveConnection;
+
+	/**
+	 * Creates a backend with a new, uniquely named database.
+	 *
+	 * @param seedFile the database file copied into memory when opened, or null for an empty database
+	 */
+	public InMemoryStorageBackend(String seedFile) {
+		this("cinema-" + DATABASE_COUNT.incrementAndGet(), seedFile);
+	}
+
+	/**
+	 * Creates a backend with a named database. Backends with the same name in the same process
+	 * share the database while one of them is open.
+	 *
+	 * @param databaseName the name of the database, made of letters, digits, '-' and '_'
+	 * @param seedFile the database file copied into memory when opened, or null for an empty database
+	 * @throws IllegalArgumentException if the name contains other characters
+	 */
+	public InMemoryStorageBackend(String databaseName, String seedFile) {
+		if (!databaseName.matches("[A-Za-z0-9_-]+")) {
+			throw new IllegalArgumentException("Invalid in-memory database name: " + databaseName);
+		}
+		this.databaseName = databaseName;
+		this.seedFile = seedFile;
+	}
+
+	// Getters
+
+	public String getDatabaseName() {
+		return databaseName;
+	}
+
+	public String getSeedFile() {
+		return seedFile;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public String getJdbcUrl() {
+		return "jdbc:sqlite:file:/" + databaseName + "?vfs=memdb";
+	}
+
+	@Override
+	public synchronized void open() throws SQLException {
+		if (keepAliveConnection != null) {
+			return;
+		}
+		if (seedFile != null && !new File(seedFile).isFile()) {
+			throw new SQLException("Seed database file not found: " + seedFile);
+		}
+
+		Connection connection = DriverManager.getConnection(getJdbcUrl());
+		try {
+			if (seedFile != null) {
+				try (Statement stmt = connection.createStatement()) {
+					// Copies the file with the online backup API of SQLite
+					stmt.executeUpdate("restore from \"" + seedFile.replace("\"", "\"\"") + "\"");
+				}
+			}
+		} catch (SQLException e) {
+			connection.close();
+			throw e;
+		}
+		keepAliveConnection = connection;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (keepAliveConnection == null) {
+			return;
+		}
+		try {
+			keepAliveConnection.close();
+		} catch (SQLException e) {
+			System.err.println("Unable to close in-memory database: " + e.getMessage());
+		}
+		keepAliveConnection = null;
+	}
+
+	@Override
+	public String toString() {
+		return "InMemoryStorageBackend[" + databaseName + (seedFile != null ? ", seeded from " + seedFile : "") + "]";
+	}
+}
@@ -0,0 +1,21 @@
+package database;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares an index on the table of an entity class, created by {@link SchemaManager} if missing.
+ * The columns are given by column name, in index order.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(Indexes.class)
+public @interface Index {
+    String name();
+
+    String[] columns();
+
+    boolean unique() default false;
+}
@@ -0,0 +1,51 @@
+package database;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of rows returned by a paginated query.
+ *
+ * @param <T> the type of the rows
+ */
+public final class Page<T> {
+	public static final int UNKNOWN_TOTAL_COUNT = -1;
+
+	private final List<T> items;
+	private final PageToken nextPageToken;
+	private final int totalCount;
+
+	Page(List<T> items, PageToken nextPageToken, int totalCount) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextPageToken = nextPageToken;
+		this.totalCount = totalCount;
+	}
+
+	// Getters
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * Returns the token to pass to get the following page.
+	 *
+	 * @return the token of the next page, or null if this is the last page
+	 */
+	public PageToken getNextPageToken() {
+		return nextPageToken;
+	}
+
+	public boolean hasNextPage() {
+		return nextPageToken != null;
+	}
+
+	/**
+	 * Returns the number of rows matching the query over all pages.
+	 *
+	 * @return the total row count, or {@link #UNKNOWN_TOTAL_COUNT} if it was not requested
+	 */
+	public int getTotalCount() {
+		return totalCount;
+	}
+}
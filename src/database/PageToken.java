@@ -0,0 +1,37 @@
+package database;
+
+/**
+ * Marks the position after the last row of a page in a keyset paginated query.
+ *
+ * A token holds the sort value and the primary key of the last row that was returned,
+ * so the next page starts right after it no matter how many rows came before.
+ */
+public final class PageToken {
+	private final Object sortValue;
+	private final int id;
+
+	public PageToken(Object sortValue, int id) {
+		this.sortValue = sortValue;
+		this.id = id;
+	}
+
+	// Getters
+
+	/**
+	 * Returns the value of the sort column in the last row, or null if the query was sorted by primary key only.
+	 *
+	 * @return the sort value of the last row
+	 */
+	public Object getSortValue() {
+		return sortValue;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return "PageToken[" + sortValue + ", " + id + "]";
+	}
+}
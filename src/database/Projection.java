@@ -0,0 +1,114 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A subset of the mapped fields of an entity class, read with a query that selects only their columns.
+ *
+ * Rows can be read into partially populated entities, where the fields outside the projection keep
+ * the values set by the default constructor, or into tuples of the field values.
+ * A projection is immutable and can be kept in a constant and shared between threads.
+ *
+ * @param <T> the entity type
+ */
+public final class Projection<T> {
+	private final RowMapper<T> mapper;
+	private final List<EntityMetadata.Column> columns;
+	private final RowMapper.ColumnAccessor[] accessors;
+	private final String selectQuery;
+
+	private Projection(RowMapper<T> mapper, List<EntityMetadata.Column> columns) {
+		this.mapper = mapper;
+		this.columns = Collections.unmodifiableList(columns);
+		this.accessors = new RowMapper.ColumnAccessor[columns.size()];
+
+		StringBuilder query = new StringBuilder("SELECT ");
+		for (int i = 0; i < columns.size(); i++) {
+			EntityMetadata.Column column = columns.get(i);
+			accessors[i] = mapper.getAccessor(column);
+			query.append(i > 0 ? ", " : "").append(column.getName());
+		}
+		this.selectQuery = query.append(" FROM ").append(mapper.getMetadata().getTableName()).toString();
+	}
+
+	/**
+	 * Creates a projection of the given fields of an entity class.
+	 *
+	 * @param <T> the entity type
+	 * @param clazz the entity class
+	 * @param fieldNames the names of the projected fields, in the order of the tuple values
+	 * @return the projection
+	 * @throws NoSuchFieldException if a field is not mapped to a column
+	 * @throws IllegalArgumentException if no fields are given
+	 */
+	public static <T> Projection<T> of(Class<T> clazz, String... fieldNames) throws NoSuchFieldException {
+		if (fieldNames.length == 0) {
+			throw new IllegalArgumentException("Projection of " + clazz.getName() + " must contain at least one field");
+		}
+		RowMapper<T> mapper = RowMapper.forClass(clazz);
+		List<EntityMetadata.Column> columns = new ArrayList<>(fieldNames.length);
+		for (String fieldName : fieldNames) {
+			columns.add(mapper.getMetadata().getColumnByFieldName(fieldName));
+		}
+		return new Projection<>(mapper, columns);
+	}
+
+	// Getters
+
+	public Class<T> getEntityClass() {
+		return mapper.getEntityClass();
+	}
+
+	public EntityMetadata getMetadata() {
+		return mapper.getMetadata();
+	}
+
+	public List<EntityMetadata.Column> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the SELECT query of the projected columns, without any conditions.
+	 *
+	 * @return the select query
+	 */
+	public String getSelectQuery() {
+		return selectQuery;
+	}
+
+	// Reading
+
+	/**
+	 * Creates an entity with the projected fields set from the current row of the result set.
+	 *
+	 * @param rs the result set positioned on a row, with the projected columns first
+	 * @return a new, partially populated entity
+	 * @throws SQLException if a database access error occurs
+	 */
+	public T read(ResultSet rs) throws SQLException {
+		T target = mapper.newInstance();
+		for (int i = 0; i < accessors.length; i++) {
+			accessors[i].read(rs, i + 1, target);
+		}
+		return target;
+	}
+
+	/**
+	 * Reads the projected values of the current row of the result set.
+	 *
+	 * @param rs the result set positioned on a row, with the projected columns first
+	 * @return the values, in the order of the projected fields
+	 * @throws SQLException if a database access error occurs
+	 */
+	public Object[] readTuple(ResultSet rs) throws SQLException {
+		Object[] tuple = new Object[accessors.length];
+		for (int i = 0; i < accessors.length; i++) {
+			tuple[i] = accessors[i].readValue(rs, i + 1);
+		}
+		return tuple;
+	}
+}
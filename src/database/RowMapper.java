@@ -0,0 +1,565 @@
+package database;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads entities from result sets and writes them to prepared statements without per row reflection.
+ *
+ * A mapper is built once per entity class. Every mapped column gets an accessor specialized for
+ * the type of its field: the field is read and written through method handles of the exact
+ * primitive type, and the matching typed ResultSet getter / PreparedStatement setter is chosen
+ * up front, so no type checks, accessibility changes or boxing happen per row.
+ *
+ * When the class has a DAO generated at build time (see {@link EntityDaos}), rows are read, written,
+ * created and copied by the DAO instead. The accessors are still built for the callers reading
+ * single columns.
+ *
+ * @param <T> the entity type
+ */
+public final class RowMapper<T> {
+	private static final Map<Class<?>, RowMapper<?>> CACHE = new ConcurrentHashMap<>();
+
+	private final Class<T> entityClass;
+	private final EntityMetadata metadata;
+	private final MethodHandle constructor;
+	private final ColumnAccessor[] accessors;
+	private final ColumnAccessor[] nonPrimaryKeyAccessors;
+	private final ColumnAccessor primaryKeyAccessor;
+	private final MethodHandle[] fieldCopiers;
+	private final EntityDao<T> dao;
+
+	/**
+	 * Returns the mapper of the given class, building it on the first call.
+	 *
+	 * @param <T> the entity type
+	 * @param clazz the entity class
+	 * @return the mapper of the class
+	 * @throws IllegalArgumentException if the class is not a mappable entity
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> RowMapper<T> forClass(Class<T> clazz) {
+		RowMapper<?> mapper = CACHE.get(clazz);
+		if (mapper == null) {
+			mapper = CACHE.computeIfAbsent(clazz, RowMapper::new);
+		}
+		return (RowMapper<T>) mapper;
+	}
+
+	private RowMapper(Class<T> clazz) {
+		this.entityClass = clazz;
+		this.metadata = EntityMetadata.forClass(clazz);
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		MethodHandle constructorHandle = null;
+		if (metadata.getDefaultConstructor() != null) {
+			try {
+				constructorHandle = lookup.unreflectConstructor(metadata.getDefaultConstructor())
+						.asType(MethodType.methodType(Object.class));
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Unable to access constructor of " + clazz.getName(), e);
+			}
+		}
+		this.constructor = constructorHandle;
+
+		List<EntityMetadata.Column> columns = metadata.getColumns();
+		this.accessors = new ColumnAccessor[columns.size()];
+		this.nonPrimaryKeyAccessors = new ColumnAccessor[metadata.getNonPrimaryKeyColumns().size()];
+
+		this.fieldCopiers = new MethodHandle[columns.size()];
+
+		ColumnAccessor primaryKey = null;
+		int nonPrimaryKeyIndex = 0;
+		for (EntityMetadata.Column column : columns) {
+			ColumnAccessor accessor = createAccessor(lookup, column);
+			fieldCopiers[column.getIndex()] = createFieldCopier(lookup, column);
+			accessors[column.getIndex()] = accessor;
+			if (column.isPrimaryKey()) {
+				if (primaryKey == null) {
+					primaryKey = accessor;
+				}
+			} else {
+				nonPrimaryKeyAccessors[nonPrimaryKeyIndex++] = accessor;
+			}
+		}
+		this.primaryKeyAccessor = primaryKey;
+		this.dao = findDao(clazz, metadata);
+	}
+
+	// Getters
+
+	public Class<T> getEntityClass() {
+		return entityClass;
+	}
+
+	public EntityMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * Returns the accessor of the given column.
+	 *
+	 * @param column a column of the entity class
+	 * @return the accessor of the column
+	 */
+	public ColumnAccessor getAccessor(EntityMetadata.Column column) {
+		return accessors[column.getIndex()];
+	}
+
+	/**
+	 * Returns the generated DAO the mapper delegates to.
+	 *
+	 * @return the DAO, or null if the class is mapped with reflection
+	 */
+	public EntityDao<T> getDao() {
+		return dao;
+	}
+
+	/**
+	 * Creates a new instance of the entity using its default constructor.
+	 *
+	 * @return a new instance
+	 * @throws RuntimeException if unable to create the object
+	 */
+	public T newInstance() {
+		if (dao != null) {
+			return dao.newInstance();
+		}
+		if (constructor == null) {
+			return entityClass.cast(metadata.newInstance());
+		}
+		try {
+			return entityClass.cast((Object) constructor.invokeExact());
+		} catch (Throwable e) {
+			System.err.println("Unable to access constructor: " + e.getMessage());
+			throw new RuntimeException("Unable to create object: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Creates an entity from the current row of the result set, whose columns must start with the
+	 * mapped columns in declaration order (as returned by {@code SELECT *}).
+	 *
+	 * @param rs the result set positioned on a row
+	 * @return a new entity
+	 * @throws SQLException if a database access error occurs
+	 */
+	public T read(ResultSet rs) throws SQLException {
+		return read(rs, 1, newInstance());
+	}
+
+	/**
+	 * Sets the fields of the given entity from the current row of the result set.
+	 *
+	 * @param rs the result set positioned on a row
+	 * @param firstColumn the index of the result set column holding the first mapped column
+	 * @param target the entity to fill
+	 * @return the target entity
+	 * @throws SQLException if a database access error occurs
+	 */
+	public T read(ResultSet rs, int firstColumn, T target) throws SQLException {
+		if (dao != null) {
+			return dao.read(rs, firstColumn, target);
+		}
+		int index = firstColumn;
+		for (ColumnAccessor accessor : accessors) {
+			accessor.read(rs, index++, target);
+		}
+		return target;
+	}
+
+	/**
+	 * Creates an entity with the mapped fields of the given one.
+	 *
+	 * @param source the entity to copy
+	 * @return a new entity
+	 */
+	public T copy(T source) {
+		if (dao != null) {
+			return dao.copy(source);
+		}
+		T target = newInstance();
+		for (MethodHandle copier : fieldCopiers) {
+			try {
+				copier.invokeExact((Object) target, (Object) source);
+			} catch (Throwable e) {
+				throw fieldAccessFailure(e);
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Binds the non primary key columns of the entity to the statement, in the order used by the
+	 * INSERT and UPDATE queries of its class.
+	 *
+	 * @param source the entity to bind
+	 * @param ps the statement
+	 * @param firstParameter the index of the first parameter to set
+	 * @return the index of the next parameter
+	 * @throws SQLException if a database access error occurs
+	 */
+	public int writeNonPrimaryKeyColumns(Object source, PreparedStatement ps, int firstParameter) throws SQLException {
+		if (dao != null) {
+			return dao.writeNonPrimaryKeyColumns(entityClass.cast(source), ps, firstParameter);
+		}
+		int index = firstParameter;
+		for (ColumnAccessor accessor : nonPrimaryKeyAccessors) {
+			accessor.write(ps, index++, source);
+		}
+		return index;
+	}
+
+	/**
+	 * Binds the primary key of the entity to the statement.
+	 *
+	 * @param source the entity to bind
+	 * @param ps the statement
+	 * @param parameterIndex the index of the parameter to set
+	 * @throws SQLException if a database access error occurs
+	 * @throws IllegalArgumentException if the class does not have a field with the PrimaryKey annotation
+	 */
+	public void writePrimaryKey(Object source, PreparedStatement ps, int parameterIndex) throws SQLException {
+		if (primaryKeyAccessor == null) {
+			metadata.getPrimaryKey();
+		}
+		if (dao != null) {
+			dao.writePrimaryKey(entityClass.cast(source), ps, parameterIndex);
+			return;
+		}
+		primaryKeyAccessor.write(ps, parameterIndex, source);
+	}
+
+	/**
+	 * Reads a column from a result set into an entity field and writes an entity field to a
+	 * prepared statement parameter.
+	 */
+	public interface ColumnAccessor {
+		void read(ResultSet rs, int columnIndex, Object target) throws SQLException;
+
+		/**
+		 * Reads a column from a result set as a value of the field type, boxed for primitive fields.
+		 */
+		Object readValue(ResultSet rs, int columnIndex) throws SQLException;
+
+		void write(PreparedStatement ps, int parameterIndex, Object source) throws SQLException;
+	}
+
+	/**
+	 * Returns the generated DAO of the class if it maps the same columns as the metadata.
+	 */
+	private static <T> EntityDao<T> findDao(Class<T> clazz, EntityMetadata metadata) {
+		EntityDao<T> dao = EntityDaos.forClass(clazz);
+		if (dao == null) {
+			return null;
+		}
+		List<EntityMetadata.Column> columns = metadata.getColumns();
+		List<String> daoColumns = dao.getColumnNames();
+		boolean matches = daoColumns.size() == columns.size();
+		for (int i = 0; matches && i < columns.size(); i++) {
+			matches = columns.get(i).getName().equals(daoColumns.get(i));
+		}
+		if (!matches) {
+			System.err.println("Generated DAO of " + clazz.getName() + " is out of date, using reflection");
+			return null;
+		}
+		return dao;
+	}
+
+	/**
+	 * Creates a handle taking a target and a source entity that sets the field of the target to the
+	 * value of the field of the source, without boxing primitive values.
+	 */
+	private static MethodHandle createFieldCopier(MethodHandles.Lookup lookup, EntityMetadata.Column column) {
+		try {
+			MethodHandle getter = lookup.unreflectGetter(column.getField());
+			MethodHandle setter = lookup.unreflectSetter(column.getField());
+			return MethodHandles.filterArguments(setter, 1, getter)
+					.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Unable to access field " + column.getFieldName(), e);
+		}
+	}
+
+	private static ColumnAccessor createAccessor(MethodHandles.Lookup lookup, EntityMetadata.Column column) {
+		MethodHandle getter;
+		MethodHandle setter;
+		try {
+			// The fields of the metadata are already accessible, so no access checks are done here
+			getter = lookup.unreflectGetter(column.getField());
+			setter = lookup.unreflectSetter(column.getField());
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Unable to access field " + column.getFieldName(), e);
+		}
+
+		Class<?> type = column.getType();
+		if (type == int.class) {
+			return intAccessor(getter, setter);
+		} else if (type == long.class) {
+			return longAccessor(getter, setter);
+		} else if (type == double.class) {
+			return doubleAccessor(getter, setter);
+		} else if (type == float.class) {
+			return floatAccessor(getter, setter);
+		} else if (type == boolean.class) {
+			return booleanAccessor(getter, setter);
+		} else if (type == Integer.class) {
+			return objectAccessor(getter, setter,
+					(rs, i) -> { int value = rs.getInt(i); return rs.wasNull() ? null : value; },
+					(ps, i, value) -> ps.setInt(i, (Integer) value), Types.INTEGER);
+		} else if (type == Long.class) {
+			return objectAccessor(getter, setter,
+					(rs, i) -> { long value = rs.getLong(i); return rs.wasNull() ? null : value; },
+					(ps, i, value) -> ps.setLong(i, (Long) value), Types.BIGINT);
+		} else if (type == Double.class) {
+			return objectAccessor(getter, setter,
+					(rs, i) -> { double value = rs.getDouble(i); return rs.wasNull() ? null : value; },
+					(ps, i, value) -> ps.setDouble(i, (Double) value), Types.DOUBLE);
+		} else if (type == Float.class) {
+			return objectAccessor(getter, setter,
+					(rs, i) -> { float value = rs.getFloat(i); return rs.wasNull() ? null : value; },
+					(ps, i, value) -> ps.setFloat(i, (Float) value), Types.FLOAT);
+		} else if (type == Boolean.class) {
+			return objectAccessor(getter, setter,
+					(rs, i) -> { boolean value = rs.getBoolean(i); return rs.wasNull() ? null : value; },
+					(ps, i, value) -> ps.setBoolean(i, (Boolean) value), Types.BOOLEAN);
+		} else if (type == String.class) {
+			return objectAccessor(getter, setter,
+					ResultSet::getString,
+					(ps, i, value) -> ps.setString(i, (String) value), Types.VARCHAR);
+		} else if (ColumnCodecs.forType(type) != null) {
+			return codecAccessor(getter, setter, ColumnCodecs.forType(type));
+		}
+		throw new IllegalArgumentException("Unsupported field type: " + type.getName());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> ColumnAccessor codecAccessor(MethodHandle getter, MethodHandle setter, ColumnCodec<T> codec) {
+		return objectAccessor(getter, setter, codec::read,
+				(ps, i, value) -> codec.write(ps, i, (T) value), codec.getJdbcType());
+	}
+
+	private static ColumnAccessor intAccessor(MethodHandle getter, MethodHandle setter) {
+		MethodHandle get = getter.asType(MethodType.methodType(int.class, Object.class));
+		MethodHandle set = setter.asType(MethodType.methodType(void.class, Object.class, int.class));
+		return new ColumnAccessor() {
+			@Override
+			public Object readValue(ResultSet rs, int columnIndex) throws SQLException {
+				return rs.getInt(columnIndex);
+			}
+
+			@Override
+			public void read(ResultSet rs, int columnIndex, Object target) throws SQLException {
+				int value = rs.getInt(columnIndex);
+				try {
+					set.invokeExact(target, value);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+			}
+
+			@Override
+			public void write(PreparedStatement ps, int parameterIndex, Object source) throws SQLException {
+				int value;
+				try {
+					value = (int) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+				ps.setInt(parameterIndex, value);
+			}
+		};
+	}
+
+	private static ColumnAccessor longAccessor(MethodHandle getter, MethodHandle setter) {
+		MethodHandle get = getter.asType(MethodType.methodType(long.class, Object.class));
+		MethodHandle set = setter.asType(MethodType.methodType(void.class, Object.class, long.class));
+		return new ColumnAccessor() {
+			@Override
+			public Object readValue(ResultSet rs, int columnIndex) throws SQLException {
+				return rs.getLong(columnIndex);
+			}
+
+			@Override
+			public void read(ResultSet rs, int columnIndex, Object target) throws SQLException {
+				long value = rs.getLong(columnIndex);
+				try {
+					set.invokeExact(target, value);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+			}
+
+			@Override
+			public void write(PreparedStatement ps, int parameterIndex, Object source) throws SQLException {
+				long value;
+				try {
+					value = (long) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+				ps.setLong(parameterIndex, value);
+			}
+		};
+	}
+
+	private static ColumnAccessor doubleAccessor(MethodHandle getter, MethodHandle setter) {
+		MethodHandle get = getter.asType(MethodType.methodType(double.class, Object.class));
+		MethodHandle set = setter.asType(MethodType.methodType(void.class, Object.class, double.class));
+		return new ColumnAccessor() {
+			@Override
+			public Object readValue(ResultSet rs, int columnIndex) throws SQLException {
+				return rs.getDouble(columnIndex);
+			}
+
+			@Override
+			public void read(ResultSet rs, int columnIndex, Object target) throws SQLException {
+				double value = rs.getDouble(columnIndex);
+				try {
+					set.invokeExact(target, value);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+			}
+
+			@Override
+			public void write(PreparedStatement ps, int parameterIndex, Object source) throws SQLException {
+				double value;
+				try {
+					value = (double) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+				ps.setDouble(parameterIndex, value);
+			}
+		};
+	}
+
+	private static ColumnAccessor floatAccessor(MethodHandle getter, MethodHandle setter) {
+		MethodHandle get = getter.asType(MethodType.methodType(float.class, Object.class));
+		MethodHandle set = setter.asType(MethodType.methodType(void.class, Object.class, float.class));
+		return new ColumnAccessor() {
+			@Override
+			public Object readValue(ResultSet rs, int columnIndex) throws SQLException {
+				return rs.getFloat(columnIndex);
+			}
+
+			@Override
+			public void read(ResultSet rs, int columnIndex, Object target) throws SQLException {
+				float value = rs.getFloat(columnIndex);
+				try {
+					set.invokeExact(target, value);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+			}
+
+			@Override
+			public void write(PreparedStatement ps, int parameterIndex, Object source) throws SQLException {
+				float value;
+				try {
+					value = (float) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+				ps.setFloat(parameterIndex, value);
+			}
+		};
+	}
+
+	private static ColumnAccessor booleanAccessor(MethodHandle getter, MethodHandle setter) {
+		MethodHandle get = getter.asType(MethodType.methodType(boolean.class, Object.class));
+		MethodHandle set = setter.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+		return new ColumnAccessor() {
+			@Override
+			public Object readValue(ResultSet rs, int columnIndex) throws SQLException {
+				return rs.getBoolean(columnIndex);
+			}
+
+			@Override
+			public void read(ResultSet rs, int columnIndex, Object target) throws SQLException {
+				boolean value = rs.getBoolean(columnIndex);
+				try {
+					set.invokeExact(target, value);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+			}
+
+			@Override
+			public void write(PreparedStatement ps, int parameterIndex, Object source) throws SQLException {
+				boolean value;
+				try {
+					value = (boolean) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+				ps.setBoolean(parameterIndex, value);
+			}
+		};
+	}
+
+	private static ColumnAccessor objectAccessor(MethodHandle getter, MethodHandle setter,
+			ValueReader reader, ValueWriter writer, int sqlType) {
+		MethodHandle get = getter.asType(MethodType.methodType(Object.class, Object.class));
+		MethodHandle set = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		return new ColumnAccessor() {
+			@Override
+			public Object readValue(ResultSet rs, int columnIndex) throws SQLException {
+				return reader.read(rs, columnIndex);
+			}
+
+			@Override
+			public void read(ResultSet rs, int columnIndex, Object target) throws SQLException {
+				Object value = reader.read(rs, columnIndex);
+				try {
+					set.invokeExact(target, value);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+			}
+
+			@Override
+			public void write(PreparedStatement ps, int parameterIndex, Object source) throws SQLException {
+				Object value;
+				try {
+					value = (Object) get.invokeExact(source);
+				} catch (Throwable e) {
+					throw fieldAccessFailure(e);
+				}
+				if (value == null) {
+					ps.setNull(parameterIndex, sqlType);
+				} else {
+					writer.write(ps, parameterIndex, value);
+				}
+			}
+		};
+	}
+
+	private static RuntimeException fieldAccessFailure(Throwable e) {
+		if (e instanceof RuntimeException) {
+			return (RuntimeException) e;
+		}
+		System.err.println("Unable to access field: " + e.getMessage());
+		return new RuntimeException("Unable to access field: " + e.getMessage(), e);
+	}
+
+	@FunctionalInterface
+	private interface ValueReader {
+		Object read(ResultSet rs, int columnIndex) throws SQLException;
+	}
+
+	@FunctionalInterface
+	private interface ValueWriter {
+		void write(PreparedStatement ps, int parameterIndex, Object value) throws SQLException;
+	}
+}
@@ -0,0 +1,295 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates and verifies the tables and indexes of entity classes.
+ *
+ * The expected schema is read from the {@link TableName}, {@link ColumnName}, {@link PrimaryKey},
+ * {@link ForeignKey} and {@link Index} annotations. Missing tables and indexes can be created,
+ * everything else that does not match, like a missing column, is only reported.
+ */
+public final class SchemaManager {
+
+	private SchemaManager() {
+		throw new AssertionError("Cannot instantiate SchemaManager");
+	}
+
+	/**
+	 * Verifies the schema of the given entity classes, creating the missing tables and indexes.
+	 *
+	 * @param entityClasses the entity classes
+	 * @return the report of the verification
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static SchemaReport ensureSchema(Class<?>... entityClasses) throws SQLException {
+		return verifySchema(true, entityClasses);
+	}
+
+	/**
+	 * Verifies the schema of the given entity classes.
+	 *
+	 * @param createMissing whether to create the missing tables and indexes, or only report them
+	 * @param entityClasses the entity classes
+	 * @return the report of the verification
+	 * @throws SQLException if a database access error occurs
+	 */
+	public static SchemaReport verifySchema(boolean createMissing, Class<?>... entityClasses) throws SQLException {
+		SchemaReport report = new SchemaReport();
+		try (Connection connection = DatabaseManager.getConnection()) {
+			for (Class<?> clazz : entityClasses) {
+				verifyTable(connection, EntityMetadata.forClass(clazz), createMissing, report);
+			}
+		}
+		return report;
+	}
+
+	private static void verifyTable(Connection connection, EntityMetadata metadata, boolean createMissing, SchemaReport report) throws SQLException {
+		String tableName = metadata.getTableName();
+
+		Set<String> existingColumns = getColumnNames(connection, tableName);
+		if (existingColumns.isEmpty()) {
+			if (createMissing) {
+				try (Statement stmt = connection.createStatement()) {
+					stmt.executeUpdate(buildCreateTableQuery(metadata));
+				}
+				report.createdTables.add(tableName);
+			} else {
+				report.missingTables.add(tableName);
+				return;
+			}
+		} else {
+			for (EntityMetadata.Column column : metadata.getColumns()) {
+				if (!existingColumns.contains(column.getName())) {
+					report.missingColumns.add(tableName + "." + column.getName());
+				}
+			}
+		}
+
+		List<IndexInfo> existingIndexes = getIndexes(connection, tableName);
+		for (Index index : metadata.getEntityClass().getAnnotationsByType(Index.class)) {
+			List<String> columns = Arrays.asList(index.columns());
+			String description = index.name() + " ON " + tableName + "(" + String.join(", ", columns) + ")";
+
+			IndexInfo coveringIndex = findCoveringIndex(existingIndexes, columns, index.unique());
+			if (coveringIndex != null) {
+				if (!coveringIndex.name.equals(index.name())) {
+					report.coveredIndexes.add(description + " by " + coveringIndex.name);
+				}
+			} else if (createMissing) {
+				try (Statement stmt = connection.createStatement()) {
+					stmt.executeUpdate(buildCreateIndexQuery(tableName, index));
+				}
+				existingIndexes.add(new IndexInfo(index.name(), index.unique(), columns));
+				report.createdIndexes.add(description);
+			} else {
+				report.missingIndexes.add(description);
+			}
+		}
+	}
+
+	/**
+	 * Finds an index that can be used instead of the given one: an index whose leading columns are the
+	 * given columns or, for a unique index, a unique index on exactly the given columns.
+	 */
+	private static IndexInfo findCoveringIndex(List<IndexInfo> indexes, List<String> columns, boolean unique) {
+		for (IndexInfo index : indexes) {
+			if (unique) {
+				if (index.unique && index.columns.equals(columns)) {
+					return index;
+				}
+			} else if (index.columns.size() >= columns.size()
+					&& index.columns.subList(0, columns.size()).equals(columns)) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	private static Set<String> getColumnNames(Connection connection, String tableName) throws SQLException {
+		Set<String> columns = new HashSet<>();
+		try (PreparedStatement stmt = connection.prepareStatement("SELECT name FROM pragma_table_info(?)")) {
+			stmt.setString(1, tableName);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					columns.add(rs.getString(1));
+				}
+			}
+		}
+		return columns;
+	}
+
+	private static List<IndexInfo> getIndexes(Connection connection, String tableName) throws SQLException {
+		List<IndexInfo> indexes = new ArrayList<>();
+		try (PreparedStatement stmtList = connection.prepareStatement("SELECT name, \"unique\" FROM pragma_index_list(?)");
+			 PreparedStatement stmtInfo = connection.prepareStatement("SELECT name FROM pragma_index_info(?) ORDER BY seqno")) {
+			stmtList.setString(1, tableName);
+			try (ResultSet rs = stmtList.executeQuery()) {
+				while (rs.next()) {
+					String name = rs.getString(1);
+					boolean unique = rs.getBoolean(2);
+
+					List<String> columns = new ArrayList<>();
+					stmtInfo.setString(1, name);
+					try (ResultSet rsInfo = stmtInfo.executeQuery()) {
+						while (rsInfo.next()) {
+							columns.add(rsInfo.getString(1));
+						}
+					}
+					indexes.add(new IndexInfo(name, unique, columns));
+				}
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Builds the CREATE TABLE query of an entity class.
+	 *
+	 * @param metadata the metadata of the entity class
+	 * @return the query
+	 */
+	public static String buildCreateTableQuery(EntityMetadata metadata) {
+		StringBuilder query = new StringBuilder("CREATE TABLE IF NOT EXISTS \"" + metadata.getTableName() + "\" (");
+
+		for (EntityMetadata.Column column : metadata.getColumns()) {
+			query.append("\"").append(column.getName()).append("\" ").append(getSqlType(column.getType()));
+			if (column.getType().isPrimitive() && !column.isPrimaryKey()) {
+				query.append(" NOT NULL");
+			}
+			query.append(", ");
+		}
+
+		if (metadata.hasPrimaryKey()) {
+			query.append("PRIMARY KEY(\"").append(metadata.getPrimaryKey().getName()).append("\" AUTOINCREMENT), ");
+		}
+		for (EntityMetadata.Column column : metadata.getForeignKeys()) {
+			EntityMetadata referenced = EntityMetadata.forClass(column.getReferencedClass());
+			query.append("FOREIGN KEY(\"").append(column.getName()).append("\") REFERENCES \"")
+				.append(referenced.getTableName()).append("\"(\"")
+				.append(referenced.getPrimaryKey().getName()).append("\"), ");
+		}
+
+		// Remove the last comma and space
+		query.setLength(query.length() - 2);
+		return query.append(")").toString();
+	}
+
+	private static String buildCreateIndexQuery(String tableName, Index index) {
+		StringBuilder query = new StringBuilder(index.unique() ? "CREATE UNIQUE INDEX" : "CREATE INDEX");
+		query.append(" IF NOT EXISTS \"").append(index.name()).append("\" ON \"").append(tableName).append("\" (");
+		for (String column : index.columns()) {
+			query.append("\"").append(column).append("\", ");
+		}
+		query.setLength(query.length() - 2);
+		return query.append(")").toString();
+	}
+
+	/**
+	 * Returns the SQLite type used to store a field of the given type.
+	 *
+	 * @param type the field type
+	 * @return the SQL type name
+	 * @throws IllegalArgumentException if the field type is not supported
+	 */
+	public static String getSqlType(Class<?> type) {
+		ColumnCodec<?> codec = ColumnCodecs.forType(type);
+		if (codec != null) {
+			return codec.getSqlType();
+		} else if (type == int.class || type == Integer.class || type == long.class || type == Long.class
+				|| type == boolean.class || type == Boolean.class) {
+			return "INTEGER";
+		} else if (type == double.class || type == Double.class || type == float.class || type == Float.class) {
+			return "REAL";
+		} else if (type == String.class) {
+			return "TEXT";
+		}
+		throw new IllegalArgumentException("Unsupported field type: " + type.getName());
+	}
+
+	private static final class IndexInfo {
+		private final String name;
+		private final boolean unique;
+		private final List<String> columns;
+
+		private IndexInfo(String name, boolean unique, List<String> columns) {
+			this.name = name;
+			this.unique = unique;
+			this.columns = columns;
+		}
+	}
+
+	/**
+	 * The result of a schema verification.
+	 */
+	public static final class SchemaReport {
+		private final List<String> createdTables = new ArrayList<>();
+		private final List<String> missingTables = new ArrayList<>();
+		private final List<String> missingColumns = new ArrayList<>();
+		private final List<String> createdIndexes = new ArrayList<>();
+		private final List<String> missingIndexes = new ArrayList<>();
+		private final List<String> coveredIndexes = new ArrayList<>();
+
+		private SchemaReport() {}
+
+		// Getters
+
+		public List<String> getCreatedTables() {
+			return Collections.unmodifiableList(createdTables);
+		}
+
+		public List<String> getMissingTables() {
+			return Collections.unmodifiableList(missingTables);
+		}
+
+		public List<String> getMissingColumns() {
+			return Collections.unmodifiableList(missingColumns);
+		}
+
+		public List<String> getCreatedIndexes() {
+			return Collections.unmodifiableList(createdIndexes);
+		}
+
+		public List<String> getMissingIndexes() {
+			return Collections.unmodifiableList(missingIndexes);
+		}
+
+		/**
+		 * Returns the declared indexes that were not created because an existing index starts with their columns.
+		 *
+		 * @return descriptions of the covered indexes and the indexes covering them
+		 */
+		public List<String> getCoveredIndexes() {
+			return Collections.unmodifiableList(coveredIndexes);
+		}
+
+		/**
+		 * Returns whether the schema matches the entity classes after the verification.
+		 *
+		 * @return true if no tables, columns or indexes are missing
+		 */
+		public boolean isComplete() {
+			return missingTables.isEmpty() && missingColumns.isEmpty() && missingIndexes.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "SchemaReport[createdTables=" + createdTables
+				+ ", createdIndexes=" + createdIndexes
+				+ ", coveredIndexes=" + coveredIndexes
+				+ ", missingTables=" + missingTables
+				+ ", missingColumns=" + missingColumns
+				+ ", missingIndexes=" + missingIndexes + "]";
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package database;
+
+import java.sql.SQLException;
+
+/**
+ * Where the database behind {@link DatabaseManager} is stored: the connection pool opens its
+ * connections with the JDBC URL of the backend.
+ *
+ * A backend is opened before its first connection and closed after the pool using it is shut down.
+ */
+public interface StorageBackend {
+
+	/**
+	 * Returns the name of the backend, used in messages.
+	 *
+	 * @return the name of the backend
+	 */
+	String getName();
+
+	/**
+	 * Returns the JDBC URL used to open connections to the database.
+	 *
+	 * @return the JDBC URL
+	 */
+	String getJdbcUrl();
+
+	/**
+	 * Prepares the database for connections. Opening an open backend does nothing.
+	 *
+	 * @throws SQLException if the database cannot be prepared
+	 */
+	void open() throws SQLException;
+
+	/**
+	 * Releases the resources of the backend. Closing a closed backend does nothing.
+	 */
+	void close();
+
+	/**
+	 * Returns the backend with the given name.
+	 *
+	 * @param name the name of a backend: file, or memory for an in-memory copy of the file
+	 * @param databaseFile the database file, or the file copied into memory, null for an empty in-memory database
+	 * @return a new, unopened backend
+	 * @throws IllegalArgumentException if there is no backend with the name, or the file backend has no file
+	 */
+	static StorageBackend forName(String name, String databaseFile) {
+		if (FileStorageBackend.NAME.equalsIgnoreCase(name)) {
+			if (databaseFile == null) {
+				throw new IllegalArgumentException("File storage backend requires a database file");
+			}
+			return new FileStorageBackend(databaseFile);
+		}
+		if (InMemoryStorageBackend.NAME.equalsIgnoreCase(name)) {
+			return new InMemoryStorageBackend(databaseFile);
+		}
+		throw new IllegalArgumentException("Unknown storage backend: " + name);
+	}
+}
@@ -1,16 +1,26 @@
 package gui;
 
+import cinema.Discount;
+import cinema.Genre;
 import cinema.Movie;
+import cinema.MovieGenre;
 import cinema.ScreeningRoom;
+import cinema.Seat;
 import cinema.SeatAvailability;
+import cinema.SeatMapEngine;
 import cinema.Session;
 import cinema.Ticket;
 import database.DatabaseManager;
+import database.DateTimeMigration;
+import database.FetchResult;
 import database.FilterCondition;
+import database.SchemaManager;
+import database.SchemaManager.SchemaReport;
 import gui.mainPanels.AdminPanel;
 import gui.mainPanels.MovieRatingPanel;
 import gui.mainPanels.TicketSellingPanel;
 import java.awt.CardLayout;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
@@ -45,6 +55,36 @@ public class CinemaGUI extends JFrame {
                 "com.sun.java.swing.plaf.windows.WindowsClassicLookAndFeel"
         };
 
+        Class<?>[] entityClasses = { Genre.class, Movie.class, MovieGenre.class, ScreeningRoom.class, Seat.class,
+                Session.class, Ticket.class, SeatAvailability.class, Discount.class };
+
+        // Convert databases with text dates and times, which the column codecs cannot read
+        try {
+            List<String> migratedColumns = DateTimeMigration.migrate(entityClasses);
+            if (!migratedColumns.isEmpty()) {
+                System.out.println("Dates and times converted to integers: " + migratedColumns);
+            }
+        } catch (SQLException e) {
+            System.err.println("Unable to convert the dates and times of the database: " + e.getMessage());
+        }
+
+        // Create the missing tables and indexes before any query runs
+        try {
+            SchemaReport schemaReport = SchemaManager.ensureSchema(entityClasses);
+            if (!schemaReport.isComplete()) {
+                System.err.println("Database schema does not match the entity classes: " + schemaReport);
+            } else if (!schemaReport.getCreatedTables().isEmpty() || !schemaReport.getCreatedIndexes().isEmpty()) {
+                System.out.println("Database schema updated: " + schemaReport);
+            }
+        } catch (SQLException e) {
+            System.err.println("Unable to verify the database schema: " + e.getMessage());
+        }
+
+        // Load the seats of the coming sessions, which are booked in memory before being written
+        if (SeatMapEngine.rebuild(LocalDate.now()) < 0) {
+            System.err.println("Seat maps will be loaded when their sessions are opened");
+        }
+
         try {
             UIManager.setLookAndFeel(lookAndFeel[3]);
         } catch (Exception e) {
@@ -129,12 +169,15 @@ public class CinemaGUI extends JFrame {
     }
 
 	public static void createFakeTickets() {
-		List<Session> sessionList = Session.getAllSessions();
+		FetchResult<Session> sessions = Session.getAllSessionsWithMovies();
+		if (sessions == null) {
+			return;
+		}
 		Random rand = new Random();
 
 		double price = 70.0;
 		
-		for (Session session : sessionList) {
+		for (Session session : sessions.getRows()) {
 			try {
 				List<SeatAvailability> seatAvList = DatabaseManager.getRowsFilteredAndSortedBy(
 						SeatAvailability.class,
@@ -147,7 +190,7 @@ public class CinemaGUI extends JFrame {
 				
 				List<SeatAvailability> seatsToBook = new ArrayList<>();
 				
-				Movie movie = DatabaseManager.getRowById(Movie.class, session.getMovieId());
+				Movie movie = sessions.getRelated(session, "movieId", Movie.class);
 				float rating = movie.getRating();
 				
 				float randFloat = rand.nextFloat();
@@ -23,6 +23,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
 import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
 
 import cinema.Movie;
 import cinema.ScreeningRoom;
@@ -104,7 +105,7 @@ public class AdminPanel extends JPanel {
             
             JPanel centerPanel = new CustomChartPanel(selectedMovie);
 
-            List<Movie> movies = Movie.getAllMovies();
+            List<Movie> movies = Movie.getMovieSummaries();
             selectedMovie = movies.get(0);
             for (Movie m : movies) {
                 movieCombobox.addItem(m);
@@ -131,7 +132,7 @@ public class AdminPanel extends JPanel {
 		CategoryItemRenderer renderer2 = new LineAndShapeRenderer();
         
 		public CustomChartPanel(Movie movie) {
-			movie = Movie.getAllMovies().get(0);
+			movie = Movie.getMovieSummaries().get(0);
 
 			// Create a line chart
 			
@@ -174,11 +175,23 @@ public class AdminPanel extends JPanel {
         }
 		
 		public void updateDataset(Movie movie) {
+			// Read the sales and the assigned seats of all days concurrently, off the event thread
+			Movie.getSalesListForLast30DaysAsync(movie.getId())
+				.thenCombine(Movie.getAssignedSeatCountListForLast30DaysAsync(movie.getId()),
+					(salesList, assignedList) -> {
+						SwingUtilities.invokeLater(() -> fillDataset(salesList, assignedList));
+						return null;
+					})
+				.exceptionally(e -> {
+					System.err.println("Unable to read movie statistics: " + e.getMessage());
+					return null;
+				});
+		}
+
+		private void fillDataset(List<Integer> salesList, List<Integer> assignedList) {
 			// Clear the existing dataset
 			dataset1.clear();
 
-			List<Integer> assignedList = movie.getAssignedSeatCountListForLast30Days();
-			
 			// Find the maximum value of the dataset
 			int maxAssigned = Collections.max(assignedList);
 
@@ -186,7 +199,7 @@ public class AdminPanel extends JPanel {
 			for (int i = 0; i < 30; i++) {
 				LocalDate date = LocalDate.now().minusDays(29 - i);
 				String dateStr = date.format(DateTimeFormatter.ofPattern("dd/MM"));
-				int sales = Movie.getSales(movie.getId(), date);
+				int sales = salesList.get(i);
 				int assigned = assignedList.get(i);
 
 				double normalizedValue = 0.0;
@@ -40,7 +40,9 @@ import java.time.LocalDate;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a window for selecting movies.
@@ -167,15 +169,14 @@ public class MovieSelectionPanel extends JPanel {
         List<MovieGenre> movieGenres = new ArrayList<>();
 
         try {
-            for (Genre genre : selectedGenreList) {
-                List<MovieGenre> tmp = DatabaseManager
-                        .getRowsFilteredAndSortedBy(MovieGenre.class,
-                                List.of(new FilterCondition("genreId", genre.getId(), Relation.EQUALS)), "id", true);
-
-                if (!tmp.isEmpty()) {
-                    movieGenres.add(tmp.get(0));
+            // get the genres of all movies in one query
+            if (!selectedGenreList.isEmpty()) {
+                List<Integer> genreIds = new ArrayList<>();
+                for (Genre genre : selectedGenreList) {
+                    genreIds.add(genre.getId());
                 }
-
+                movieGenres = DatabaseManager.getRowsFilteredAndSortedBy(MovieGenre.class,
+                        List.of(FilterCondition.in("genreId", genreIds)), "id", true);
             }
 
             // get movies
@@ -216,15 +217,15 @@ public class MovieSelectionPanel extends JPanel {
 
         // filter one more time by genres
         if (!selectedGenreList.isEmpty()) {
+            // count the selected genres of each movie
+            Map<Integer, Integer> genreCounts = new HashMap<>();
+            for (MovieGenre mg : movieGenres) {
+                genreCounts.merge(mg.getMovieId(), 1, Integer::sum);
+            }
+
             availableMovies = new ArrayList<>();
             for (Movie movie : movieList) {
-                boolean hasAllGenres = true;
-                for (MovieGenre mg : movieGenres) {
-                    if (mg.getMovieId() != movie.getId()) {
-                        hasAllGenres = false;
-                        break;
-                    }
-                }
+                boolean hasAllGenres = genreCounts.getOrDefault(movie.getId(), 0) == selectedGenreList.size();
 
                 if (hasAllGenres) {
                     availableMovies.add(movie);
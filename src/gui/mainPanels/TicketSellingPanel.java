@@ -8,7 +8,9 @@ import java.awt.GridLayout;
 import java.time.LocalDate;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JButton;
 import javax.swing.JLabel;
@@ -18,15 +20,21 @@ import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
 import javax.swing.JTextField;
 import javax.swing.SpinnerDateModel;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.LineBorder;
 
+import cinema.BestSeatFinder;
 import cinema.Discount;
 import cinema.Movie;
 import cinema.ScreeningRoom;
 import cinema.Seat;
 import cinema.SeatAvailability;
+import cinema.SeatHold;
+import cinema.SeatHoldManager;
+import cinema.SeatMapEngine;
 import cinema.Session;
+import cinema.SessionSeatMap;
 import cinema.Ticket;
 import database.DatabaseManager;
 import database.FilterCondition;
@@ -53,8 +61,10 @@ public class TicketSellingPanel extends JPanel {
     Session selectedSession;
     LocalDate selectedDate;
     List<SeatAvailability> selectedSeats = new ArrayList<>();
+    Map<Integer, Seat> sessionSeats = new HashMap<>();
     Double defaultPrice = 70.0;
     double totalPrice = 0.0;
+    SeatHold seatHold;
     Ticket ticket;
 
     public TicketSellingPanel(CinemaGUI parent, int width, int height) {
@@ -210,16 +220,16 @@ public class TicketSellingPanel extends JPanel {
             selectedSeats.clear();
             seatStates = new SeatState[row][col];
 
-            List<SeatAvailability> seatAvailabilities = null;
             try {
-                List<FilterCondition> conditions = List
-                        .of(new FilterCondition("sessionId", selectedSession.getId(), FilterCondition.Relation.EQUALS));
-                seatAvailabilities = DatabaseManager.getRowsFilteredAndSortedBy(SeatAvailability.class, conditions,
-                        "id", true);
-
-                for (SeatAvailability sa : seatAvailabilities) {
-                    Seat s = DatabaseManager.getRowById(Seat.class, sa.getSeatId());
-                    seatStates[s.getRow()][s.getCol()] = sa.isAvailable() ? SeatState.AVAILABLE : SeatState.UNAVAILABLE;
+                // the seats of the session are read once, their availability is kept in memory
+                SessionSeatMap seatMap = SeatMapEngine.getSeatMap(selectedSession.getId());
+                sessionSeats = seatMap.getSeats();
+
+                for (SeatAvailability sa : seatMap.getSeatAvailabilities()) {
+                    Seat s = sessionSeats.get(sa.getSeatId());
+                    seatStates[s.getRow()][s.getCol()] = seatMap.isAvailable(s.getRow(), s.getCol())
+                            ? SeatState.AVAILABLE
+                            : SeatState.UNAVAILABLE;
                     seatPanel.add(new SeatButtonPanel(s, sa));
                 }
 
@@ -231,10 +241,30 @@ public class TicketSellingPanel extends JPanel {
         private class SouthPanel extends JPanel {
             JButton backButton = new JButton("Back");
             JButton nextButton = new JButton("Proceed");
+            JSpinner groupSizeSpinner = new JSpinner(new SpinnerNumberModel(2, 1, 20, 1));
+            JButton bestSeatsButton = new JButton("Book Best");
 
             SouthPanel() {
                 add(backButton);
                 add(nextButton);
+                add(new JLabel("Group size:"));
+                add(groupSizeSpinner);
+                add(bestSeatsButton);
+
+                // select the best block of adjacent seats for the group and proceed with it
+                bestSeatsButton.addActionListener(e -> {
+                    int groupSize = (Integer) groupSizeSpinner.getValue();
+                    List<SeatAvailability> bestSeats = BestSeatFinder.findBest(selectedSession.getId(), groupSize);
+
+                    if (bestSeats == null || bestSeats.isEmpty()) {
+                        JOptionPane.showMessageDialog(this, "No " + groupSize + " adjacent seats are available.");
+                        return;
+                    }
+
+                    selectedSeats.clear();
+                    selectedSeats.addAll(bestSeats);
+                    nextButton.doClick();
+                });
 
                 backButton.addActionListener(e -> {
                     deselectMovie();
@@ -252,7 +282,7 @@ public class TicketSellingPanel extends JPanel {
                     try {
                         List<Discount> dl = DatabaseManager.getRowsFilteredAndSortedBy(Discount.class, List.of(
                                 new FilterCondition("date", selectedDate, FilterCondition.Relation.EQUALS)), "id",
-                                true);
+                                true, 1, 0);
 
                         if (dl.size() > 0) {
                             discountRatio = dl.get(0).getRatio();
@@ -263,10 +293,12 @@ public class TicketSellingPanel extends JPanel {
                     }
 
                     totalPrice = defaultPrice * selectedSeats.size() * (1 - discountRatio);
-                    ticket = SeatAvailability.bookSeatList(selectedSeats, totalPrice);
+                    // keep the seats until the payment, nothing is written before it
+                    seatHold = SeatHoldManager.hold(selectedSession.getId(), selectedSeats);
 
-                    if (ticket == null) {
-                        JOptionPane.showMessageDialog(this, "Failed to book the seats.");
+                    if (seatHold == null) {
+                        JOptionPane.showMessageDialog(this, "Failed to hold the seats.");
+                        seatSelectionPanel.listSeats(selectedSession);
                         return;
                     }
 
@@ -407,8 +439,9 @@ public class TicketSellingPanel extends JPanel {
             // add action listeners to buttons
             backButton.addActionListener(e -> {
                 cardLayout.show(TicketSellingPanel.this, "Seat");
-                if (ticket != null) {
-                    Ticket.cancelTicket(ticket.getId());
+                if (seatHold != null) {
+                    SeatHoldManager.release(seatHold);
+                    seatHold = null;
                 }
                 seatSelectionPanel.listSeats(selectedSession);
             });
@@ -420,15 +453,20 @@ public class TicketSellingPanel extends JPanel {
                     return;
                 }
 
-                Ticket.verifyPurchase(ticket.getId());
+                ticket = SeatHoldManager.purchase(seatHold, totalPrice);
+                seatHold = null;
+
+                if (ticket == null) {
+                    JOptionPane.showMessageDialog(this,
+                            "The seats are no longer held. Please select them again.");
+                    cardLayout.show(TicketSellingPanel.this, "Seat");
+                    seatSelectionPanel.listSeats(selectedSession);
+                    return;
+                }
 
                 List<Seat> seats = new ArrayList<>(selectedSeats.size());
                 for (SeatAvailability sa : selectedSeats) {
-                    try {
-                        seats.add(DatabaseManager.getRowById(Seat.class, sa.getSeatId()));
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
+                    seats.add(sessionSeats.get(sa.getSeatId()));
                 }
 
                 String selectedSeatRowAndCols = "";
@@ -31,6 +31,8 @@ import cinema.Movie;
 import cinema.ScreeningRoom;
 import cinema.Session;
 import database.DatabaseManager;
+import database.FetchPlan;
+import database.FetchResult;
 import database.FilterCondition;
 
 /**
@@ -269,8 +271,10 @@ public class ScreeningRoomManagementPanel extends JPanel {
                                 if (input == null)
                                     return;
 
-                                DatabaseManager.insertRow(
-                                        new Discount(LocalDate.now().plusDays(i), Double.parseDouble(input)));
+                                // another terminal may have set a discount for the day since the list was loaded
+                                DatabaseManager.upsert(
+                                        new Discount(LocalDate.now().plusDays(i), Double.parseDouble(input)),
+                                        List.of("date"));
 
                             } else {
                                 if (JOptionPane.showConfirmDialog(null,
@@ -306,10 +310,10 @@ public class ScreeningRoomManagementPanel extends JPanel {
 
             this.add(nameLabel);
 
-            // get sessions for the screening room
-            List<Session> sessionList = null;
+            // get sessions for the screening room, with their movies in the same query
+            FetchResult<Session> sessions = null;
             try {
-                sessionList = DatabaseManager.getRowsFilteredAndSortedBy(Session.class,
+                sessions = DatabaseManager.getRowsWithRelations(FetchPlan.of(Session.class).with("movieId"),
                         List.of(new FilterCondition("screeningRoomId", screeningRoom.getId(),
                                 FilterCondition.Relation.EQUALS),
                                 new FilterCondition("date", LocalDate.now(),
@@ -321,27 +325,14 @@ public class ScreeningRoomManagementPanel extends JPanel {
                 e.printStackTrace();
             }
 
-            // put sessions into an array of size 30
+            // put sessions and their movies into arrays of size 30
             Session sessionArray[] = new Session[30];
-            for (Session s : sessionList) {
-                sessionArray[(int) (ChronoUnit.DAYS.between(LocalDate.now(), s.getDate()))] = s;
-            }
-
-            // get movie names for each session
             Movie movieArray[] = new Movie[30];
-            for (int i = 0; i < 30; i++) {
-                if (sessionArray[i] != null) {
-                    try {
-                        List<Movie> movieList = DatabaseManager.getRowsFilteredAndSortedBy(Movie.class,
-                                List.of(new FilterCondition("id", sessionArray[i].getMovieId(),
-                                        FilterCondition.Relation.EQUALS)),
-                                "id", true);
-
-                        movieArray[i] = movieList.size() > 0 ? movieList.get(0) : null;
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+            if (sessions != null) {
+                for (Session s : sessions.getRows()) {
+                    int index = (int) (ChronoUnit.DAYS.between(LocalDate.now(), s.getDate()));
+                    sessionArray[index] = s;
+                    movieArray[index] = sessions.getRelated(s, "movieId", Movie.class);
                 }
             }
 